@@ -1,6 +1,10 @@
 package fun.zulin.tmd.config;
 
+import fun.zulin.tmd.service.BatchJobRunner;
+import fun.zulin.tmd.service.ChatSyncService;
 import fun.zulin.tmd.telegram.DownloadManage;
+import fun.zulin.tmd.telegram.SessionPool;
+import fun.zulin.tmd.telegram.TelegramSession;
 import fun.zulin.tmd.telegram.Tmd;
 import fun.zulin.tmd.utils.DownloadDirectoryManager;
 import lombok.RequiredArgsConstructor;
@@ -23,11 +27,29 @@ public class ApplicationShutdownListener {
     
     private final DownloadDirectoryManager directoryManager;
 
+    private final BatchJobRunner batchJobRunner;
+
+    private final ChatSyncService chatSyncService;
+
     @EventListener
     public void onContextClosedEvent(ContextClosedEvent event) {
         log.info("应用程序正在关闭，开始清理资源...");
         
         try {
+            // 先停止批量下载任务，断点已保存，任务保持运行状态，下次启动后继续
+            try {
+                batchJobRunner.shutdown();
+            } catch (Exception e) {
+                log.warn("停止批量下载任务时出现错误: {}", e.getMessage());
+            }
+
+            // 停止补同步，写入实时消息的水位
+            try {
+                chatSyncService.shutdown();
+            } catch (Exception e) {
+                log.warn("停止补同步时出现错误: {}", e.getMessage());
+            }
+
             // 关闭下载管理器线程池
             log.info("正在关闭下载管理器...");
             try {
@@ -51,6 +73,19 @@ public class ApplicationShutdownListener {
                 }
             }
             
+            // 关闭额外的下载会话
+            for (TelegramSession session : SessionPool.getSessions()) {
+                if (session.isPrimary() || session.getClient() == null) {
+                    continue;
+                }
+                try {
+                    session.getClient().closeAsync().get(10, TimeUnit.SECONDS);
+                    log.info("Telegram会话 {} 已关闭", session.getName());
+                } catch (Exception e) {
+                    log.warn("Telegram会话 {} 关闭超时或出错: {}", session.getName(), e.getMessage());
+                }
+            }
+            
             // 关闭目录管理器
             log.info("正在关闭目录管理器...");
             try {
@@ -6,6 +6,8 @@ import org.springframework.boot.CommandLineRunner;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 /**
  * 数据库初始化和修复工具
  * 用于处理表结构初始化和修复
@@ -25,6 +27,18 @@ public class DatabaseInitializer implements CommandLineRunner {
             // 初始化或修复 download_item 表
             initializeDownloadItemTable();
             
+            // unique_id 唯一索引，防止同一文件重复入库
+            ensureUniqueIdIndex();
+            
+            // 批量下载任务表
+            initializeBatchJobTable();
+            
+            // 频道监听规则表
+            initializeWatchRuleTable();
+            
+            // 聊天同步水位表
+            initializeChatWatermarkTable();
+            
             log.info("数据库初始化完成");
         } catch (Exception e) {
             log.error("数据库初始化失败", e);
@@ -129,6 +143,41 @@ public class DatabaseInitializer implements CommandLineRunner {
                 log.info("download_count 字段已存在");
             }
             
+            // 添加priority字段
+            if (!columnExists("download_item", "priority")) {
+                String addPriorityColumnSql = "ALTER TABLE download_item ADD COLUMN priority INTEGER";
+                jdbcTemplate.execute(addPriorityColumnSql);
+                log.info("已添加 priority 字段到 download_item 表");
+            } else {
+                log.info("priority 字段已存在");
+            }
+            
+            // 添加sha256字段
+            if (!columnExists("download_item", "sha256")) {
+                String addSha256ColumnSql = "ALTER TABLE download_item ADD COLUMN sha256 TEXT";
+                jdbcTemplate.execute(addSha256ColumnSql);
+                log.info("已添加 sha256 字段到 download_item 表");
+            } else {
+                log.info("sha256 字段已存在");
+            }
+            
+            // 添加remote_file_id和local_path字段，用于重启后继续部分下载的文件
+            if (!columnExists("download_item", "remote_file_id")) {
+                String addRemoteFileIdColumnSql = "ALTER TABLE download_item ADD COLUMN remote_file_id TEXT";
+                jdbcTemplate.execute(addRemoteFileIdColumnSql);
+                log.info("已添加 remote_file_id 字段到 download_item 表");
+            } else {
+                log.info("remote_file_id 字段已存在");
+            }
+            
+            if (!columnExists("download_item", "local_path")) {
+                String addLocalPathColumnSql = "ALTER TABLE download_item ADD COLUMN local_path TEXT";
+                jdbcTemplate.execute(addLocalPathColumnSql);
+                log.info("已添加 local_path 字段到 download_item 表");
+            } else {
+                log.info("local_path 字段已存在");
+            }
+            
 
             
         } catch (Exception e) {
@@ -137,6 +186,149 @@ public class DatabaseInitializer implements CommandLineRunner {
         }
     }
     
+    /**
+     * 创建 unique_id 唯一索引
+     * 旧数据中的重复记录只删除未完成的那些：有已完成记录时删除同组所有未完成记录，否则保留ID最小的一条。
+     * 同一 unique_id 有多条已完成记录时不删除任何已完成记录，记录日志后跳过建索引，等待手动处理
+     */
+    private void ensureUniqueIdIndex() {
+        try {
+            if (indexExists("uk_download_item_unique_id")) {
+                log.info("unique_id 唯一索引已存在");
+                return;
+            }
+            
+            String deleteDuplicatesSql = """
+                DELETE FROM download_item
+                WHERE unique_id IS NOT NULL
+                  AND (state IS NULL OR state <> 'Complete')
+                  AND EXISTS (
+                    SELECT 1 FROM download_item d
+                    WHERE d.unique_id = download_item.unique_id
+                      AND d.id <> download_item.id
+                      AND (d.state = 'Complete' OR d.id < download_item.id)
+                  )
+                """;
+            int removed = jdbcTemplate.update(deleteDuplicatesSql);
+            if (removed > 0) {
+                log.warn("已删除 {} 条 unique_id 重复的未完成下载记录", removed);
+            }
+            
+            String remainingDuplicatesSql = """
+                SELECT unique_id FROM download_item
+                WHERE unique_id IS NOT NULL
+                GROUP BY unique_id
+                HAVING COUNT(*) > 1
+                """;
+            List<String> duplicates = jdbcTemplate.queryForList(remainingDuplicatesSql, String.class);
+            if (!duplicates.isEmpty()) {
+                log.warn("{} 个 unique_id 有多条已完成的下载记录，暂不创建唯一索引，请手动处理后重启: {}",
+                        duplicates.size(), duplicates);
+                return;
+            }
+            
+            jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS uk_download_item_unique_id ON download_item(unique_id)");
+            log.info("已创建 unique_id 唯一索引");
+        } catch (Exception e) {
+            log.error("创建 unique_id 唯一索引失败", e);
+            // 不抛出异常，入库时仍有应用层去重
+        }
+    }
+    
+    /**
+     * 创建 batch_job 表
+     */
+    private void initializeBatchJobTable() {
+        if (tableExists("batch_job")) {
+            log.info("batch_job 表已存在");
+            return;
+        }
+        String createTableSql = """
+            CREATE TABLE batch_job (
+                id INTEGER NOT NULL PRIMARY KEY AUTOINCREMENT,
+                chat TEXT NULL,
+                chat_id BIGINT NULL,
+                start_message_id BIGINT NULL,
+                end_message_id BIGINT NULL,
+                min_duration_minutes INTEGER NULL,
+                page_interval INTEGER NULL,
+                state TEXT NULL,
+                filter_index INTEGER DEFAULT 0,
+                cursor BIGINT NULL,
+                request_count INTEGER DEFAULT 0,
+                submitted_count INTEGER DEFAULT 0,
+                skipped_count INTEGER DEFAULT 0,
+                completed_count INTEGER DEFAULT 0,
+                failed_count INTEGER DEFAULT 0,
+                error TEXT NULL,
+                create_time TEXT NULL,
+                update_time TEXT NULL
+            )
+            """;
+        jdbcTemplate.execute(createTableSql);
+        log.info("成功创建 batch_job 表");
+    }
+    
+    /**
+     * 创建 watch_rule 表
+     */
+    private void initializeWatchRuleTable() {
+        if (tableExists("watch_rule")) {
+            log.info("watch_rule 表已存在");
+            return;
+        }
+        String createTableSql = """
+            CREATE TABLE watch_rule (
+                id INTEGER NOT NULL PRIMARY KEY AUTOINCREMENT,
+                chat_id BIGINT NOT NULL,
+                chat TEXT NULL,
+                enabled INTEGER DEFAULT 1,
+                media_types TEXT NULL,
+                min_duration_seconds INTEGER NULL,
+                min_size BIGINT NULL,
+                max_size BIGINT NULL,
+                caption_regex TEXT NULL,
+                create_time TEXT NULL,
+                update_time TEXT NULL
+            )
+            """;
+        jdbcTemplate.execute(createTableSql);
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_watch_rule_chat_id ON watch_rule(chat_id)");
+        log.info("成功创建 watch_rule 表");
+    }
+
+    /**
+     * 创建 chat_watermark 表
+     */
+    private void initializeChatWatermarkTable() {
+        if (tableExists("chat_watermark")) {
+            log.info("chat_watermark 表已存在");
+            return;
+        }
+        String createTableSql = """
+            CREATE TABLE chat_watermark (
+                chat_id BIGINT NOT NULL PRIMARY KEY,
+                last_message_id BIGINT NOT NULL DEFAULT 0,
+                update_time TEXT NULL
+            )
+            """;
+        jdbcTemplate.execute(createTableSql);
+        log.info("成功创建 chat_watermark 表");
+    }
+    
+    /**
+     * 检查索引是否存在
+     */
+    private boolean indexExists(String indexName) {
+        try {
+            String sql = "SELECT COUNT(*) FROM sqlite_master WHERE type='index' AND name=?";
+            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, indexName);
+            return count != null && count > 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+    
     /**
      * 检查表是否存在
      */
@@ -177,6 +369,8 @@ public class DatabaseInitializer implements CommandLineRunner {
                 description TEXT NULL,
                 filename TEXT NULL,
                 file_id INTEGER NULL,
+                remote_file_id TEXT NULL,
+                local_path TEXT NULL,
                 massage_id INTEGER NULL,
                 unique_id TEXT NULL,
                 file_size INTEGER NULL,
@@ -191,7 +385,9 @@ public class DatabaseInitializer implements CommandLineRunner {
                 update_time TEXT NULL,
                 download_byte_per_sec INTEGER NULL,
                 download_update_time TEXT NULL,
-                download_count INTEGER DEFAULT 0
+                download_count INTEGER DEFAULT 0,
+                priority INTEGER NULL,
+                sha256 TEXT NULL
             )
             """;
         jdbcTemplate.execute(createTableSql);
@@ -4,6 +4,10 @@ import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * 应用配置属性类
@@ -18,6 +22,10 @@ public class TmdProperties {
     private DownloadConfig download = new DownloadConfig();
     private StorageConfig storage = new StorageConfig();
     private WebSocketConfig websocket = new WebSocketConfig();
+    private BandwidthConfig bandwidth = new BandwidthConfig();
+    private TelegramConfig telegram = new TelegramConfig();
+    private TdlibConfig tdlib = new TdlibConfig();
+    private SyncConfig sync = new SyncConfig();
 
     /**
      * 初始化后验证配置
@@ -26,13 +34,22 @@ public class TmdProperties {
         download.validate();
         storage.validate();
         websocket.validate();
+        bandwidth.validate();
+        telegram.validate();
+        tdlib.validate();
+        sync.validate();
         log.info("TmdProperties 配置验证通过");
     }
 
     @Data
     public static class DownloadConfig {
         /**
-         * Telegram下载优先级（1-56）
+         * 最大并发下载数上限
+         */
+        public static final int MAX_CONCURRENT_LIMIT = 32;
+
+        /**
+         * Telegram下载优先级（1-32），下载项未单独设置优先级时使用
          */
         private int priority = 16;
         
@@ -50,12 +67,47 @@ public class TmdProperties {
          * 重试次数
          */
         private int retryCount = 3;
+
+        /**
+         * 首次重试的基础延迟（毫秒），之后每次翻倍
+         */
+        private long retryBaseDelay = 2000;
+
+        /**
+         * 重试退避延迟上限（毫秒），Telegram 要求的等待时间不受此限制
+         */
+        private long retryMaxDelay = 300000;
         
         /**
          * 分块大小（字节）
          */
         private int chunkSize = 1048576; // 1MB
         
+        /**
+         * 下载完成处理流水线每个阶段的队列容量
+         */
+        private int finalizeQueueCapacity = 64;
+
+        /**
+         * 生成缩略图（ffmpeg）的线程数
+         */
+        private int thumbnailThreads = 1;
+
+        /**
+         * 新消息批量入库时每批最多记录数
+         */
+        private int ingestBatchSize = 100;
+
+        /**
+         * 新消息批量入库凑批的最长等待时间（毫秒）
+         */
+        private long ingestLingerMillis = 50;
+
+        /**
+         * 启动恢复未完成下载时每秒最多发出的请求数（每次请求最多处理100个下载项）
+         */
+        private double recoveryRate = 2;
+        
         /**
          * 进度更新间隔（毫秒）
          */
@@ -66,26 +118,31 @@ public class TmdProperties {
          */
         private int defaultPriority = 3;
 
+        /**
+         * 自适应并发配置
+         */
+        private AdaptiveConfig adaptive = new AdaptiveConfig();
+
         /**
          * 验证并规范化下载配置
          */
         public void validate() {
-            // 规范化优先级范围 (1-56)
+            // 规范化优先级范围 (1-32，TDLib DownloadFile 的有效范围)
             if (priority < 1) {
                 log.warn("下载优先级 {} 小于最小值1，已设置为1", priority);
                 priority = 1;
-            } else if (priority > 56) {
-                log.warn("下载优先级 {} 大于最大值56，已设置为56", priority);
-                priority = 56;
+            } else if (priority > 32) {
+                log.warn("下载优先级 {} 大于最大值32，已设置为32", priority);
+                priority = 32;
             }
 
-            // 规范化并发数 (1-10)
+            // 规范化并发数 (1-32)
             if (maxConcurrent < 1) {
                 log.warn("最大并发数 {} 小于最小值1，已设置为1", maxConcurrent);
                 maxConcurrent = 1;
-            } else if (maxConcurrent > 10) {
-                log.warn("最大并发数 {} 大于最大值10，已设置为10", maxConcurrent);
-                maxConcurrent = 10;
+            } else if (maxConcurrent > MAX_CONCURRENT_LIMIT) {
+                log.warn("最大并发数 {} 大于最大值{}，已设置为{}", maxConcurrent, MAX_CONCURRENT_LIMIT, MAX_CONCURRENT_LIMIT);
+                maxConcurrent = MAX_CONCURRENT_LIMIT;
             }
 
             // 规范化超时时间 (1-120分钟)
@@ -106,6 +163,19 @@ public class TmdProperties {
                 retryCount = 10;
             }
 
+            // 规范化重试延迟 (100ms-1小时)
+            if (retryBaseDelay < 100) {
+                log.warn("重试基础延迟 {} 小于最小值100ms，已设置为100", retryBaseDelay);
+                retryBaseDelay = 100;
+            }
+            if (retryMaxDelay < retryBaseDelay) {
+                log.warn("重试延迟上限 {} 小于基础延迟 {}，已设置为 {}", retryMaxDelay, retryBaseDelay, retryBaseDelay);
+                retryMaxDelay = retryBaseDelay;
+            } else if (retryMaxDelay > 3600000) {
+                log.warn("重试延迟上限 {} 大于最大值3600000ms，已设置为3600000", retryMaxDelay);
+                retryMaxDelay = 3600000;
+            }
+
             // 规范化分块大小 (64KB-16MB)
             if (chunkSize < 65536) {
                 log.warn("分块大小 {} 小于最小值64KB，已设置为64KB", chunkSize);
@@ -114,6 +184,103 @@ public class TmdProperties {
                 log.warn("分块大小 {} 大于最大值16MB，已设置为16MB", chunkSize);
                 chunkSize = 16777216;
             }
+
+            // 完成处理队列不小于最大并发数，保证下载完成时总能交接
+            if (finalizeQueueCapacity < MAX_CONCURRENT_LIMIT) {
+                log.warn("完成处理队列容量 {} 小于最大并发数上限 {}，已设置为 {}", finalizeQueueCapacity, MAX_CONCURRENT_LIMIT, MAX_CONCURRENT_LIMIT);
+                finalizeQueueCapacity = MAX_CONCURRENT_LIMIT;
+            }
+
+            // 规范化缩略图线程数 (1-8)
+            if (thumbnailThreads < 1) {
+                log.warn("缩略图线程数 {} 小于最小值1，已设置为1", thumbnailThreads);
+                thumbnailThreads = 1;
+            } else if (thumbnailThreads > 8) {
+                log.warn("缩略图线程数 {} 大于最大值8，已设置为8", thumbnailThreads);
+                thumbnailThreads = 8;
+            }
+
+            // 规范化批量入库参数 (1-1000条，0-5000ms)
+            if (ingestBatchSize < 1) {
+                log.warn("入库批大小 {} 小于最小值1，已设置为1", ingestBatchSize);
+                ingestBatchSize = 1;
+            } else if (ingestBatchSize > 1000) {
+                log.warn("入库批大小 {} 大于最大值1000，已设置为1000", ingestBatchSize);
+                ingestBatchSize = 1000;
+            }
+            if (ingestLingerMillis < 0) {
+                log.warn("入库等待时间 {} 小于0，已设置为0", ingestLingerMillis);
+                ingestLingerMillis = 0;
+            } else if (ingestLingerMillis > 5000) {
+                log.warn("入库等待时间 {} 大于最大值5000ms，已设置为5000", ingestLingerMillis);
+                ingestLingerMillis = 5000;
+            }
+
+            // 规范化恢复速率 (0.1-50次/秒)
+            if (recoveryRate < 0.1) {
+                log.warn("恢复速率 {} 小于最小值0.1，已设置为0.1", recoveryRate);
+                recoveryRate = 0.1;
+            } else if (recoveryRate > 50) {
+                log.warn("恢复速率 {} 大于最大值50，已设置为50", recoveryRate);
+                recoveryRate = 50;
+            }
+
+            adaptive.validate();
+        }
+    }
+
+    @Data
+    public static class AdaptiveConfig {
+        /**
+         * 是否根据吞吐量和错误自动调整并发数
+         */
+        private boolean enabled = false;
+
+        /**
+         * 自适应调整的最小并发数
+         */
+        private int minConcurrent = 1;
+
+        /**
+         * 自适应调整的最大并发数
+         */
+        private int maxConcurrent = 8;
+
+        /**
+         * 采样间隔（毫秒）
+         */
+        private long sampleInterval = 10000;
+
+        /**
+         * 增加并发后吞吐量至少提升的比例，否则回退
+         */
+        private double minGain = 0.05;
+
+        /**
+         * 验证自适应并发配置
+         */
+        public void validate() {
+            if (minConcurrent < 1) {
+                log.warn("自适应最小并发数 {} 小于1，已设置为1", minConcurrent);
+                minConcurrent = 1;
+            }
+            if (maxConcurrent > DownloadConfig.MAX_CONCURRENT_LIMIT) {
+                log.warn("自适应最大并发数 {} 大于最大值{}，已设置为{}", maxConcurrent,
+                        DownloadConfig.MAX_CONCURRENT_LIMIT, DownloadConfig.MAX_CONCURRENT_LIMIT);
+                maxConcurrent = DownloadConfig.MAX_CONCURRENT_LIMIT;
+            }
+            if (maxConcurrent < minConcurrent) {
+                log.warn("自适应最大并发数 {} 小于最小并发数 {}，已设置为 {}", maxConcurrent, minConcurrent, minConcurrent);
+                maxConcurrent = minConcurrent;
+            }
+            if (sampleInterval < 1000) {
+                log.warn("自适应采样间隔 {} 小于最小值1000ms，已设置为1000", sampleInterval);
+                sampleInterval = 1000;
+            }
+            if (minGain < 0) {
+                log.warn("自适应最小提升比例 {} 小于0，已设置为0", minGain);
+                minGain = 0;
+            }
         }
     }
 
@@ -130,9 +297,19 @@ public class TmdProperties {
         private String dataDir = "data";
         
         /**
-         * 最大存储大小
+         * 旧的最大存储大小配置，显式设置且未设置 {@link #quota} 时作为存储配额
          */
-        private String maxStorageSize = "10GB";
+        private String maxStorageSize;
+
+        /**
+         * 存储配额（已完成和下载中的文件总和），0表示不限制（默认）
+         */
+        private String quota = "0";
+
+        /**
+         * 下载目录所在磁盘始终保留的空间
+         */
+        private String minFreeSpace = "512MB";
         
         /**
          * 清理配置
@@ -152,9 +329,53 @@ public class TmdProperties {
                 log.warn("数据目录为空，已设置为默认值 'data'");
                 dataDir = "data";
             }
+
+            try {
+                parseSize(quota);
+            } catch (Exception e) {
+                log.warn("存储配额 {} 格式无效，已设置为不限制", quota);
+                quota = "0";
+            }
+
+            try {
+                parseSize(maxStorageSize);
+            } catch (Exception e) {
+                log.warn("最大存储大小 {} 格式无效，已忽略", maxStorageSize);
+                maxStorageSize = null;
+            }
+
+            try {
+                parseSize(minFreeSpace);
+            } catch (Exception e) {
+                log.warn("保留空间 {} 格式无效，已设置为 512MB", minFreeSpace);
+                minFreeSpace = "512MB";
+            }
             
             cleanup.validate();
         }
+
+        /**
+         * 存储配额（字节），0表示不限制
+         * 未设置 quota 时使用显式设置的 max-storage-size
+         */
+        public long getQuotaBytes() {
+            long quotaBytes = parseSize(quota);
+            return quotaBytes > 0 ? quotaBytes : parseSize(maxStorageSize);
+        }
+
+        /**
+         * 保留空间（字节）
+         */
+        public long getMinFreeSpaceBytes() {
+            return parseSize(minFreeSpace);
+        }
+
+        private static long parseSize(String size) {
+            if (size == null || size.isBlank()) {
+                return 0;
+            }
+            return Math.max(0, DataSize.parse(size.trim()).toBytes());
+        }
     }
 
     @Data
@@ -183,6 +404,228 @@ public class TmdProperties {
         }
     }
 
+    @Data
+    public static class BandwidthConfig {
+        /**
+         * 默认全局限速（每秒），如 5MB，0表示不限速
+         */
+        private String limit = "0";
+
+        /**
+         * 分时段限速，按顺序匹配，未匹配的时间使用默认限速
+         */
+        private List<BandwidthRule> schedules = new ArrayList<>();
+
+        /**
+         * 验证带宽配置
+         */
+        public void validate() {
+            try {
+                DataSize.parse(limit == null || limit.isBlank() ? "0" : limit.trim());
+            } catch (Exception e) {
+                log.warn("带宽限速 {} 格式无效，已设置为不限速", limit);
+                limit = "0";
+            }
+            if (schedules == null) {
+                schedules = new ArrayList<>();
+            }
+        }
+    }
+
+    @Data
+    public static class BandwidthRule {
+        /**
+         * 开始时间（HH:mm，含）
+         */
+        private String start;
+
+        /**
+         * 结束时间（HH:mm，不含），早于开始时间表示跨越午夜
+         */
+        private String end;
+
+        /**
+         * 该时段的限速（每秒），0表示不限速
+         */
+        private String limit = "0";
+    }
+
+    @Data
+    public static class TelegramConfig {
+        /**
+         * 额外登录的账号会话名称，每个会话使用独立的 TDLib 数据目录 data/sessions/{名称}，
+         * 首次启动时通过二维码登录
+         */
+        private List<String> extraSessions = new ArrayList<>();
+
+        /**
+         * 链接解析缓存的最大条目数（聊天和链接各自计算）
+         */
+        private int resolveCacheSize = 1000;
+
+        /**
+         * 链接解析缓存的有效期（分钟）
+         */
+        private long resolveCacheTtlMinutes = 60;
+
+        /**
+         * 验证会话配置
+         */
+        public void validate() {
+            if (resolveCacheSize < 1 || resolveCacheSize > 100000) {
+                log.warn("链接解析缓存容量 {} 超出范围(1-100000)，使用默认值1000", resolveCacheSize);
+                resolveCacheSize = 1000;
+            }
+            if (resolveCacheTtlMinutes < 1 || resolveCacheTtlMinutes > 10080) {
+                log.warn("链接解析缓存有效期 {} 分钟超出范围(1-10080)，使用默认值60", resolveCacheTtlMinutes);
+                resolveCacheTtlMinutes = 60;
+            }
+            if (extraSessions == null) {
+                extraSessions = new ArrayList<>();
+                return;
+            }
+            List<String> valid = new ArrayList<>();
+            for (String name : extraSessions) {
+                if (name == null || !name.matches("[A-Za-z0-9_-]{1,32}")) {
+                    log.warn("会话名称 {} 无效（只允许字母、数字、下划线和横线），已忽略", name);
+                } else if (valid.contains(name)) {
+                    log.warn("会话名称 {} 重复，已忽略", name);
+                } else {
+                    valid.add(name);
+                }
+            }
+            extraSessions = valid;
+        }
+    }
+
+    @Data
+    public static class TdlibConfig {
+        /**
+         * 文件数据库，关闭后重启时无法通过远程文件ID继续部分下载的文件
+         */
+        private boolean fileDatabaseEnabled = true;
+
+        /**
+         * 聊天信息数据库
+         */
+        private boolean chatInfoDatabaseEnabled = true;
+
+        /**
+         * 消息数据库，关闭可减少磁盘和内存占用，恢复和批量下载时消息改为从服务器获取
+         */
+        private boolean messageDatabaseEnabled = true;
+
+        /**
+         * TDLib 内置的存储优化器
+         */
+        private boolean storageOptimizerEnabled = true;
+
+        /**
+         * 不保存文件原名，减少文件数据库占用
+         */
+        private boolean ignoreFileNames = false;
+
+        /**
+         * 是否定期清理 TDLib 缓存文件
+         */
+        private boolean optimizeEnabled = true;
+
+        /**
+         * 清理间隔（毫秒）
+         */
+        private long optimizeInterval = 3600000;
+
+        /**
+         * 缓存文件总大小上限，超过后从最久未访问的文件开始删除，0表示不限制
+         */
+        private String cacheMaxSize = "1GB";
+
+        /**
+         * 超过该时间未访问的缓存文件会被删除（小时），0表示不按时间删除
+         */
+        private int cacheTtlHours = 24;
+
+        /**
+         * 缓存文件数上限，0表示不限制
+         */
+        private int cacheMaxFileCount = 0;
+
+        /**
+         * 最近访问过的文件不删除（分钟）
+         */
+        private int immunityDelayMinutes = 60;
+
+        /**
+         * 验证 TDLib 配置
+         */
+        public void validate() {
+            if (!fileDatabaseEnabled) {
+                log.warn("TDLib 文件数据库已关闭，重启后部分下载的文件需要重新下载");
+            }
+            if (optimizeInterval < 60000) {
+                log.warn("TDLib 缓存清理间隔 {}ms 小于最小值60000ms，已设置为60000", optimizeInterval);
+                optimizeInterval = 60000;
+            }
+            try {
+                StorageConfig.parseSize(cacheMaxSize);
+            } catch (Exception e) {
+                log.warn("TDLib 缓存上限 {} 格式无效，已设置为 1GB", cacheMaxSize);
+                cacheMaxSize = "1GB";
+            }
+            if (cacheTtlHours < 0) {
+                log.warn("TDLib 缓存有效期 {} 小时小于0，已设置为0（不按时间删除）", cacheTtlHours);
+                cacheTtlHours = 0;
+            }
+            if (cacheMaxFileCount < 0) {
+                log.warn("TDLib 缓存文件数上限 {} 小于0，已设置为0（不限制）", cacheMaxFileCount);
+                cacheMaxFileCount = 0;
+            }
+            if (immunityDelayMinutes < 0) {
+                log.warn("TDLib 缓存保护时间 {} 分钟小于0，已设置为0", immunityDelayMinutes);
+                immunityDelayMinutes = 0;
+            }
+        }
+
+        /**
+         * 缓存文件总大小上限（字节），0表示不限制
+         */
+        public long getCacheMaxSizeBytes() {
+            return StorageConfig.parseSize(cacheMaxSize);
+        }
+    }
+
+    @Data
+    public static class SyncConfig {
+        /**
+         * 登录后是否从水位补同步 Saved Messages 和监听的聊天
+         */
+        private boolean onStartup = true;
+
+        /**
+         * 补同步分页请求间隔（毫秒）
+         */
+        private long pageInterval = 1000;
+
+        /**
+         * 实时消息水位写入数据库的间隔（毫秒）
+         */
+        private long flushInterval = 30000;
+
+        /**
+         * 验证同步配置
+         */
+        public void validate() {
+            if (pageInterval < 0 || pageInterval > 60000) {
+                log.warn("补同步分页间隔 {}ms 超出范围(0-60000)，使用默认值1000", pageInterval);
+                pageInterval = 1000;
+            }
+            if (flushInterval < 1000) {
+                log.warn("水位写入间隔 {}ms 小于最小值1000ms，已设置为1000", flushInterval);
+                flushInterval = 1000;
+            }
+        }
+    }
+
     @Data
     public static class WebSocketConfig {
         /**
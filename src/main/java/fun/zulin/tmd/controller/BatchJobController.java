@@ -0,0 +1,103 @@
+package fun.zulin.tmd.controller;
+
+import fun.zulin.tmd.common.exception.ApiResponse;
+import fun.zulin.tmd.data.batch.BatchJob;
+import fun.zulin.tmd.data.batch.BatchJobService;
+import fun.zulin.tmd.service.BatchJobRunner;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * 批量下载任务API控制器
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/downloads/batch/jobs")
+@RequiredArgsConstructor
+public class BatchJobController {
+
+    private final BatchJobService batchJobService;
+
+    private final BatchJobRunner batchJobRunner;
+
+    /**
+     * 列出批量下载任务
+     */
+    @GetMapping
+    public ApiResponse<List<BatchJob>> listJobs() {
+        try {
+            return ApiResponse.success(batchJobService.listRecent());
+        } catch (Exception e) {
+            log.error("获取批量下载任务失败", e);
+            return ApiResponse.error(500, "获取失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 查看批量下载任务
+     */
+    @GetMapping("/{id}")
+    public ApiResponse<BatchJob> getJob(@PathVariable Long id) {
+        try {
+            BatchJob job = batchJobService.getById(id);
+            if (job == null) {
+                return ApiResponse.error(404, "任务不存在");
+            }
+            return ApiResponse.success(job);
+        } catch (Exception e) {
+            log.error("获取批量下载任务失败: {}", id, e);
+            return ApiResponse.error(500, "获取失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 暂停批量下载任务
+     */
+    @PostMapping("/{id}/pause")
+    public ApiResponse<Void> pauseJob(@PathVariable Long id) {
+        try {
+            if (!batchJobRunner.pause(id)) {
+                return ApiResponse.error(404, "任务不存在或未在运行");
+            }
+            return ApiResponse.success(null);
+        } catch (Exception e) {
+            log.error("暂停批量下载任务失败: {}", id, e);
+            return ApiResponse.error(500, "暂停失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 从断点继续批量下载任务
+     */
+    @PostMapping("/{id}/resume")
+    public ApiResponse<Void> resumeJob(@PathVariable Long id) {
+        try {
+            if (!batchJobRunner.resume(id)) {
+                return ApiResponse.error(404, "任务不存在或已结束");
+            }
+            return ApiResponse.success(null);
+        } catch (Exception e) {
+            log.error("继续批量下载任务失败: {}", id, e);
+            return ApiResponse.error(500, "继续失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 取消批量下载任务
+     */
+    @PostMapping("/{id}/cancel")
+    public ApiResponse<Void> cancelJob(@PathVariable Long id) {
+        try {
+            if (!batchJobRunner.cancel(id)) {
+                return ApiResponse.error(404, "任务不存在或已结束");
+            }
+            return ApiResponse.success(null);
+        } catch (Exception e) {
+            log.error("取消批量下载任务失败: {}", id, e);
+            return ApiResponse.error(500, "取消失败: " + e.getMessage());
+        }
+    }
+}
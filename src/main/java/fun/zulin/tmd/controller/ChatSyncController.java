@@ -0,0 +1,91 @@
+package fun.zulin.tmd.controller;
+
+import fun.zulin.tmd.common.exception.ApiResponse;
+import fun.zulin.tmd.data.watermark.ChatWatermark;
+import fun.zulin.tmd.data.watermark.ChatWatermarkService;
+import fun.zulin.tmd.service.ChatSyncService;
+import fun.zulin.tmd.telegram.Tmd;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 聊天补同步API控制器
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/sync")
+@RequiredArgsConstructor
+public class ChatSyncController {
+
+    private final ChatSyncService chatSyncService;
+
+    private final ChatWatermarkService watermarkService;
+
+    /**
+     * 列出同步的聊天及其水位
+     */
+    @GetMapping
+    public ApiResponse<List<Map<String, Object>>> listChats() {
+        try {
+            List<Map<String, Object>> chats = new ArrayList<>();
+            for (Long chatId : chatSyncService.getSyncedChatIds()) {
+                ChatWatermark watermark = watermarkService.getById(chatId);
+                Map<String, Object> chat = new LinkedHashMap<>();
+                chat.put("chatId", chatId);
+                chat.put("lastMessageId", watermark != null ? watermark.getLastMessageId() : null);
+                chat.put("updateTime", watermark != null ? watermark.getUpdateTime() : null);
+                chat.put("syncing", chatSyncService.isSyncing(chatId));
+                chat.put("synced", chatSyncService.isSynced(chatId));
+                chats.add(chat);
+            }
+            return ApiResponse.success(chats);
+        } catch (Exception e) {
+            log.error("获取同步状态失败", e);
+            return ApiResponse.error(500, "获取失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 补同步所有聊天
+     */
+    @PostMapping
+    public ApiResponse<Integer> syncAll() {
+        try {
+            if (Tmd.client == null || Tmd.savedMessagesChat == null) {
+                return ApiResponse.error(503, "Telegram客户端未就绪，请先登录");
+            }
+            return ApiResponse.success(chatSyncService.syncAll());
+        } catch (Exception e) {
+            log.error("补同步失败", e);
+            return ApiResponse.error(500, "补同步失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 补同步一个聊天
+     */
+    @PostMapping("/{chatId}")
+    public ApiResponse<Void> syncChat(@PathVariable Long chatId) {
+        try {
+            if (Tmd.client == null || Tmd.savedMessagesChat == null) {
+                return ApiResponse.error(503, "Telegram客户端未就绪，请先登录");
+            }
+            if (!chatSyncService.getSyncedChatIds().contains(chatId)) {
+                return ApiResponse.error(404, "聊天未监听");
+            }
+            if (!chatSyncService.sync(chatId)) {
+                return ApiResponse.error(409, "聊天正在补同步");
+            }
+            return ApiResponse.success(null);
+        } catch (Exception e) {
+            log.error("补同步聊天失败: {}", chatId, e);
+            return ApiResponse.error(500, "补同步失败: " + e.getMessage());
+        }
+    }
+}
@@ -2,14 +2,20 @@ package fun.zulin.tmd.controller;
 
 import fun.zulin.tmd.common.constant.SystemConstants;
 import fun.zulin.tmd.common.exception.ApiResponse;
+import fun.zulin.tmd.config.TmdProperties;
+import fun.zulin.tmd.data.batch.BatchJob;
 import fun.zulin.tmd.data.item.DownloadItem;
 import fun.zulin.tmd.data.item.DownloadItemService;
 import fun.zulin.tmd.data.item.DownloadItemServiceImpl;
-import fun.zulin.tmd.data.item.DownloadState;
 import fun.zulin.tmd.dto.BatchDownloadRequest;
 import fun.zulin.tmd.dto.BatchDownloadResponse;
+import fun.zulin.tmd.dto.ConcurrencyRequest;
+import fun.zulin.tmd.dto.PriorityRequest;
 import fun.zulin.tmd.dto.TelegramLinkRequest;
 import fun.zulin.tmd.telegram.DownloadManage;
+import fun.zulin.tmd.telegram.LinkResolver;
+import fun.zulin.tmd.service.BatchJobRunner;
+import fun.zulin.tmd.task.AdaptiveConcurrencyTask;
 import fun.zulin.tmd.telegram.Tmd;
 import fun.zulin.tmd.utils.DataCleanupUtil;
 import fun.zulin.tmd.utils.SpringContext;
@@ -22,12 +28,10 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -41,12 +45,11 @@ public class DownloadApiController {
 
     private final DownloadItemService downloadItemService;
 
-    private static final ExecutorService batchDownloadExecutor = Executors.newCachedThreadPool(r -> {
-        Thread t = new Thread(r);
-        t.setName("batch-download-" + System.nanoTime());
-        t.setDaemon(true);
-        return t;
-    });
+    private final TmdProperties tmdProperties;
+
+    private final AdaptiveConcurrencyTask adaptiveConcurrencyTask;
+
+    private final BatchJobRunner batchJobRunner;
 
     /**
      * 获取已完成的下载项
@@ -112,10 +115,9 @@ public class DownloadApiController {
      * 暂停所有下载
      */
     @PostMapping("/pause-all")
-    public ApiResponse<Void> pauseAllDownloads() {
+    public ApiResponse<Integer> pauseAllDownloads() {
         try {
-            // 这里可以添加暂停所有下载的逻辑
-            return ApiResponse.success(null);
+            return ApiResponse.success(DownloadManage.pauseAllDownloads());
         } catch (Exception e) {
             log.error("暂停所有下载失败", e);
             return ApiResponse.error(500, "操作失败: " + e.getMessage());
@@ -123,12 +125,27 @@ public class DownloadApiController {
     }
 
     /**
-     * 暂停指定下载项
+     * 继续所有已暂停的下载
+     */
+    @PostMapping("/resume-all")
+    public ApiResponse<Integer> resumeAllDownloads() {
+        try {
+            return ApiResponse.success(DownloadManage.resumeAllDownloads());
+        } catch (Exception e) {
+            log.error("继续所有下载失败", e);
+            return ApiResponse.error(500, "操作失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 暂停指定下载项，保留已下载的部分
      */
     @PostMapping("/{uniqueId}/pause")
     public ApiResponse<Void> pauseDownload(@PathVariable String uniqueId) {
         try {
-            // 这里可以添加暂停指定下载的逻辑
+            if (!DownloadManage.pauseDownload(uniqueId)) {
+                return ApiResponse.error(400, "下载项不存在或已完成");
+            }
             return ApiResponse.success(null);
         } catch (Exception e) {
             log.error("暂停下载失败: {}", uniqueId, e);
@@ -136,6 +153,129 @@ public class DownloadApiController {
         }
     }
 
+    /**
+     * 继续指定下载项，从已下载的部分接着下载
+     */
+    @PostMapping("/{uniqueId}/resume")
+    public ApiResponse<Void> resumeDownload(@PathVariable String uniqueId) {
+        try {
+            if (!DownloadManage.resumeDownload(uniqueId)) {
+                return ApiResponse.error(400, "下载项不存在、已完成或已在下载中");
+            }
+            return ApiResponse.success(null);
+        } catch (Exception e) {
+            log.error("继续下载失败: {}", uniqueId, e);
+            return ApiResponse.error(500, "操作失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 设置指定下载项的优先级，下载中的下载项立即按新优先级分配带宽
+     */
+    @PutMapping("/{uniqueId}/priority")
+    public ApiResponse<Void> setPriority(@PathVariable String uniqueId, @RequestBody PriorityRequest request) {
+        try {
+            String error = validatePriority(request.getPriority());
+            if (error != null) {
+                return ApiResponse.error(400, error);
+            }
+            if (!DownloadManage.setDownloadPriority(uniqueId, request.getPriority())) {
+                return ApiResponse.error(404, "未找到指定的下载项");
+            }
+            return ApiResponse.success(null);
+        } catch (Exception e) {
+            log.error("设置下载优先级失败: {}", uniqueId, e);
+            return ApiResponse.error(500, "操作失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 批量设置下载项优先级
+     *
+     * @return 修改成功的数量
+     */
+    @PutMapping("/priority")
+    public ApiResponse<Integer> setPriorityBatch(@RequestBody PriorityRequest request) {
+        try {
+            String error = validatePriority(request.getPriority());
+            if (error != null) {
+                return ApiResponse.error(400, error);
+            }
+            if (request.getUniqueIds() == null || request.getUniqueIds().isEmpty()) {
+                return ApiResponse.error(400, "下载项列表不能为空");
+            }
+            return ApiResponse.success(DownloadManage.setDownloadPriority(request.getUniqueIds(), request.getPriority()));
+        } catch (Exception e) {
+            log.error("批量设置下载优先级失败", e);
+            return ApiResponse.error(500, "操作失败: " + e.getMessage());
+        }
+    }
+
+    private String validatePriority(Integer priority) {
+        if (priority == null) {
+            return "优先级不能为空";
+        }
+        if (priority < DownloadManage.MIN_PRIORITY || priority > DownloadManage.MAX_PRIORITY) {
+            return "优先级必须在" + DownloadManage.MIN_PRIORITY + "-" + DownloadManage.MAX_PRIORITY + "之间";
+        }
+        return null;
+    }
+
+    /**
+     * 获取下载并发设置
+     */
+    @GetMapping("/concurrency")
+    public ApiResponse<Map<String, Object>> getConcurrency() {
+        return ApiResponse.success(concurrencyInfo());
+    }
+
+    /**
+     * 运行时修改下载并发设置，不中断正在进行的下载
+     */
+    @PutMapping("/concurrency")
+    public ApiResponse<Map<String, Object>> updateConcurrency(@RequestBody ConcurrencyRequest request) {
+        try {
+            Integer maxConcurrent = request.getMaxConcurrent();
+            if (maxConcurrent != null) {
+                if (maxConcurrent < 1 || maxConcurrent > TmdProperties.DownloadConfig.MAX_CONCURRENT_LIMIT) {
+                    return ApiResponse.error(400, "最大并发数必须在1-" + TmdProperties.DownloadConfig.MAX_CONCURRENT_LIMIT + "之间");
+                }
+                tmdProperties.getDownload().setMaxConcurrent(DownloadManage.setMaxConcurrentDownloads(maxConcurrent));
+            }
+            if (request.getAdaptive() != null) {
+                tmdProperties.getDownload().getAdaptive().setEnabled(request.getAdaptive());
+            }
+            // 手动设置后从新的并发数重新探测
+            adaptiveConcurrencyTask.reset();
+            return ApiResponse.success(concurrencyInfo());
+        } catch (Exception e) {
+            log.error("修改下载并发设置失败", e);
+            return ApiResponse.error(500, "操作失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取带宽限速状态
+     */
+    @GetMapping("/bandwidth")
+    public ApiResponse<Map<String, Object>> getBandwidth() {
+        Map<String, Object> info = new HashMap<>();
+        info.put("limitBytesPerSec", DownloadManage.getBandwidthLimit());
+        info.put("totalBytesPerSec", DownloadManage.getTotalBytesPerSec());
+        info.put("throttledDownloads", DownloadManage.getThrottledDownloadCount());
+        return ApiResponse.success(info);
+    }
+
+    private Map<String, Object> concurrencyInfo() {
+        Map<String, Object> info = new HashMap<>();
+        info.put("maxConcurrent", DownloadManage.getMaxConcurrentDownloads());
+        info.put("activeDownloads", DownloadManage.getActiveDownloadCount());
+        info.put("pendingDownloads", DownloadManage.getPendingDownloadCount());
+        info.put("totalBytesPerSec", DownloadManage.getTotalBytesPerSec());
+        info.put("adaptive", tmdProperties.getDownload().getAdaptive().isEnabled());
+        return info;
+    }
+
     /**
      * 获取所有标签
      */
@@ -244,8 +384,8 @@ public class DownloadApiController {
                 return ApiResponse.error(404, "未找到指定的下载项");
             }
 
-            // 先从内存下载队列中移除（防止重建）
-            DownloadManage.removeDownloadingItems(uniqueId);
+            // 先取消下载并移出内存队列（防止重建），同时删除 TDLib 中的部分文件
+            DownloadManage.cancelDownload(uniqueId);
 
             // 删除对应的文件
             boolean fileDeleted = deleteDownloadedFile(item);
@@ -266,7 +406,7 @@ public class DownloadApiController {
     }
 
     /**
-     * 批量下载指定范围内的消息（通过链接组合方式）
+     * 批量下载指定范围内的消息（分页抓取聊天历史）
      */
     @PostMapping("/batch")
     public ApiResponse<BatchDownloadResponse> batchDownload(@RequestBody BatchDownloadRequest request) {
@@ -302,14 +442,14 @@ public class DownloadApiController {
                     request.getChatId(), request.getStartMessageId(), request.getEndMessageId(),
                     request.getConcurrent(), request.getInterval());
 
-            // 异步处理批量下载（通过链接组合方式）
-            processBatchDownloadByLinks(request);
+            // 创建批量下载任务，后台分页抓取聊天历史
+            BatchJob job = batchJobRunner.submit(request);
 
             // 计算总任务数
             int totalCount = (int) (request.getEndMessageId() - request.getStartMessageId() + 1);
 
             BatchDownloadResponse response = new BatchDownloadResponse(
-                    totalCount, 0, 0, "批量下载任务已提交，正在后台处理中..."
+                    totalCount, 0, 0, "批量下载任务已提交，正在后台处理中...", job.getId()
             );
 
             return ApiResponse.success(response);
@@ -322,332 +462,6 @@ public class DownloadApiController {
 
 
 
-    /**
-     * 异步处理批量下载（通过链接组合方式）
-     */
-    private void processBatchDownloadByLinks(BatchDownloadRequest request) {
-        batchDownloadExecutor.submit(() -> {
-            try {
-                log.info("开始处理批量下载任务（链接方式）: 频道={}, 消息ID范围={}~{}, 并发数={}, 间隔={}ms",
-                        request.getChatId(), request.getStartMessageId(), request.getEndMessageId(),
-                        request.getConcurrent(), request.getInterval());
-
-                // 创建信号量控制并发数
-                Semaphore semaphore = new Semaphore(request.getConcurrent());
-                CountDownLatch latch = new CountDownLatch(
-                        (int) (request.getEndMessageId() - request.getStartMessageId() + 1));
-
-                // 使用原子计数器来避免lambda表达式的final变量问题
-                AtomicInteger successCounter = new AtomicInteger(0);
-                AtomicInteger failedCounter = new AtomicInteger(0);
-
-                // 按消息ID范围逐个处理
-                for (long messageId = request.getStartMessageId();
-                     messageId <= request.getEndMessageId(); messageId++) {
-
-                    try {
-                        semaphore.acquire();
-
-                        // 组合Telegram链接
-                        String telegramLink = String.format("https://t.me/%s/%d",
-                                request.getChatId().trim(), messageId);
-
-                        // 异步处理单个链接
-                        processSingleLinkForBatch(telegramLink, semaphore, latch, request.getMinDurationMinutes(),
-                                () -> successCounter.incrementAndGet(),
-                                () -> failedCounter.incrementAndGet());
-
-                        // 控制请求间隔
-                        if (request.getInterval() > 0 && messageId < request.getEndMessageId()) {
-                            Thread.sleep(request.getInterval());
-                        }
-
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        log.error("批量下载被中断", e);
-                        break;
-                    } catch (Exception e) {
-                        log.error("处理消息ID {} 时发生错误", messageId, e);
-                        failedCounter.incrementAndGet();
-                        latch.countDown();
-                    }
-                }
-
-                // 等待所有任务完成
-                try {
-                    if (latch.await(30, TimeUnit.MINUTES)) { // 最多等待30分钟
-                        log.info("批量下载任务完成（链接方式）: 总数={}, 成功={}, 失败={}",
-                                request.getEndMessageId() - request.getStartMessageId() + 1,
-                                successCounter.get(), failedCounter.get());
-                    } else {
-                        log.warn("批量下载任务超时，可能部分任务仍在进行中");
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    log.error("等待批量下载完成时被中断", e);
-                }
-
-            } catch (Exception e) {
-                log.error("批量下载任务执行失败", e);
-            }
-        });
-    }
-
-    private void processSingleLinkForBatch(String link, Semaphore semaphore,
-                                           CountDownLatch latch, Integer minDurationMinutes, Runnable onSuccess, Runnable onFailure) {
-
-        Tmd.client.send(new TdApi.GetMessageLinkInfo(link), res -> {
-            try {
-                if (res != null && !res.isError()) {
-                    TdApi.MessageLinkInfo linkInfo = res.get();
-                    if (linkInfo != null && linkInfo.message != null) {
-                        long messageId = linkInfo.message.id;
-
-                        // 检查消息内容类型
-                        if (linkInfo.message.content instanceof TdApi.MessageVideo video) {
-                            // 检查视频时长是否满足要求（使用传入的minDurationMinutes参数）
-                            int effectiveMinDuration = minDurationMinutes != null ? minDurationMinutes : 10;
-                            if (video.video.duration >= effectiveMinDuration * 60) {
-                                // 规范化chatId格式
-                                log.info("发现视频链接 {}: {}, 原始Chat ID: {}",
-                                       link, video.video.fileName, linkInfo.chatId);
-                                // 复用现有的视频处理逻辑，使用规范化后的chatId
-                                fun.zulin.tmd.telegram.handler.UpdateNewMessageHandler.processVideoMessage(
-                                        messageId, video, linkInfo.chatId);
-                                onSuccess.run();
-                            } else {
-                                log.info("视频链接时长不足{}分钟，跳过下载: {} (时长: {}秒)", 
-                                        effectiveMinDuration, video.video.fileName, video.video.duration);
-                                onSuccess.run(); // 仍然标记为成功，因为这是预期行为
-                                latch.countDown();
-                            }
-                        } else if (linkInfo.message.content instanceof TdApi.MessageDocument document) {
-                            log.info("发现文档链接 {}: {}", link, document.document.fileName);
-                            // 处理文档消息，并传递latch用于真正的完成通知
-                            processDocumentMessageWithLatch(messageId, document, latch, onSuccess, onFailure);
-                        } else if (linkInfo.message.content instanceof TdApi.MessagePhoto photo) {
-                            log.info("发现图片链接 {}: {}", link, "photo");
-                            // 处理图片消息，并传递latch用于真正的完成通知
-                            processPhotoMessageWithLatch(messageId, photo, latch, onSuccess, onFailure);
-                        } else {
-                            log.warn("链接 {} 指向的消息类型不支持下载: {}", link,
-                                    linkInfo.message.content.getClass().getSimpleName());
-                            onFailure.run();
-                            latch.countDown(); // 只有在失败时才减少计数器
-                        }
-                    } else {
-                        log.warn("无法解析链接信息: {}", link);
-                        onFailure.run();
-                        latch.countDown(); // 只有在失败时才减少计数器
-                    }
-                } else {
-                    log.error("解析Telegram链接失败: {}", link);
-                    onFailure.run();
-                    latch.countDown(); // 只有在失败时才减少计数器
-                }
-
-            } catch (Exception e) {
-                log.error("处理链接 {} 时发生异常", link, e);
-                onFailure.run();
-                latch.countDown(); // 只有在失败时才减少计数器
-            } finally {
-                semaphore.release();
-                // 注意：这里不再调用latch.countDown()，由具体的处理方法负责
-            }
-        });
-    }
-
-    /**
-     * 处理文档消息（带回调通知）
-     */
-    private void processDocumentMessageWithLatch(long messageId, TdApi.MessageDocument document,
-                                                 CountDownLatch latch, Runnable onSuccess, Runnable onFailure) {
-        try {
-            var uniqueId = document.document.document.remote.uniqueId;
-            String originalFilename = document.document.fileName;
-            String captionText = document.caption != null ? document.caption.text : null;
-
-            // 使用公共方法处理下载
-            processDownloadItem(uniqueId, originalFilename, captionText, 
-                    document.document.document.id, document.document.document.size,
-                    "Document", "开始下载文档: {}", latch, onSuccess, onFailure);
-
-        } catch (Exception e) {
-            log.error("处理文档消息 {} 失败", messageId, e);
-            onFailure.run();
-            latch.countDown();
-        }
-    }
-
-    /**
-     * 处理图片消息（带回调通知）
-     */
-    private void processPhotoMessageWithLatch(long messageId, TdApi.MessagePhoto photo,
-                                             CountDownLatch latch, Runnable onSuccess, Runnable onFailure) {
-        try {
-            // 获取最大的图片尺寸
-            TdApi.PhotoSize largestSize = findLargestPhotoSize(photo.photo.sizes);
-
-            if (largestSize == null) {
-                log.warn("图片消息 {} 没有可用的尺寸", messageId);
-                onFailure.run();
-                latch.countDown();
-                return;
-            }
-
-            var uniqueId = largestSize.photo.remote.uniqueId;
-            String captionText = photo.caption != null ? photo.caption.text : null;
-
-            // 使用公共方法处理下载
-            processDownloadItem(uniqueId, "photo.jpg", captionText,
-                    largestSize.photo.id, largestSize.photo.size,
-                    "Photo", "开始下载图片: {}", latch, onSuccess, onFailure);
-
-        } catch (Exception e) {
-            log.error("处理图片消息 {} 失败", messageId, e);
-            onFailure.run();
-            latch.countDown();
-        }
-    }
-
-    /**
-     * 查找最大的图片尺寸
-     */
-    private TdApi.PhotoSize findLargestPhotoSize(TdApi.PhotoSize[] sizes) {
-        if (sizes == null || sizes.length == 0) {
-            return null;
-        }
-        TdApi.PhotoSize largest = null;
-        for (TdApi.PhotoSize size : sizes) {
-            if (largest == null || size.photo.size > largest.photo.size) {
-                largest = size;
-            }
-        }
-        return largest;
-    }
-
-    /**
-     * 公共下载处理方法
-     * 统一处理文档、图片等下载项的创建、保存和下载流程
-     */
-    private void processDownloadItem(String uniqueId, String originalFilename, String captionText,
-                                      int fileId, long fileSize, String fileType,
-                                      String startLogMessage, CountDownLatch latch, 
-                                      Runnable onSuccess, Runnable onFailure) {
-        var service = SpringContext.getBean(DownloadItemServiceImpl.class);
-
-        // 检查是否已存在
-        var existingItem = service.getByUniqueId(uniqueId);
-        if (existingItem != null) {
-            log.info("{} {} 已存在，跳过下载", fileType, originalFilename);
-            onSuccess.run();
-            latch.countDown();
-            return;
-        }
-
-        // 构造描述
-        String description = buildDescription(captionText, originalFilename, fileType);
-
-        // 保存到数据库
-        DownloadItem item = DownloadItem.builder()
-                .description(description)
-                .filename("temp_placeholder")
-                .caption(captionText)
-                .createTime(LocalDateTime.now(ZoneId.of("Asia/Shanghai")))
-                .downloadedSize(0)
-                .fileId(fileId)
-                .fileSize(fileSize)
-                .massageId(0L) // 将在回调中设置
-                .chatId(Tmd.savedMessagesChat.id)
-                .uniqueId(uniqueId)
-                .state(DownloadState.Created.name())
-                .build();
-
-        service.save(item);
-
-        // 使用数据库ID重命名
-        String extension = getFileExtension(originalFilename);
-        String idBasedFilename = item.getId() + extension;
-        item.setFilename(idBasedFilename);
-        service.updateById(item);
-
-        // 添加到下载队列
-        DownloadManage.addDownloadingItems(item);
-
-        // 注册下载完成回调
-        registerDownloadCompletionCallback(item, latch, onSuccess, onFailure);
-
-        // 开始下载
-        DownloadManage.download(item);
-        log.info(startLogMessage, idBasedFilename);
-    }
-
-    /**
-     * 构造文件描述
-     */
-    private String buildDescription(String captionText, String filename, String defaultName) {
-        StringBuilder desc = new StringBuilder();
-        if (captionText != null && !captionText.trim().isEmpty()) {
-            desc.append(captionText.trim());
-        }
-        if (filename != null && !filename.trim().isEmpty() && !filename.equals("photo.jpg")) {
-            if (desc.length() > 0) {
-                desc.append(" - ");
-            }
-            desc.append(filename.trim());
-        }
-        if (desc.length() == 0) {
-            desc.append("Unnamed ").append(defaultName);
-        }
-        return desc.toString();
-    }
-
-    /**
-     * 获取文件扩展名
-     */
-    private String getFileExtension(String filename) {
-        if (filename == null || filename.trim().isEmpty()) {
-            return ".jpg";
-        }
-        int lastDot = filename.lastIndexOf('.');
-        return lastDot > 0 ? filename.substring(lastDot) : ".jpg";
-    }
-
-
-
-
-
-    /**
-     * 注册下载完成回调
-     */
-    private void registerDownloadCompletionCallback(DownloadItem item, CountDownLatch latch,
-                                                    Runnable onSuccess, Runnable onFailure) {
-        // 创建一个监听器来监控下载状态变化
-        DownloadManage.StateChangeListener listener = new DownloadManage.StateChangeListener() {
-            @Override
-            public void onStateChanged(DownloadItem updatedItem, String oldState, String newState) {
-                if (updatedItem.getUniqueId().equals(item.getUniqueId())) {
-                    if (DownloadState.Complete.name().equals(newState)) {
-                        log.info("下载完成: {}", updatedItem.getFilename());
-                        onSuccess.run();
-                        latch.countDown();
-                        // 移除监听器
-                        DownloadManage.removeListener(this);
-                    } else if (DownloadState.Failed.name().equals(newState)) {
-                        log.error("下载失败: {}", updatedItem.getFilename());
-                        onFailure.run();
-                        latch.countDown();
-                        // 移除监听器
-                        DownloadManage.removeListener(this);
-                    }
-                }
-            }
-        };
-
-        // 添加监听器
-        DownloadManage.addListener(listener);
-    }
-
     /**
      * 通过Telegram链接下载视频
      */
@@ -672,19 +486,19 @@ public class DownloadApiController {
             log.info("收到Telegram链接下载请求: {}", link);
 
             // 异步处理链接解析和下载
-            Tmd.client.send(new TdApi.GetMessageLinkInfo(link), res -> {
-                if (res != null && !res.isError()) {
-                    TdApi.MessageLinkInfo linkInfo = res.get();
-                    if (linkInfo != null && linkInfo.message != null) {
+            // 同一链接或同一频道的解析结果会被缓存，重复提交不再请求 TDLib
+            LinkResolver.resolveLink(Tmd.client, link).whenComplete((resolved, error) -> {
+                if (error == null) {
+                    if (resolved != null && resolved.getContent() != null) {
                         // 检查是否为视频消息
-                        if (linkInfo.message.content instanceof TdApi.MessageVideo video) {
+                        if (resolved.getContent() instanceof TdApi.MessageVideo video) {
                             log.info("开始下载链接中的视频: {}", link);
                             // 复用现有的处理逻辑
                             fun.zulin.tmd.telegram.handler.UpdateNewMessageHandler.processVideoMessage(
-                                    linkInfo.message.id, video, linkInfo.chatId);
+                                    resolved.getMessageId(), video, resolved.getChatId());
                         } else {
                             log.warn("链接指向的消息不是视频类型: {}",
-                                    linkInfo.message.content.getClass().getSimpleName());
+                                    resolved.getContent().getClass().getSimpleName());
                         }
                     } else {
                         log.warn("无法解析链接信息: {}", link);
@@ -0,0 +1,70 @@
+package fun.zulin.tmd.controller;
+
+import fun.zulin.tmd.common.exception.ApiResponse;
+import fun.zulin.tmd.service.TdlibStorageService;
+import fun.zulin.tmd.telegram.Tmd;
+import it.tdlight.jni.TdApi;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TDLib 存储API控制器
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/tdlib/storage")
+@RequiredArgsConstructor
+public class TdlibStorageController {
+
+    private final TdlibStorageService storageService;
+
+    /**
+     * 获取 TDLib 存储统计
+     *
+     * @param detail 是否扫描文件并按聊天统计（较慢）
+     */
+    @GetMapping
+    public ApiResponse<Map<String, Object>> getStatistics(@RequestParam(defaultValue = "false") boolean detail) {
+        if (Tmd.client == null) {
+            return ApiResponse.error(503, "Telegram客户端未就绪，请先登录");
+        }
+        try {
+            TdApi.StorageStatisticsFast fast = storageService.getFastStatistics().get(30, TimeUnit.SECONDS);
+            Map<String, Object> result = new HashMap<>();
+            result.put("filesSize", fast.filesSize);
+            result.put("fileCount", fast.fileCount);
+            result.put("databaseSize", fast.databaseSize);
+            result.put("languagePackDatabaseSize", fast.languagePackDatabaseSize);
+            result.put("logSize", fast.logSize);
+            if (detail) {
+                TdApi.StorageStatistics statistics = storageService.getStatistics().get(2, TimeUnit.MINUTES);
+                result.put("byChat", statistics.byChat);
+            }
+            return ApiResponse.success(result);
+        } catch (Exception e) {
+            log.error("获取 TDLib 存储统计失败", e);
+            return ApiResponse.error(500, "获取失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 立即清理 TDLib 缓存
+     */
+    @PostMapping("/optimize")
+    public ApiResponse<Integer> optimize() {
+        if (Tmd.client == null) {
+            return ApiResponse.error(503, "Telegram客户端未就绪，请先登录");
+        }
+        try {
+            return ApiResponse.success(storageService.optimize());
+        } catch (Exception e) {
+            log.error("清理 TDLib 缓存失败", e);
+            return ApiResponse.error(500, "清理失败: " + e.getMessage());
+        }
+    }
+}
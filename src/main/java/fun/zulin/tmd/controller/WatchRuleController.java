@@ -0,0 +1,144 @@
+package fun.zulin.tmd.controller;
+
+import cn.hutool.core.util.StrUtil;
+import fun.zulin.tmd.common.exception.ApiResponse;
+import fun.zulin.tmd.data.watch.WatchRule;
+import fun.zulin.tmd.data.watch.WatchRuleService;
+import fun.zulin.tmd.dto.WatchRuleRequest;
+import fun.zulin.tmd.telegram.LinkResolver;
+import fun.zulin.tmd.telegram.Tmd;
+import fun.zulin.tmd.telegram.WatchRuleIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 频道监听规则API控制器
+ * 规则变化后立即重建监听索引
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/watch-rules")
+@RequiredArgsConstructor
+public class WatchRuleController {
+
+    private final WatchRuleService watchRuleService;
+
+    /**
+     * 列出监听规则
+     */
+    @GetMapping
+    public ApiResponse<List<WatchRule>> listRules() {
+        try {
+            return ApiResponse.success(watchRuleService.listAll());
+        } catch (Exception e) {
+            log.error("获取监听规则失败", e);
+            return ApiResponse.error(500, "获取失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 创建监听规则
+     */
+    @PostMapping
+    public ApiResponse<WatchRule> createRule(@RequestBody WatchRuleRequest request) {
+        try {
+            if (StrUtil.isBlank(request.getChat())) {
+                return ApiResponse.error(400, "频道/群组不能为空");
+            }
+            WatchRule rule = new WatchRule();
+            apply(rule, request);
+            WatchRuleIndex.validate(rule);
+
+            Long chatId = resolveChatId(request.getChat());
+            if (chatId == null) {
+                return ApiResponse.error(400, "无法解析频道/群组: " + request.getChat());
+            }
+            rule.setChatId(chatId);
+            rule.setChat(request.getChat().trim());
+            rule.setCreateTime(LocalDateTime.now());
+            rule.setUpdateTime(LocalDateTime.now());
+            watchRuleService.save(rule);
+            reloadIndex();
+            log.info("创建监听规则 #{}: 聊天 {} ({})", rule.getId(), rule.getChat(), chatId);
+            return ApiResponse.success(rule);
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(400, e.getMessage());
+        } catch (Exception e) {
+            log.error("创建监听规则失败", e);
+            return ApiResponse.error(500, "创建失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 更新监听规则，不能修改监听的聊天
+     */
+    @PutMapping("/{id}")
+    public ApiResponse<WatchRule> updateRule(@PathVariable Long id, @RequestBody WatchRuleRequest request) {
+        try {
+            WatchRule rule = watchRuleService.getById(id);
+            if (rule == null) {
+                return ApiResponse.error(404, "规则不存在");
+            }
+            apply(rule, request);
+            WatchRuleIndex.validate(rule);
+            rule.setUpdateTime(LocalDateTime.now());
+            watchRuleService.updateById(rule);
+            reloadIndex();
+            return ApiResponse.success(rule);
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(400, e.getMessage());
+        } catch (Exception e) {
+            log.error("更新监听规则失败: {}", id, e);
+            return ApiResponse.error(500, "更新失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 删除监听规则
+     */
+    @DeleteMapping("/{id}")
+    public ApiResponse<Void> deleteRule(@PathVariable Long id) {
+        try {
+            if (!watchRuleService.removeById(id)) {
+                return ApiResponse.error(404, "规则不存在");
+            }
+            reloadIndex();
+            return ApiResponse.success(null);
+        } catch (Exception e) {
+            log.error("删除监听规则失败: {}", id, e);
+            return ApiResponse.error(500, "删除失败: " + e.getMessage());
+        }
+    }
+
+    private void apply(WatchRule rule, WatchRuleRequest request) {
+        rule.setEnabled(request.getEnabled() == null || request.getEnabled());
+        rule.setMediaTypes(StrUtil.trimToNull(request.getMediaTypes()));
+        rule.setMinDurationSeconds(request.getMinDurationSeconds());
+        rule.setMinSize(request.getMinSize());
+        rule.setMaxSize(request.getMaxSize());
+        rule.setCaptionRegex(StrUtil.emptyToNull(request.getCaptionRegex()));
+    }
+
+    /**
+     * 数字直接作为聊天ID，否则按公开用户名解析
+     */
+    private Long resolveChatId(String chat) throws Exception {
+        String value = chat.trim();
+        if (value.matches("-?\\d+")) {
+            return Long.parseLong(value);
+        }
+        if (Tmd.client == null) {
+            throw new IllegalStateException("Telegram客户端未就绪，请先登录");
+        }
+        return LinkResolver.resolvePublicChat(Tmd.client, value).get(10, TimeUnit.SECONDS);
+    }
+
+    private void reloadIndex() {
+        WatchRuleIndex.reload(watchRuleService.listEnabled());
+    }
+}
@@ -0,0 +1,109 @@
+package fun.zulin.tmd.data.batch;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.tangzc.autotable.annotation.AutoTable;
+import com.tangzc.autotable.annotation.PrimaryKey;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 批量下载任务
+ * 保存请求参数、抓取断点和计数，重启后从断点继续
+ */
+@Data
+@Builder
+@TableName("batch_job")
+@AutoTable("batch_job")
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchJob {
+
+    @TableId(type = IdType.AUTO)
+    @PrimaryKey(true)
+    private Long id;
+
+    /**
+     * 频道/群组用户名，或私有频道的 c/{id} 形式
+     */
+    private String chat;
+
+    /**
+     * 解析后的聊天ID，首次运行时解析，继续时不再解析
+     */
+    private Long chatId;
+
+    /**
+     * 起始服务器消息ID（含）
+     */
+    private Long startMessageId;
+
+    /**
+     * 结束服务器消息ID（含）
+     */
+    private Long endMessageId;
+
+    /**
+     * 视频最小时长（分钟）
+     */
+    private Integer minDurationMinutes;
+
+    /**
+     * 分页请求间隔（毫秒）
+     */
+    private Integer pageInterval;
+
+    private String state;
+
+    /**
+     * 当前分页的媒体过滤器序号
+     */
+    private Integer filterIndex;
+
+    /**
+     * 断点：当前过滤器已处理到的最早服务器消息ID，下一页从它之前开始
+     */
+    private Long cursor;
+
+    /**
+     * 已发出的分页请求数
+     */
+    private Integer requestCount;
+
+    /**
+     * 已提交下载的消息数
+     */
+    private Integer submittedCount;
+
+    /**
+     * 跳过的消息数（时长不足或类型不支持）
+     */
+    private Integer skippedCount;
+
+    /**
+     * 本任务提交的下载中已完成的数量
+     */
+    private Integer completedCount;
+
+    /**
+     * 本任务提交的下载中失败的数量
+     */
+    private Integer failedCount;
+
+    /**
+     * 任务失败原因
+     */
+    private String error;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime createTime;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime updateTime;
+}
@@ -0,0 +1,9 @@
+package fun.zulin.tmd.data.batch;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Mapper;
+
+@Mapper
+public interface BatchJobMapper extends BaseMapper<BatchJob> {
+
+}
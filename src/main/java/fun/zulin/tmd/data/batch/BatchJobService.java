@@ -0,0 +1,33 @@
+package fun.zulin.tmd.data.batch;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+
+import java.util.List;
+
+public interface BatchJobService extends IService<BatchJob> {
+
+    /**
+     * 按创建时间倒序列出任务
+     */
+    List<BatchJob> listRecent();
+
+    /**
+     * 查询指定状态的任务
+     */
+    List<BatchJob> listByState(BatchJobState state);
+
+    /**
+     * 保存断点和抓取计数（不覆盖下载完成计数）
+     */
+    void saveCheckpoint(BatchJob job);
+
+    /**
+     * 更新任务状态
+     */
+    void updateState(Long id, BatchJobState state, String error);
+
+    /**
+     * 下载结束时累加完成或失败计数
+     */
+    void incrementResult(Long id, boolean completed);
+}
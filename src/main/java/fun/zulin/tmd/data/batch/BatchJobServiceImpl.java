@@ -0,0 +1,67 @@
+package fun.zulin.tmd.data.batch;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+@Slf4j
+@Service
+@Transactional(rollbackFor = Exception.class)
+public class BatchJobServiceImpl extends ServiceImpl<BatchJobMapper, BatchJob> implements BatchJobService {
+
+    @Override
+    public List<BatchJob> listRecent() {
+        var wrapper = new LambdaQueryWrapper<BatchJob>();
+        wrapper.orderByDesc(BatchJob::getId);
+        return this.list(wrapper);
+    }
+
+    @Override
+    public List<BatchJob> listByState(BatchJobState state) {
+        var wrapper = new LambdaQueryWrapper<BatchJob>();
+        wrapper.eq(BatchJob::getState, state.name()).orderByAsc(BatchJob::getId);
+        return this.list(wrapper);
+    }
+
+    @Override
+    public void saveCheckpoint(BatchJob job) {
+        this.lambdaUpdate()
+                .set(BatchJob::getChatId, job.getChatId())
+                .set(BatchJob::getFilterIndex, job.getFilterIndex())
+                .set(BatchJob::getCursor, job.getCursor())
+                .set(BatchJob::getRequestCount, job.getRequestCount())
+                .set(BatchJob::getSubmittedCount, job.getSubmittedCount())
+                .set(BatchJob::getSkippedCount, job.getSkippedCount())
+                .set(BatchJob::getUpdateTime, now())
+                .eq(BatchJob::getId, job.getId())
+                .update();
+    }
+
+    @Override
+    public void updateState(Long id, BatchJobState state, String error) {
+        this.lambdaUpdate()
+                .set(BatchJob::getState, state.name())
+                .set(BatchJob::getError, error)
+                .set(BatchJob::getUpdateTime, now())
+                .eq(BatchJob::getId, id)
+                .update();
+    }
+
+    @Override
+    public void incrementResult(Long id, boolean completed) {
+        this.lambdaUpdate()
+                .setSql(completed ? "completed_count = completed_count + 1" : "failed_count = failed_count + 1")
+                .eq(BatchJob::getId, id)
+                .update();
+    }
+
+    private static LocalDateTime now() {
+        return LocalDateTime.now(ZoneId.of("Asia/Shanghai"));
+    }
+}
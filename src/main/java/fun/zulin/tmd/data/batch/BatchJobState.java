@@ -0,0 +1,10 @@
+package fun.zulin.tmd.data.batch;
+
+public enum BatchJobState {
+
+    Running,
+    Paused,
+    Completed,
+    Cancelled,
+    Failed
+}
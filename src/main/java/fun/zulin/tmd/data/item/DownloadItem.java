@@ -2,17 +2,18 @@ package fun.zulin.tmd.data.item;
 
 import com.baomidou.mybatisplus.annotation.*;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.tangzc.autotable.annotation.AutoTable;
 import com.tangzc.autotable.annotation.Ignore;
 import com.tangzc.autotable.annotation.PrimaryKey;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
-import java.time.Duration;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
 
 @Data
 @Builder
@@ -41,6 +42,17 @@ public class DownloadItem {
 
     private Integer fileId;
 
+    /**
+     * TDLib 远程文件ID，跨重启有效
+     * 恢复下载时通过 GetRemoteFile 重新取得本次会话的 fileId 和本地已下载的部分
+     */
+    private String remoteFileId;
+
+    /**
+     * TDLib 目录中的文件路径（下载中为部分文件），暂停和关闭时记录
+     */
+    private String localPath;
+
     private Long massageId;
 
 
@@ -78,6 +90,13 @@ public class DownloadItem {
     @TableField(exist = false)
     private Float progress;
 
+    /**
+     * 排队中未通过准入检查的原因（如磁盘空间不足、超出存储配额），不持久化
+     */
+    @Ignore
+    @TableField(exist = false)
+    private String blockedReason;
+
     private String state;
 
     /**
@@ -100,6 +119,7 @@ public class DownloadItem {
 
     /**
      * 下载速度（字节/秒）
+     * 下载过程中由进度跟踪器实时计算，只在下载完成时写入平均速度
      */
     private Long downloadBytePerSec;
 
@@ -109,32 +129,49 @@ public class DownloadItem {
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime downloadUpdateTime;
 
+    /**
+     * 下载优先级（1-32，越大越优先），为空时使用全局默认优先级
+     */
+    private Integer priority;
+
+    /**
+     * 文件 SHA-256（十六进制），下载完成落盘时计算
+     */
+    private String sha256;
+
     /**
      * 下载计数器
      */
     @Builder.Default
     private Integer downloadCount = 0;
-    
+
+    /**
+     * 运行时进度跟踪，不持久化也不序列化
+     */
+    @Ignore
+    @JsonIgnore
+    @TableField(exist = false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private final ProgressTracker progressTracker = new ProgressTracker();
+
     // 添加getter方法确保不会返回null
     public Integer getDownloadCount() {
         return downloadCount != null ? downloadCount : 0;
     }
 
     public long getDownloadBytePerSec() {
-        if (downloadBytePerSec != null && downloadUpdateTime != null) {
-            var timeDiff = Duration.between(downloadUpdateTime, LocalDateTime.now(ZoneId.of("Asia/Shanghai"))).toSeconds();
-            if (timeDiff > 2) {
-                return 0;
-            }
+        if (progressTracker.isActive()) {
+            return progressTracker.getBytesPerSec(System.nanoTime());
         }
         return downloadBytePerSec != null ? downloadBytePerSec : 0;
     }
 
-    public LocalDateTime getDownloadUpdateTime() {
-        if (downloadUpdateTime == null) {
-            return LocalDateTime.now(ZoneId.of("Asia/Shanghai"));
-        }
-        return downloadUpdateTime;
+    /**
+     * 预计剩余时间（秒），无法估算时为-1
+     */
+    public long getEtaSeconds() {
+        return progressTracker.getEtaSeconds(fileSize - downloadedSize, System.nanoTime());
     }
 
     public Float getProgress() {
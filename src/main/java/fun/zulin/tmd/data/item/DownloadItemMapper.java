@@ -2,9 +2,28 @@ package fun.zulin.tmd.data.item;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
 
 @Mapper
 public interface DownloadItemMapper extends BaseMapper<DownloadItem> {
 
+    /**
+     * 已完成文件的总大小（字节）
+     */
+    @Select("SELECT COALESCE(SUM(file_size), 0) FROM download_item WHERE state = 'Complete'")
+    long sumCompletedFileSize();
+
+    /**
+     * 已使用过的最大ID（AUTOINCREMENT 序列与现有记录取较大值）
+     */
+    @Select("SELECT MAX(COALESCE((SELECT MAX(id) FROM download_item), 0), "
+            + "COALESCE((SELECT seq FROM sqlite_sequence WHERE name = 'download_item'), 0))")
+    long selectMaxAllocatedId();
+
+    /**
+     * 现有记录的最大ID（没有 sqlite_sequence 表时使用）
+     */
+    @Select("SELECT COALESCE(MAX(id), 0) FROM download_item")
+    long selectMaxId();
 
 }
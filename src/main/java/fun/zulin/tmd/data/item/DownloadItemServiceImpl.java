@@ -11,7 +11,9 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -104,6 +106,61 @@ public class DownloadItemServiceImpl extends ServiceImpl<DownloadItemMapper, Dow
                 .collect(Collectors.toList());
     }
     
+    /**
+     * 获取已完成文件的总大小（字节）
+     */
+    public long getCompletedFileSize() {
+        return this.baseMapper.sumCompletedFileSize();
+    }
+
+    /**
+     * 有未完成下载项的聊天（不含没有记录聊天的下载项）
+     */
+    public Set<Long> getUnfinishedChatIds() {
+        return this.lambdaQuery()
+                .select(DownloadItem::getChatId)
+                .ne(DownloadItem::getState, DownloadState.Complete.name())
+                .isNotNull(DownloadItem::getChatId)
+                .list().stream()
+                .map(DownloadItem::getChatId)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * 已使用过的最大ID，用于预先分配新记录的ID
+     */
+    public long getMaxAllocatedId() {
+        try {
+            return this.baseMapper.selectMaxAllocatedId();
+        } catch (Exception e) {
+            log.debug("读取 sqlite_sequence 失败，使用现有记录的最大ID", e);
+            return this.baseMapper.selectMaxId();
+        }
+    }
+
+    /**
+     * 查询已存在的 uniqueId
+     */
+    public Set<String> getExistingUniqueIds(Collection<String> uniqueIds) {
+        if (uniqueIds.isEmpty()) {
+            return Set.of();
+        }
+        var wrapper = new LambdaQueryWrapper<DownloadItem>();
+        wrapper.select(DownloadItem::getUniqueId).in(DownloadItem::getUniqueId, uniqueIds);
+        return this.baseMapper.selectList(wrapper).stream()
+                .map(DownloadItem::getUniqueId)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * 在同一个事务中插入多条记录，任意一条失败时全部回滚
+     */
+    public void insertAll(List<DownloadItem> items) {
+        for (DownloadItem item : items) {
+            this.baseMapper.insert(item);
+        }
+    }
+
     /**
      * 获取失败的下载项
      */
@@ -0,0 +1,124 @@
+package fun.zulin.tmd.data.item;
+
+/**
+ * 单个下载的进度与速度跟踪
+ * 基于 System.nanoTime() 和基本类型字段，按时间加权的指数移动平均（EWMA）计算速度并估算剩余时间，
+ * 每次进度更新不分配任何对象
+ * <p>
+ * 写入只来自 TDLib 更新线程，读取可来自任意线程
+ */
+public final class ProgressTracker {
+
+    /**
+     * 两次采样的最小间隔，过于密集的更新只记录字节数
+     */
+    static final long MIN_SAMPLE_NANOS = 250_000_000L;
+
+    /**
+     * 超过该时间没有新的采样即视为停滞，速度显示为0
+     */
+    static final long STALE_NANOS = 2_000_000_000L;
+
+    /**
+     * EWMA 时间常数，约等于速度对最近3秒的平均
+     */
+    static final double TAU_NANOS = 3_000_000_000.0;
+
+    private volatile boolean active;
+
+    private long startNanos;
+
+    private long startBytes;
+
+    private long lastBytes;
+
+    private volatile long lastSampleNanos;
+
+    private volatile double bytesPerSec;
+
+    /**
+     * 记录一次进度
+     *
+     * @param downloadedSize 当前已下载字节数
+     * @param nowNanos       当前 System.nanoTime()
+     */
+    public void update(long downloadedSize, long nowNanos) {
+        if (!active) {
+            startNanos = nowNanos;
+            startBytes = downloadedSize;
+            lastBytes = downloadedSize;
+            lastSampleNanos = nowNanos;
+            bytesPerSec = 0;
+            active = true;
+            return;
+        }
+
+        long elapsed = nowNanos - lastSampleNanos;
+        if (elapsed < MIN_SAMPLE_NANOS) {
+            return;
+        }
+
+        long delta = downloadedSize - lastBytes;
+        if (delta < 0) {
+            // 文件被重新下载，从当前位置重新计算
+            delta = 0;
+        }
+        double instant = delta * 1_000_000_000.0 / elapsed;
+        double alpha = 1.0 - Math.exp(-elapsed / TAU_NANOS);
+        double previous = bytesPerSec;
+        bytesPerSec = previous == 0 ? instant : previous + alpha * (instant - previous);
+
+        lastBytes = downloadedSize;
+        lastSampleNanos = nowNanos;
+    }
+
+    /**
+     * 当前速度（字节/秒），停滞超过2秒返回0
+     */
+    public long getBytesPerSec(long nowNanos) {
+        if (!active || nowNanos - lastSampleNanos > STALE_NANOS) {
+            return 0;
+        }
+        return (long) bytesPerSec;
+    }
+
+    /**
+     * 预计剩余时间（秒）
+     *
+     * @param remainingBytes 剩余字节数
+     * @return 无法估算时返回-1
+     */
+    public long getEtaSeconds(long remainingBytes, long nowNanos) {
+        if (remainingBytes <= 0) {
+            return 0;
+        }
+        long speed = getBytesPerSec(nowNanos);
+        if (speed <= 0) {
+            return -1;
+        }
+        return (remainingBytes + speed - 1) / speed;
+    }
+
+    /**
+     * 从开始跟踪到最后一次采样的平均速度（字节/秒），用于下载结束时持久化
+     */
+    public long getAverageBytesPerSec() {
+        if (!active) {
+            return 0;
+        }
+        long elapsed = lastSampleNanos - startNanos;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return (long) ((lastBytes - startBytes) * 1_000_000_000.0 / elapsed);
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public void reset() {
+        active = false;
+        bytesPerSec = 0;
+    }
+}
@@ -0,0 +1,77 @@
+package fun.zulin.tmd.data.watch;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.tangzc.autotable.annotation.AutoTable;
+import com.tangzc.autotable.annotation.PrimaryKey;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 频道监听规则
+ * 监听的聊天中收到的新消息满足规则时自动下载，同一聊天的多条规则满足任意一条即可
+ */
+@Data
+@Builder
+@TableName("watch_rule")
+@AutoTable("watch_rule")
+@NoArgsConstructor
+@AllArgsConstructor
+public class WatchRule {
+
+    @TableId(type = IdType.AUTO)
+    @PrimaryKey(true)
+    private Long id;
+
+    /**
+     * 监听的聊天ID
+     */
+    private Long chatId;
+
+    /**
+     * 创建规则时填写的聊天（用户名或ID），仅用于显示
+     */
+    private String chat;
+
+    /**
+     * 是否启用
+     */
+    private Boolean enabled;
+
+    /**
+     * 下载的媒体类型，逗号分隔：video,document,photo，为空表示全部
+     */
+    private String mediaTypes;
+
+    /**
+     * 视频最小时长（秒），只对视频生效
+     */
+    private Integer minDurationSeconds;
+
+    /**
+     * 文件最小大小（字节）
+     */
+    private Long minSize;
+
+    /**
+     * 文件最大大小（字节），为空表示不限制
+     */
+    private Long maxSize;
+
+    /**
+     * 说明文字需要匹配的正则表达式（部分匹配），为空表示不限制
+     */
+    private String captionRegex;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime createTime;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime updateTime;
+}
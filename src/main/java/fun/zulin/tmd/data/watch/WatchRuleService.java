@@ -0,0 +1,18 @@
+package fun.zulin.tmd.data.watch;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+
+import java.util.List;
+
+public interface WatchRuleService extends IService<WatchRule> {
+
+    /**
+     * 按ID列出所有规则
+     */
+    List<WatchRule> listAll();
+
+    /**
+     * 列出启用的规则
+     */
+    List<WatchRule> listEnabled();
+}
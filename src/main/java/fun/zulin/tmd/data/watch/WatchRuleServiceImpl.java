@@ -0,0 +1,29 @@
+package fun.zulin.tmd.data.watch;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Slf4j
+@Service
+@Transactional(rollbackFor = Exception.class)
+public class WatchRuleServiceImpl extends ServiceImpl<WatchRuleMapper, WatchRule> implements WatchRuleService {
+
+    @Override
+    public List<WatchRule> listAll() {
+        var wrapper = new LambdaQueryWrapper<WatchRule>();
+        wrapper.orderByAsc(WatchRule::getId);
+        return this.list(wrapper);
+    }
+
+    @Override
+    public List<WatchRule> listEnabled() {
+        var wrapper = new LambdaQueryWrapper<WatchRule>();
+        wrapper.eq(WatchRule::getEnabled, true).orderByAsc(WatchRule::getId);
+        return this.list(wrapper);
+    }
+}
@@ -0,0 +1,40 @@
+package fun.zulin.tmd.data.watermark;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.tangzc.autotable.annotation.AutoTable;
+import com.tangzc.autotable.annotation.PrimaryKey;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 聊天同步水位
+ * 记录每个同步的聊天（Saved Messages 和监听的聊天）已处理到的最新消息，
+ * 补同步时只向后分页获取水位之后的消息
+ */
+@Data
+@Builder
+@TableName("chat_watermark")
+@AutoTable("chat_watermark")
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatWatermark {
+
+    @TableId(type = IdType.INPUT)
+    @PrimaryKey(false)
+    private Long chatId;
+
+    /**
+     * 已处理到的最新 TDLib 消息ID
+     */
+    private Long lastMessageId;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime updateTime;
+}
@@ -0,0 +1,9 @@
+package fun.zulin.tmd.data.watermark;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Mapper;
+
+@Mapper
+public interface ChatWatermarkMapper extends BaseMapper<ChatWatermark> {
+
+}
@@ -0,0 +1,16 @@
+package fun.zulin.tmd.data.watermark;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+
+public interface ChatWatermarkService extends IService<ChatWatermark> {
+
+    /**
+     * 聊天已处理到的最新消息ID，没有记录时返回null
+     */
+    Long getLastMessageId(long chatId);
+
+    /**
+     * 推进聊天的水位，只在新的消息ID更大时更新
+     */
+    void advance(long chatId, long messageId);
+}
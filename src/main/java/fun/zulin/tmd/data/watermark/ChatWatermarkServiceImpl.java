@@ -0,0 +1,38 @@
+package fun.zulin.tmd.data.watermark;
+
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+@Slf4j
+@Service
+@Transactional(rollbackFor = Exception.class)
+public class ChatWatermarkServiceImpl extends ServiceImpl<ChatWatermarkMapper, ChatWatermark> implements ChatWatermarkService {
+
+    @Override
+    public Long getLastMessageId(long chatId) {
+        ChatWatermark watermark = this.getById(chatId);
+        return watermark != null ? watermark.getLastMessageId() : null;
+    }
+
+    @Override
+    public void advance(long chatId, long messageId) {
+        boolean updated = this.lambdaUpdate()
+                .set(ChatWatermark::getLastMessageId, messageId)
+                .set(ChatWatermark::getUpdateTime, now())
+                .eq(ChatWatermark::getChatId, chatId)
+                .lt(ChatWatermark::getLastMessageId, messageId)
+                .update();
+        if (!updated && this.getById(chatId) == null) {
+            this.save(ChatWatermark.builder().chatId(chatId).lastMessageId(messageId).updateTime(now()).build());
+        }
+    }
+
+    private static LocalDateTime now() {
+        return LocalDateTime.now(ZoneId.of("Asia/Shanghai"));
+    }
+}
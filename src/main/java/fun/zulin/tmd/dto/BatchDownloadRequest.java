@@ -24,12 +24,12 @@ public class BatchDownloadRequest {
     private Long endMessageId;
     
     /**
-     * 并发数（1-10）
+     * 并发数（1-10），保留兼容；聊天历史按页顺序抓取，下载并发由下载调度器控制
      */
     private Integer concurrent = 3;
     
     /**
-     * 请求间隔（毫秒，0-5000）
+     * 分页请求间隔（毫秒，0-5000）
      */
     private Integer interval = 1000;
     
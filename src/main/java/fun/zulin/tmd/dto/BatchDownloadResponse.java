@@ -29,4 +29,9 @@ public class BatchDownloadResponse {
      * 响应消息
      */
     private String message;
+
+    /**
+     * 批量下载任务ID，用于查询进度、暂停、继续和取消
+     */
+    private Long jobId;
 }
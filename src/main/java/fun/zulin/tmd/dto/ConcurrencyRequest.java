@@ -0,0 +1,20 @@
+package fun.zulin.tmd.dto;
+
+import lombok.Data;
+
+/**
+ * 下载并发设置请求DTO
+ */
+@Data
+public class ConcurrencyRequest {
+
+    /**
+     * 最大并发下载数，为空时不修改
+     */
+    private Integer maxConcurrent;
+
+    /**
+     * 是否启用自适应并发，为空时不修改
+     */
+    private Boolean adaptive;
+}
@@ -0,0 +1,22 @@
+package fun.zulin.tmd.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 下载优先级设置请求DTO
+ */
+@Data
+public class PriorityRequest {
+
+    /**
+     * 优先级（1-32，越大越优先）
+     */
+    private Integer priority;
+
+    /**
+     * 批量设置时的下载项唯一ID列表，单个设置时忽略
+     */
+    private List<String> uniqueIds;
+}
@@ -0,0 +1,45 @@
+package fun.zulin.tmd.dto;
+
+import lombok.Data;
+
+/**
+ * 频道监听规则请求DTO
+ */
+@Data
+public class WatchRuleRequest {
+
+    /**
+     * 频道/群组ID或用户名
+     */
+    private String chat;
+
+    /**
+     * 是否启用
+     */
+    private Boolean enabled = true;
+
+    /**
+     * 下载的媒体类型，逗号分隔：video,document,photo，为空表示全部
+     */
+    private String mediaTypes;
+
+    /**
+     * 视频最小时长（秒）
+     */
+    private Integer minDurationSeconds;
+
+    /**
+     * 文件最小大小（字节）
+     */
+    private Long minSize;
+
+    /**
+     * 文件最大大小（字节）
+     */
+    private Long maxSize;
+
+    /**
+     * 说明文字需要匹配的正则表达式
+     */
+    private String captionRegex;
+}
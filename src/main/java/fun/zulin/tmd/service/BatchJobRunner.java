@@ -0,0 +1,336 @@
+package fun.zulin.tmd.service;
+
+import fun.zulin.tmd.data.batch.BatchJob;
+import fun.zulin.tmd.data.batch.BatchJobService;
+import fun.zulin.tmd.data.batch.BatchJobState;
+import fun.zulin.tmd.data.item.DownloadItem;
+import fun.zulin.tmd.data.item.DownloadState;
+import fun.zulin.tmd.dto.BatchDownloadRequest;
+import fun.zulin.tmd.telegram.ChatHistoryCrawler;
+import fun.zulin.tmd.telegram.DownloadIngest;
+import fun.zulin.tmd.telegram.Tmd;
+import fun.zulin.tmd.telegram.handler.UpdateNewMessageHandler;
+import it.tdlight.jni.TdApi;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量下载任务执行器
+ * 任务参数和抓取断点保存在 batch_job 表中，每抓取一页保存一次断点；
+ * 暂停、取消在下一页之前生效，应用关闭时任务保持 Running 状态，登录后从断点继续
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BatchJobRunner {
+
+    /**
+     * 批量下载抓取的媒体类型，断点中的过滤器序号对应这里的顺序
+     */
+    private static final List<TdApi.SearchMessagesFilter> FILTERS = List.of(
+            new TdApi.SearchMessagesFilterPhotoAndVideo(), new TdApi.SearchMessagesFilterDocument());
+
+    private static final AtomicInteger threadCounter = new AtomicInteger(0);
+
+    private final BatchJobService batchJobService;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r);
+        t.setName("batch-job-" + threadCounter.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * 正在执行的任务
+     */
+    private final Map<Long, RunningJob> running = new ConcurrentHashMap<>();
+
+    /**
+     * 停止原因
+     */
+    private enum StopReason {
+        PAUSE,
+        CANCEL,
+        SHUTDOWN
+    }
+
+    private static final class RunningJob {
+        private volatile StopReason stopReason;
+
+        private boolean isStopped() {
+            return stopReason != null;
+        }
+    }
+
+    /**
+     * 创建批量下载任务并开始执行
+     */
+    public BatchJob submit(BatchDownloadRequest request) {
+        LocalDateTime now = LocalDateTime.now(ZoneId.of("Asia/Shanghai"));
+        BatchJob job = BatchJob.builder()
+                .chat(request.getChatId().trim())
+                .startMessageId(request.getStartMessageId())
+                .endMessageId(request.getEndMessageId())
+                .minDurationMinutes(request.getMinDurationMinutes())
+                .pageInterval(request.getInterval())
+                .state(BatchJobState.Running.name())
+                .filterIndex(0)
+                .requestCount(0)
+                .submittedCount(0)
+                .skippedCount(0)
+                .completedCount(0)
+                .failedCount(0)
+                .createTime(now)
+                .updateTime(now)
+                .build();
+        batchJobService.save(job);
+        log.info("创建批量下载任务 #{}: 频道={}, 消息ID范围={}~{}", job.getId(), job.getChat(),
+                job.getStartMessageId(), job.getEndMessageId());
+        start(job);
+        return job;
+    }
+
+    /**
+     * 暂停任务，正在执行的任务在抓取下一页之前停止
+     *
+     * @return 是否可以暂停（已结束的任务返回false）
+     */
+    public synchronized boolean pause(Long id) {
+        BatchJob job = batchJobService.getById(id);
+        if (job == null || !BatchJobState.Running.name().equals(job.getState())) {
+            return false;
+        }
+        RunningJob handle = running.get(id);
+        if (handle != null) {
+            handle.stopReason = StopReason.PAUSE;
+        } else {
+            batchJobService.updateState(id, BatchJobState.Paused, null);
+        }
+        log.info("暂停批量下载任务 #{}", id);
+        return true;
+    }
+
+    /**
+     * 从断点继续暂停或失败的任务
+     *
+     * @return 是否可以继续（已完成、已取消或正在取消、停机的任务返回false）
+     */
+    public synchronized boolean resume(Long id) {
+        BatchJob job = batchJobService.getById(id);
+        if (job == null || BatchJobState.Completed.name().equals(job.getState())
+                || BatchJobState.Cancelled.name().equals(job.getState())) {
+            return false;
+        }
+        RunningJob handle = running.get(id);
+        if (handle != null) {
+            if (handle.stopReason == StopReason.PAUSE) {
+                // 暂停尚未生效，撤销暂停即可
+                handle.stopReason = null;
+                return true;
+            }
+            // 仍在执行时无需继续；正在取消或停机时不能撤销
+            return handle.stopReason == null;
+        }
+        batchJobService.updateState(id, BatchJobState.Running, null);
+        job.setState(BatchJobState.Running.name());
+        log.info("继续批量下载任务 #{}: 过滤器 {}，断点 {}", id, job.getFilterIndex(), job.getCursor());
+        start(job);
+        return true;
+    }
+
+    /**
+     * 取消任务，已提交的下载不受影响
+     *
+     * @return 是否可以取消（已结束的任务返回false）
+     */
+    public synchronized boolean cancel(Long id) {
+        BatchJob job = batchJobService.getById(id);
+        if (job == null || BatchJobState.Completed.name().equals(job.getState())
+                || BatchJobState.Cancelled.name().equals(job.getState())) {
+            return false;
+        }
+        RunningJob handle = running.get(id);
+        if (handle != null) {
+            handle.stopReason = StopReason.CANCEL;
+        } else {
+            batchJobService.updateState(id, BatchJobState.Cancelled, null);
+        }
+        log.info("取消批量下载任务 #{}", id);
+        return true;
+    }
+
+    /**
+     * 继续上次运行时未结束的任务（Telegram 客户端登录后调用）
+     */
+    public void resumeUnfinished() {
+        try {
+            List<BatchJob> jobs = batchJobService.listByState(BatchJobState.Running);
+            if (!jobs.isEmpty()) {
+                log.info("发现 {} 个未完成的批量下载任务，从断点继续", jobs.size());
+            }
+            jobs.forEach(this::start);
+        } catch (Exception e) {
+            log.error("恢复批量下载任务失败", e);
+        }
+    }
+
+    /**
+     * 停止所有任务，保持 Running 状态以便下次启动后继续
+     */
+    public void shutdown() {
+        running.values().forEach(handle -> handle.stopReason = StopReason.SHUTDOWN);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isRunning(Long id) {
+        return running.containsKey(id);
+    }
+
+    private void start(BatchJob job) {
+        RunningJob handle = new RunningJob();
+        if (running.putIfAbsent(job.getId(), handle) != null) {
+            return;
+        }
+        try {
+            executor.submit(() -> run(job, handle));
+        } catch (Exception e) {
+            running.remove(job.getId(), handle);
+            log.warn("无法启动批量下载任务 #{}: {}", job.getId(), e.getMessage());
+        }
+    }
+
+    private void run(BatchJob job, RunningJob handle) {
+        BatchJobState finalState = null;
+        String error = null;
+        try {
+            if (job.getChatId() == null) {
+                Long chatId = ChatHistoryCrawler.resolveChatId(Tmd.client, job.getChat(), job.getEndMessageId());
+                if (chatId == null) {
+                    throw new IllegalStateException("无法解析频道/群组: " + job.getChat());
+                }
+                job.setChatId(chatId);
+                batchJobService.saveCheckpoint(job);
+            }
+
+            int pageInterval = job.getPageInterval() != null ? job.getPageInterval() : 0;
+            int requestBase = job.getRequestCount() != null ? job.getRequestCount() : 0;
+            ChatHistoryCrawler crawler = new ChatHistoryCrawler(
+                    ChatHistoryCrawler.searchPager(Tmd.client, job.getChatId()),
+                    job.getStartMessageId(), job.getEndMessageId(), pageInterval);
+            int filterIndex = job.getFilterIndex() != null ? job.getFilterIndex() : 0;
+            long cursor = job.getCursor() != null ? job.getCursor() : crawler.initialCursor();
+
+            crawler.crawl(FILTERS, filterIndex, cursor, message -> handleMessage(job, message),
+                    (nextFilter, nextCursor) -> {
+                        job.setFilterIndex(nextFilter);
+                        job.setCursor(nextCursor);
+                        job.setRequestCount(requestBase + crawler.getRequestCount());
+                        batchJobService.saveCheckpoint(job);
+                    }, handle::isStopped);
+
+            log.info("批量下载任务 #{} 抓取结束: 提交 {} 个，跳过 {} 个，共 {} 次请求", job.getId(),
+                    job.getSubmittedCount(), job.getSkippedCount(), job.getRequestCount());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("批量下载任务 #{} 被中断，保留断点", job.getId());
+            handle.stopReason = StopReason.SHUTDOWN;
+        } catch (Exception e) {
+            log.error("批量下载任务 #{} 执行失败", job.getId(), e);
+            finalState = BatchJobState.Failed;
+            error = e.getMessage();
+        } finally {
+            synchronized (this) {
+                running.remove(job.getId(), handle);
+                if (finalState == null) {
+                    StopReason reason = handle.stopReason;
+                    if (reason == null) {
+                        finalState = BatchJobState.Completed;
+                    } else if (reason == StopReason.PAUSE) {
+                        finalState = BatchJobState.Paused;
+                    } else if (reason == StopReason.CANCEL) {
+                        finalState = BatchJobState.Cancelled;
+                    }
+                    // SHUTDOWN：保持 Running，下次启动后从断点继续
+                }
+                if (finalState != null) {
+                    batchJobService.updateState(job.getId(), finalState, error);
+                }
+            }
+        }
+    }
+
+    /**
+     * 为抓取到的媒体消息创建下载项，并在下载结束时累加任务计数
+     */
+    private void handleMessage(BatchJob job, TdApi.Message message) {
+        DownloadItem item;
+        try {
+            item = processMessage(message, job.getChatId(), job.getMinDurationMinutes());
+        } catch (Exception e) {
+            log.error("处理消息 {} 时发生错误", ChatHistoryCrawler.toServerId(message.id), e);
+            item = null;
+        }
+        if (item == null) {
+            job.setSkippedCount(job.getSkippedCount() + 1);
+            return;
+        }
+        job.setSubmittedCount(job.getSubmittedCount() + 1);
+
+        Long jobId = job.getId();
+        DownloadItem submitted = item;
+        DownloadIngest.awaitCompletion(item.getUniqueId()).thenAccept(state -> {
+            boolean completed = DownloadState.Complete.name().equals(state);
+            log.info("批量下载任务 #{} 的下载{}: {}", jobId, completed ? "完成" : "失败", submitted.getFilename());
+            try {
+                batchJobService.incrementResult(jobId, completed);
+            } catch (Exception e) {
+                log.warn("更新批量下载任务 #{} 计数失败", jobId, e);
+            }
+        });
+    }
+
+    /**
+     * @return 下载项（新建或已存在），不需要下载时返回null
+     */
+    private DownloadItem processMessage(TdApi.Message message, long chatId, Integer minDurationMinutes) {
+        if (message.content instanceof TdApi.MessageVideo video) {
+            // 检查视频时长是否满足要求
+            int effectiveMinDuration = minDurationMinutes != null ? minDurationMinutes : 10;
+            if (video.video.duration < effectiveMinDuration * 60) {
+                log.info("视频时长不足{}分钟，跳过下载: {} (时长: {}秒)",
+                        effectiveMinDuration, video.video.fileName, video.video.duration);
+                return null;
+            }
+            log.info("发现视频 {}: {}", ChatHistoryCrawler.toServerId(message.id), video.video.fileName);
+            return UpdateNewMessageHandler.processVideoMessage(message.id, video, chatId);
+        } else if (message.content instanceof TdApi.MessageDocument document) {
+            log.info("发现文档 {}: {}", ChatHistoryCrawler.toServerId(message.id), document.document.fileName);
+            return UpdateNewMessageHandler.processDocumentMessage(message.id, document, chatId);
+        } else if (message.content instanceof TdApi.MessagePhoto photo) {
+            log.info("发现图片 {}", ChatHistoryCrawler.toServerId(message.id));
+            return UpdateNewMessageHandler.processPhotoMessage(message.id, photo, chatId);
+        }
+        log.debug("消息类型不支持下载: {}", message.content.getClass().getSimpleName());
+        return null;
+    }
+}
@@ -0,0 +1,197 @@
+package fun.zulin.tmd.service;
+
+import fun.zulin.tmd.config.TmdProperties;
+import fun.zulin.tmd.data.watermark.ChatWatermarkService;
+import fun.zulin.tmd.telegram.ChatCatchUp;
+import fun.zulin.tmd.telegram.ChatHistoryCrawler;
+import fun.zulin.tmd.telegram.ChatWatermarks;
+import fun.zulin.tmd.telegram.Tmd;
+import fun.zulin.tmd.telegram.WatchRuleIndex;
+import fun.zulin.tmd.telegram.handler.UpdateNewMessageHandler;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 聊天补同步
+ * 每个同步的聊天（Saved Messages 和监听的聊天）在 chat_watermark 表中记录已处理到的最新消息。
+ * 登录后或手动触发时从水位向后分页获取离线期间的新消息，按实时消息的规则放入下载队列；
+ * 首次同步的聊天只记录当前最新消息，不回溯历史。
+ * 启动时尚未补同步完成的聊天不写入实时消息的水位，避免跳过离线期间的消息
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatSyncService {
+
+    private final ChatWatermarkService watermarkService;
+
+    private final TmdProperties properties;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r);
+        t.setName("chat-sync");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * 离线期间可能有新消息、尚未补同步完成的聊天
+     */
+    private final Set<Long> unsynced = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 排队或正在补同步的聊天
+     */
+    private final Set<Long> syncing = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean stopped = false;
+
+    /**
+     * 登录后调用：标记所有同步的聊天需要补同步，按配置开始补同步
+     */
+    public void startup() {
+        Set<Long> chatIds = getSyncedChatIds();
+        unsynced.addAll(chatIds);
+        if (properties.getSync().isOnStartup()) {
+            log.info("开始补同步 {} 个聊天", chatIds.size());
+            chatIds.forEach(this::sync);
+        } else {
+            log.info("启动时补同步已关闭，{} 个聊天等待手动同步", chatIds.size());
+        }
+    }
+
+    /**
+     * 补同步所有同步的聊天
+     *
+     * @return 开始补同步的聊天数
+     */
+    public int syncAll() {
+        int started = 0;
+        for (Long chatId : getSyncedChatIds()) {
+            if (sync(chatId)) {
+                started++;
+            }
+        }
+        return started;
+    }
+
+    /**
+     * 补同步一个聊天
+     *
+     * @return 是否开始补同步，已在补同步中时返回false
+     */
+    public boolean sync(long chatId) {
+        if (stopped || !syncing.add(chatId)) {
+            return false;
+        }
+        try {
+            executor.submit(() -> run(chatId));
+            return true;
+        } catch (Exception e) {
+            syncing.remove(chatId);
+            log.warn("无法开始补同步聊天 {}: {}", chatId, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 同步的聊天：Saved Messages 和所有监听的聊天
+     */
+    public Set<Long> getSyncedChatIds() {
+        Set<Long> chatIds = new LinkedHashSet<>();
+        if (Tmd.savedMessagesChat != null) {
+            chatIds.add(Tmd.savedMessagesChat.id);
+        }
+        chatIds.addAll(WatchRuleIndex.getWatchedChatIds());
+        return chatIds;
+    }
+
+    public boolean isSyncing(long chatId) {
+        return syncing.contains(chatId);
+    }
+
+    public boolean isSynced(long chatId) {
+        return !unsynced.contains(chatId) && !syncing.contains(chatId);
+    }
+
+    /**
+     * 把实时消息的水位写入数据库，尚未补同步完成的聊天留到补同步结束后再写入
+     */
+    public void flush() {
+        Set<Long> excluded = new HashSet<>(unsynced);
+        excluded.addAll(syncing);
+        Map<Long, Long> watermarks = ChatWatermarks.drain(excluded);
+        for (Map.Entry<Long, Long> entry : watermarks.entrySet()) {
+            try {
+                watermarkService.advance(entry.getKey(), entry.getValue());
+            } catch (Exception e) {
+                log.warn("写入聊天 {} 的水位失败: {}", entry.getKey(), e.getMessage());
+                ChatWatermarks.restore(Map.of(entry.getKey(), entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * 停止补同步（水位已按页保存），写入实时消息的水位
+     */
+    public void shutdown() {
+        stopped = true;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void run(long chatId) {
+        try {
+            if (Tmd.client == null) {
+                log.warn("Telegram客户端未就绪，跳过补同步聊天 {}", chatId);
+                return;
+            }
+            ChatCatchUp catchUp = new ChatCatchUp(ChatCatchUp.historyPager(Tmd.client, chatId),
+                    properties.getSync().getPageInterval());
+            Long watermark = watermarkService.getLastMessageId(chatId);
+            if (watermark == null) {
+                long latest = catchUp.latestMessageId();
+                if (latest > 0) {
+                    watermarkService.advance(chatId, latest);
+                }
+                unsynced.remove(chatId);
+                log.info("聊天 {} 首次同步，从最新消息 {} 开始记录水位", chatId, ChatHistoryCrawler.toServerId(latest));
+                return;
+            }
+
+            long last = catchUp.catchUp(watermark, UpdateNewMessageHandler::handle,
+                    messageId -> watermarkService.advance(chatId, messageId), () -> stopped);
+            if (catchUp.isComplete()) {
+                unsynced.remove(chatId);
+            }
+            log.info("聊天 {} 补同步{}: {} 条新消息，{} 次请求，水位 {} -> {}", chatId, catchUp.isComplete() ? "完成" : "中断",
+                    catchUp.getDeliveredCount(), catchUp.getRequestCount(),
+                    ChatHistoryCrawler.toServerId(watermark), ChatHistoryCrawler.toServerId(last));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("聊天 {} 补同步被中断，保留水位", chatId);
+        } catch (Exception e) {
+            log.error("聊天 {} 补同步失败", chatId, e);
+        } finally {
+            syncing.remove(chatId);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package fun.zulin.tmd.service;
 
+import fun.zulin.tmd.telegram.DownloadIngest;
 import fun.zulin.tmd.telegram.DownloadManage;
+import fun.zulin.tmd.telegram.LinkResolver;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
@@ -17,6 +19,8 @@ import org.springframework.stereotype.Service;
 public class MonitoringService {
     
     private final MeterRegistry meterRegistry;
+
+    private final TdlibStorageService tdlibStorageService;
     
     @PostConstruct
     public void initMetrics() {
@@ -30,6 +34,69 @@ public class MonitoringService {
             .description("最大并发下载数")
             .register(meterRegistry);
             
+        // 注册等待准入的下载数指标
+        Gauge.builder("tmd.downloads.pending", DownloadManage::getPendingDownloadCount)
+            .description("等待准入的下载任务数")
+            .register(meterRegistry);
+            
+        // 注册总下载速度指标
+        Gauge.builder("tmd.downloads.bytes_per_sec", DownloadManage::getTotalBytesPerSec)
+            .description("所有活跃下载的总速度（字节/秒）")
+            .register(meterRegistry);
+            
+        // 注册全局限速指标
+        Gauge.builder("tmd.bandwidth.limit", DownloadManage::getBandwidthLimit)
+            .description("当前生效的全局限速（字节/秒），0表示不限速")
+            .register(meterRegistry);
+            
+        // 注册限速等待数指标
+        Gauge.builder("tmd.bandwidth.throttled", DownloadManage::getThrottledDownloadCount)
+            .description("因限速而等待的下载数")
+            .register(meterRegistry);
+            
+        // 注册完成处理积压指标
+        Gauge.builder("tmd.downloads.finalize_backlog", DownloadManage::getFinalizeBacklog)
+            .description("完成处理流水线中的下载数")
+            .register(meterRegistry);
+
+        // 注册入库队列积压指标
+        Gauge.builder("tmd.downloads.ingest_backlog", DownloadIngest::getBacklog)
+            .description("等待批量入库的新消息数")
+            .register(meterRegistry);
+            
+        // 注册链接解析缓存指标
+        Gauge.builder("tmd.resolve.cache_hits", () -> (double) LinkResolver.getLinkCache().getHits()
+                + LinkResolver.getChatCache().getHits())
+            .description("链接解析缓存命中次数")
+            .register(meterRegistry);
+
+        Gauge.builder("tmd.resolve.requests", () -> (double) LinkResolver.getLinkCache().getMisses()
+                + LinkResolver.getChatCache().getMisses())
+            .description("链接解析实际发出的请求数（合并后的并发请求只计一次）")
+            .register(meterRegistry);
+
+        // 注册 TDLib 存储指标
+        Gauge.builder("tmd.tdlib.files_size", tdlibStorageService::getFilesSize)
+            .description("TDLib 缓存文件大小")
+            .register(meterRegistry);
+
+        Gauge.builder("tmd.tdlib.database_size", tdlibStorageService::getDatabaseSize)
+            .description("TDLib 数据库大小")
+            .register(meterRegistry);
+
+        // 注册存储空间指标
+        Gauge.builder("tmd.storage.free_bytes", DownloadManage::getStorageFreeBytes)
+            .description("下载目录所在磁盘的可用空间")
+            .register(meterRegistry);
+            
+        Gauge.builder("tmd.storage.reserved_bytes", DownloadManage::getStorageReservedBytes)
+            .description("为下载中文件预留的空间")
+            .register(meterRegistry);
+            
+        Gauge.builder("tmd.storage.blocked", DownloadManage::getStorageBlockedCount)
+            .description("因存储空间不足而排队的下载数")
+            .register(meterRegistry);
+            
         // 注册下载队列大小指标
         Gauge.builder("tmd.downloads.queue_size", () -> (double) DownloadManage.getItems().size())
             .description("下载队列大小")
@@ -0,0 +1,146 @@
+package fun.zulin.tmd.service;
+
+import fun.zulin.tmd.config.TmdProperties;
+import fun.zulin.tmd.data.item.DownloadItemServiceImpl;
+import fun.zulin.tmd.telegram.SessionPool;
+import fun.zulin.tmd.telegram.TelegramSession;
+import fun.zulin.tmd.telegram.Tmd;
+import it.tdlight.jni.TdApi;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TDLib 存储维护服务
+ * 下载完成的文件已移出 TDLib 目录，但 TDLib 的缩略图、头像等缓存和文件数据库会持续增长，
+ * 与下载文件争用同一块磁盘。定期按大小、未访问时间和文件数上限调用 OptimizeStorage 清理缓存，
+ * 有未完成下载的聊天整体排除，部分下载的文件不会被删除
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TdlibStorageService {
+
+    /**
+     * 存储统计中按聊天列出的最大聊天数
+     */
+    private static final int STATISTICS_CHAT_LIMIT = 10;
+
+    private final TmdProperties properties;
+
+    private final DownloadItemServiceImpl downloadItemService;
+
+    /**
+     * 主会话最近一次的快速存储统计
+     */
+    private volatile TdApi.StorageStatisticsFast lastStatistics;
+
+    /**
+     * 清理所有已登录会话的 TDLib 缓存，结果在回调中记录
+     *
+     * @return 发出清理请求的会话数
+     */
+    public int optimize() {
+        Set<Long> excluded = protectedChatIds();
+        long[] excludeChatIds = excluded.stream().mapToLong(Long::longValue).toArray();
+        int count = 0;
+        for (TelegramSession session : SessionPool.getSessions()) {
+            if (!session.isReady()) {
+                continue;
+            }
+            TdApi.OptimizeStorage request = buildRequest(properties.getTdlib(), excludeChatIds);
+            session.getClient().send(request, result -> {
+                if (result.isError()) {
+                    log.warn("会话 #{} 清理 TDLib 缓存失败: {}", session.getIndex(), result.getError().message);
+                    return;
+                }
+                TdApi.StorageStatistics deleted = result.get();
+                log.info("会话 #{} 已清理 TDLib 缓存: {} 个文件, {} bytes（排除 {} 个有未完成下载的聊天）",
+                        session.getIndex(), deleted.count, deleted.size, excludeChatIds.length);
+                if (session.isPrimary()) {
+                    refreshStatistics();
+                }
+            });
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 刷新主会话的快速存储统计（不扫描文件）
+     */
+    public void refreshStatistics() {
+        if (Tmd.client == null) {
+            return;
+        }
+        Tmd.client.send(new TdApi.GetStorageStatisticsFast(), result -> {
+            if (result.isError()) {
+                log.debug("获取 TDLib 存储统计失败: {}", result.getError().message);
+            } else {
+                lastStatistics = result.get();
+            }
+        });
+    }
+
+    /**
+     * 主会话的完整存储统计，按占用空间列出前几个聊天
+     */
+    public CompletableFuture<TdApi.StorageStatistics> getStatistics() {
+        return Tmd.client.send(new TdApi.GetStorageStatistics(STATISTICS_CHAT_LIMIT));
+    }
+
+    /**
+     * 主会话的快速存储统计
+     */
+    public CompletableFuture<TdApi.StorageStatisticsFast> getFastStatistics() {
+        return Tmd.client.send(new TdApi.GetStorageStatisticsFast()).thenApply(statistics -> {
+            lastStatistics = statistics;
+            return statistics;
+        });
+    }
+
+    /**
+     * TDLib 缓存文件大小（字节），尚未获取时为0
+     */
+    public long getFilesSize() {
+        var statistics = lastStatistics;
+        return statistics != null ? statistics.filesSize : 0;
+    }
+
+    /**
+     * TDLib 数据库大小（字节），尚未获取时为0
+     */
+    public long getDatabaseSize() {
+        var statistics = lastStatistics;
+        return statistics != null ? statistics.databaseSize : 0;
+    }
+
+    /**
+     * 有未完成下载的聊天，清理时整体排除（没有记录聊天的下载项来自 Saved Messages）
+     */
+    private Set<Long> protectedChatIds() {
+        Set<Long> chatIds = new HashSet<>(downloadItemService.getUnfinishedChatIds());
+        if (Tmd.savedMessagesChat != null) {
+            chatIds.add(Tmd.savedMessagesChat.id);
+        }
+        return chatIds;
+    }
+
+    /**
+     * 按配置构造清理请求，配置为0的上限传入最大值表示不限制（TDLib 的 -1 表示使用其默认上限）
+     */
+    private static TdApi.OptimizeStorage buildRequest(TmdProperties.TdlibConfig config, long[] excludeChatIds) {
+        long size = config.getCacheMaxSizeBytes() > 0 ? config.getCacheMaxSizeBytes() : Long.MAX_VALUE;
+        int ttl = config.getCacheTtlHours() > 0
+                ? (int) TimeUnit.HOURS.toSeconds(config.getCacheTtlHours()) : Integer.MAX_VALUE;
+        int count = config.getCacheMaxFileCount() > 0 ? config.getCacheMaxFileCount() : Integer.MAX_VALUE;
+        int immunityDelay = (int) TimeUnit.MINUTES.toSeconds(config.getImmunityDelayMinutes());
+        return new TdApi.OptimizeStorage(size, ttl, count, immunityDelay, null, null, excludeChatIds,
+                true, 0);
+    }
+}
@@ -0,0 +1,71 @@
+package fun.zulin.tmd.task;
+
+import fun.zulin.tmd.config.TmdProperties;
+import fun.zulin.tmd.telegram.AdaptiveConcurrency;
+import fun.zulin.tmd.telegram.DownloadManage;
+import fun.zulin.tmd.telegram.Tmd;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 自适应并发定时任务
+ * 周期性采样总下载速度和 TDLib 错误数，按 AIMD 规则调整最大并发下载数
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AdaptiveConcurrencyTask {
+
+    private final TmdProperties properties;
+
+    private volatile AdaptiveConcurrency controller;
+
+    private long lastErrorCount = 0;
+
+    @Scheduled(fixedDelayString = "${tmd.download.adaptive.sample-interval:10000}")
+    public void adjust() {
+        var adaptive = properties.getDownload().getAdaptive();
+        if (!adaptive.isEnabled()) {
+            controller = null;
+            return;
+        }
+        if (Tmd.client == null) {
+            return;
+        }
+        if (controller == null) {
+            controller = new AdaptiveConcurrency(adaptive.getMinConcurrent(),
+                    adaptive.getMaxConcurrent(), adaptive.getMinGain());
+            lastErrorCount = DownloadManage.getDownloadErrorCount();
+            log.info("自适应并发已启用: 范围 {}-{}", adaptive.getMinConcurrent(), adaptive.getMaxConcurrent());
+        }
+
+        try {
+            long errorCount = DownloadManage.getDownloadErrorCount();
+            long newErrors = errorCount - lastErrorCount;
+            lastErrorCount = errorCount;
+
+            int current = DownloadManage.getMaxConcurrentDownloads();
+            boolean saturated = DownloadManage.getActiveDownloadCount() >= current
+                    && DownloadManage.getPendingDownloadCount() > 0;
+            long bytesPerSec = DownloadManage.getTotalBytesPerSec();
+
+            int next = controller.next(current, bytesPerSec, newErrors, saturated);
+            if (next != current) {
+                log.info("自适应并发调整: {} -> {} (总速度: {} B/s, 新增错误: {})",
+                        current, next, bytesPerSec, newErrors);
+                properties.getDownload().setMaxConcurrent(DownloadManage.setMaxConcurrentDownloads(next));
+            }
+        } catch (Exception e) {
+            log.warn("自适应并发调整失败", e);
+        }
+    }
+
+    /**
+     * 配置变更后重新开始探测
+     */
+    public void reset() {
+        controller = null;
+    }
+}
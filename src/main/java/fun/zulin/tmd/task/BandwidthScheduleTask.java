@@ -0,0 +1,35 @@
+package fun.zulin.tmd.task;
+
+import fun.zulin.tmd.config.TmdProperties;
+import fun.zulin.tmd.telegram.BandwidthSchedule;
+import fun.zulin.tmd.telegram.DownloadManage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalTime;
+import java.time.ZoneId;
+
+/**
+ * 分时段限速定时任务
+ * 每30秒按限速时间表更新全局限速
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BandwidthScheduleTask {
+
+    private final TmdProperties properties;
+
+    @Scheduled(fixedDelay = 30000)
+    public void applySchedule() {
+        try {
+            long limit = BandwidthSchedule.from(properties.getBandwidth())
+                    .limitAt(LocalTime.now(ZoneId.of("Asia/Shanghai")));
+            DownloadManage.setBandwidthLimit(limit);
+        } catch (Exception e) {
+            log.warn("更新带宽限速失败", e);
+        }
+    }
+}
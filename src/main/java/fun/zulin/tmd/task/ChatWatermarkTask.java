@@ -0,0 +1,28 @@
+package fun.zulin.tmd.task;
+
+import fun.zulin.tmd.service.ChatSyncService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 同步水位写入定时任务
+ * 按配置的间隔把实时消息的水位批量写入数据库
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChatWatermarkTask {
+
+    private final ChatSyncService chatSyncService;
+
+    @Scheduled(initialDelay = 30000, fixedDelayString = "${tmd.sync.flush-interval:30000}")
+    public void flush() {
+        try {
+            chatSyncService.flush();
+        } catch (Exception e) {
+            log.warn("写入同步水位失败", e);
+        }
+    }
+}
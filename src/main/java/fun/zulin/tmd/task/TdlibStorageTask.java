@@ -0,0 +1,39 @@
+package fun.zulin.tmd.task;
+
+import fun.zulin.tmd.config.TmdProperties;
+import fun.zulin.tmd.service.TdlibStorageService;
+import fun.zulin.tmd.telegram.Tmd;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * TDLib 缓存清理定时任务
+ * 按配置的间隔清理 TDLib 缓存文件，并刷新存储统计
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TdlibStorageTask {
+
+    private final TmdProperties properties;
+
+    private final TdlibStorageService storageService;
+
+    @Scheduled(initialDelay = 300000, fixedDelayString = "${tmd.tdlib.optimize-interval:3600000}")
+    public void maintain() {
+        if (Tmd.client == null || Tmd.savedMessagesChat == null) {
+            return;
+        }
+        try {
+            if (properties.getTdlib().isOptimizeEnabled()) {
+                storageService.optimize();
+            } else {
+                storageService.refreshStatistics();
+            }
+        } catch (Exception e) {
+            log.warn("TDLib 缓存清理失败", e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package fun.zulin.tmd.telegram;
+
+/**
+ * 自适应并发决策（AIMD）
+ * <ul>
+ *     <li>出现下载错误：并发数减半，并暂停探测若干个周期</li>
+ *     <li>队列饱和且无错误：并发数加1，下个周期检查总吞吐量是否提升</li>
+ *     <li>加1后吞吐量没有明显提升：回退1，暂停探测若干个周期</li>
+ * </ul>
+ * 非线程安全，只应由单个定时任务调用
+ */
+public class AdaptiveConcurrency {
+
+    /**
+     * 回退或减半后暂停探测的周期数
+     */
+    static final int HOLD_TICKS = 6;
+
+    private final int minConcurrent;
+
+    private final int maxConcurrent;
+
+    private final double minGain;
+
+    private boolean probing = false;
+
+    private double baseline = 0;
+
+    private int holdTicks = 0;
+
+    /**
+     * @param minConcurrent 最小并发数
+     * @param maxConcurrent 最大并发数
+     * @param minGain       加1后吞吐量至少提升的比例
+     */
+    public AdaptiveConcurrency(int minConcurrent, int maxConcurrent, double minGain) {
+        this.minConcurrent = Math.max(1, minConcurrent);
+        this.maxConcurrent = Math.max(this.minConcurrent, maxConcurrent);
+        this.minGain = minGain;
+    }
+
+    /**
+     * 根据本周期的采样计算下一个并发数
+     *
+     * @param current      当前并发数
+     * @param bytesPerSec  本周期总下载速度
+     * @param newErrors    本周期新增的下载错误数
+     * @param saturated    所有槽位都在使用且仍有排队项
+     * @return 下一个并发数
+     */
+    public int next(int current, double bytesPerSec, long newErrors, boolean saturated) {
+        if (newErrors > 0) {
+            probing = false;
+            holdTicks = HOLD_TICKS;
+            return clamp(current / 2);
+        }
+
+        if (holdTicks > 0) {
+            holdTicks--;
+            baseline = bytesPerSec;
+            return clamp(current);
+        }
+
+        if (!saturated) {
+            // 并发数不是瓶颈，无需探测
+            probing = false;
+            baseline = bytesPerSec;
+            return clamp(current);
+        }
+
+        if (probing) {
+            probing = false;
+            if (bytesPerSec < baseline * (1 + minGain)) {
+                holdTicks = HOLD_TICKS;
+                return clamp(current - 1);
+            }
+        }
+
+        baseline = bytesPerSec;
+        if (current >= maxConcurrent) {
+            return clamp(current);
+        }
+        probing = true;
+        return current + 1;
+    }
+
+    private int clamp(int value) {
+        return Math.max(minConcurrent, Math.min(maxConcurrent, value));
+    }
+}
@@ -0,0 +1,72 @@
+package fun.zulin.tmd.telegram;
+
+/**
+ * 全局带宽令牌桶
+ * 所有下载共享同一个桶，容量为1秒的流量，按实际下载的字节数扣减令牌；
+ * 令牌不足时允许透支，返回调用方在发出下一次请求前需要等待的时间
+ */
+public class BandwidthGovernor {
+
+    private long bytesPerSec;
+
+    private double tokens;
+
+    private long lastRefillNanos;
+
+    /**
+     * @param bytesPerSec 限速（字节/秒），0表示不限速
+     * @param nowNanos    当前 System.nanoTime()
+     */
+    public BandwidthGovernor(long bytesPerSec, long nowNanos) {
+        this.bytesPerSec = Math.max(0, bytesPerSec);
+        this.tokens = this.bytesPerSec;
+        this.lastRefillNanos = nowNanos;
+    }
+
+    /**
+     * 修改限速，桶中的令牌不超过新的容量
+     *
+     * @param bytesPerSec 限速（字节/秒），0表示不限速
+     */
+    public synchronized void setLimit(long bytesPerSec, long nowNanos) {
+        refill(nowNanos);
+        this.bytesPerSec = Math.max(0, bytesPerSec);
+        this.tokens = Math.min(tokens, this.bytesPerSec);
+    }
+
+    public synchronized long getLimit() {
+        return bytesPerSec;
+    }
+
+    public synchronized boolean isLimited() {
+        return bytesPerSec > 0;
+    }
+
+    /**
+     * 扣减已下载的字节数
+     *
+     * @param bytes    本次下载的字节数
+     * @param nowNanos 当前 System.nanoTime()
+     * @return 发出下一次请求前需要等待的纳秒数，不限速或令牌充足时为0
+     */
+    public synchronized long acquire(long bytes, long nowNanos) {
+        if (bytesPerSec <= 0) {
+            return 0;
+        }
+        refill(nowNanos);
+        tokens -= bytes;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) (-tokens * 1_000_000_000.0 / bytesPerSec);
+    }
+
+    private void refill(long nowNanos) {
+        long elapsed = nowNanos - lastRefillNanos;
+        lastRefillNanos = nowNanos;
+        if (bytesPerSec <= 0 || elapsed <= 0) {
+            return;
+        }
+        tokens = Math.min(bytesPerSec, tokens + elapsed * (bytesPerSec / 1_000_000_000.0));
+    }
+}
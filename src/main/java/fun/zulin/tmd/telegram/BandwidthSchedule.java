@@ -0,0 +1,92 @@
+package fun.zulin.tmd.telegram;
+
+import fun.zulin.tmd.config.TmdProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.unit.DataSize;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分时段带宽限速
+ * 按配置顺序匹配第一个包含当前时间的时段，未匹配时使用默认限速；
+ * 时段可跨越午夜（如 22:00-06:00）
+ */
+@Slf4j
+public class BandwidthSchedule {
+
+    private final long defaultLimit;
+
+    private final List<Rule> rules;
+
+    public BandwidthSchedule(long defaultLimit, List<Rule> rules) {
+        this.defaultLimit = defaultLimit;
+        this.rules = List.copyOf(rules);
+    }
+
+    /**
+     * 从配置解析限速时间表，格式错误的时段会被忽略
+     */
+    public static BandwidthSchedule from(TmdProperties.BandwidthConfig config) {
+        List<Rule> rules = new ArrayList<>();
+        for (TmdProperties.BandwidthRule rule : config.getSchedules()) {
+            try {
+                rules.add(new Rule(LocalTime.parse(rule.getStart()), LocalTime.parse(rule.getEnd()),
+                        parseLimit(rule.getLimit())));
+            } catch (Exception e) {
+                log.warn("忽略无效的限速时段 {}-{} {}: {}", rule.getStart(), rule.getEnd(), rule.getLimit(), e.getMessage());
+            }
+        }
+        return new BandwidthSchedule(parseLimit(config.getLimit()), rules);
+    }
+
+    /**
+     * 解析限速值，如 "5MB"、"512KB"，空值或0表示不限速
+     *
+     * @return 字节/秒
+     */
+    public static long parseLimit(String limit) {
+        if (limit == null || limit.isBlank()) {
+            return 0;
+        }
+        return Math.max(0, DataSize.parse(limit.trim()).toBytes());
+    }
+
+    /**
+     * 获取指定时间的限速（字节/秒），0表示不限速
+     */
+    public long limitAt(LocalTime time) {
+        for (Rule rule : rules) {
+            if (rule.contains(time)) {
+                return rule.limit;
+            }
+        }
+        return defaultLimit;
+    }
+
+    public static final class Rule {
+        private final LocalTime start;
+        private final LocalTime end;
+        private final long limit;
+
+        /**
+         * @param start 开始时间（含）
+         * @param end   结束时间（不含）
+         * @param limit 限速（字节/秒），0表示不限速
+         */
+        public Rule(LocalTime start, LocalTime end, long limit) {
+            this.start = start;
+            this.end = end;
+            this.limit = limit;
+        }
+
+        private boolean contains(LocalTime time) {
+            if (start.isBefore(end)) {
+                return !time.isBefore(start) && time.isBefore(end);
+            }
+            // 跨越午夜
+            return !time.isBefore(start) || time.isBefore(end);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package fun.zulin.tmd.telegram;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 批量处理队列
+ * 生产者只做不阻塞的入队；单个消费线程收到第一条后最多再等待 linger 时间凑满一批，
+ * 批内按键去重（保留先到的一条）后整批交给处理逻辑，把逐条的数据库往返合并为一次事务
+ *
+ * @param <T> 队列元素
+ */
+@Slf4j
+public class BatchingQueue<T> {
+
+    private final String name;
+
+    private final BlockingQueue<T> queue;
+
+    private final int maxBatch;
+
+    private final long lingerNanos;
+
+    private final Function<T, String> keyFunction;
+
+    private final Consumer<List<T>> sink;
+
+    private final AtomicInteger busy = new AtomicInteger(0);
+
+    private volatile Thread worker;
+
+    private volatile boolean stopped = false;
+
+    /**
+     * @param name         队列名称，用于线程命名
+     * @param capacity     队列容量
+     * @param maxBatch     每批最多元素数
+     * @param lingerMillis 凑批的最长等待时间（毫秒）
+     * @param keyFunction  去重键
+     * @param sink         整批处理逻辑
+     */
+    public BatchingQueue(String name, int capacity, int maxBatch, long lingerMillis,
+                         Function<T, String> keyFunction, Consumer<List<T>> sink) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.maxBatch = Math.max(1, maxBatch);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, lingerMillis));
+        this.keyFunction = keyFunction;
+        this.sink = sink;
+    }
+
+    public synchronized void start() {
+        if (worker != null) {
+            return;
+        }
+        Thread thread = new Thread(this::run);
+        thread.setName(name + "-batch");
+        thread.setDaemon(true);
+        worker = thread;
+        thread.start();
+    }
+
+    /**
+     * 入队，不阻塞
+     *
+     * @return 是否入队成功（未启动、已关闭或队列已满时返回false）
+     */
+    public boolean offer(T element) {
+        if (worker == null || stopped) {
+            return false;
+        }
+        return queue.offer(element);
+    }
+
+    /**
+     * 停止接收元素，等待已入队的元素处理完毕
+     *
+     * @return 是否在超时前处理完毕
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        stopped = true;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (getBacklog() > 0) {
+            if (System.nanoTime() >= deadline) {
+                interrupt();
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        interrupt();
+        return true;
+    }
+
+    /**
+     * 排队中和处理中的元素数
+     */
+    public int getBacklog() {
+        return queue.size() + busy.get();
+    }
+
+    private void interrupt() {
+        Thread thread = worker;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        List<T> drained = new ArrayList<>(maxBatch);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                T first = queue.take();
+                busy.incrementAndGet();
+                drained.add(first);
+                collect(drained);
+            } catch (InterruptedException e) {
+                if (drained.isEmpty()) {
+                    return;
+                }
+                // 已取出的元素处理完再退出
+                Thread.currentThread().interrupt();
+            }
+
+            try {
+                sink.accept(dedupe(drained));
+            } catch (Exception e) {
+                log.error("{} 批量处理失败，{} 条", name, drained.size(), e);
+            } finally {
+                busy.addAndGet(-drained.size());
+                drained.clear();
+            }
+        }
+    }
+
+    /**
+     * 在 linger 时间内继续取出元素，直到凑满一批
+     */
+    private void collect(List<T> drained) throws InterruptedException {
+        long deadline = System.nanoTime() + lingerNanos;
+        while (drained.size() < maxBatch) {
+            int moved = queue.drainTo(drained, maxBatch - drained.size());
+            if (moved > 0) {
+                busy.addAndGet(moved);
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            T next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            busy.incrementAndGet();
+            drained.add(next);
+        }
+    }
+
+    private List<T> dedupe(List<T> drained) {
+        Map<String, T> unique = new LinkedHashMap<>();
+        for (T element : drained) {
+            unique.putIfAbsent(keyFunction.apply(element), element);
+        }
+        return new ArrayList<>(unique.values());
+    }
+}
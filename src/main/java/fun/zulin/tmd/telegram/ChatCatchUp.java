@@ -0,0 +1,247 @@
+package fun.zulin.tmd.telegram;
+
+import it.tdlight.client.SimpleTelegramClient;
+import it.tdlight.jni.TdApi;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * 聊天补同步
+ * 从水位（已处理到的最新消息）开始用 GetChatHistory 向更新的消息分页，每页最多 {@link #PAGE_SIZE} 条，
+ * 水位之后、开始时最新的消息之前的消息按从旧到新的顺序交给 sink，每页处理完后保存新的水位。
+ * 请求数只和离线期间的新消息数成正比，不需要重新扫描整个聊天
+ */
+@Slf4j
+public class ChatCatchUp {
+
+    /**
+     * 每次请求的最大消息数（TDLib 上限）
+     */
+    public static final int PAGE_SIZE = 100;
+
+    /**
+     * 向后分页没有返回更新的消息时的重试次数
+     */
+    public static final int EMPTY_PAGE_RETRIES = 2;
+
+    /**
+     * 历史消息请求
+     */
+    @FunctionalInterface
+    public interface Pager {
+        /**
+         * @param fromMessageId 起始消息ID，0表示从最新的消息开始
+         * @param offset        负数表示额外返回起始消息之后（更新）的消息数
+         * @param limit         最多返回的消息数
+         */
+        TdApi.Messages history(long fromMessageId, int offset, int limit) throws Exception;
+    }
+
+    /**
+     * 每页处理完后回调，用于保存水位
+     */
+    @FunctionalInterface
+    public interface Checkpoint {
+        void save(long lastMessageId) throws Exception;
+    }
+
+    private final Pager pager;
+
+    private final long pageIntervalMillis;
+
+    private int requestCount = 0;
+
+    private int deliveredCount = 0;
+
+    private boolean complete = false;
+
+    /**
+     * @param pager              历史消息请求
+     * @param pageIntervalMillis 两次分页请求之间的间隔（毫秒）
+     */
+    public ChatCatchUp(Pager pager, long pageIntervalMillis) {
+        this.pager = pager;
+        this.pageIntervalMillis = Math.max(0, pageIntervalMillis);
+    }
+
+    /**
+     * 使用 TDLib 客户端获取聊天历史的请求
+     */
+    public static Pager historyPager(SimpleTelegramClient client, long chatId) {
+        return (fromMessageId, offset, limit) -> client.send(
+                new TdApi.GetChatHistory(chatId, fromMessageId, offset, limit, false)).get(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 聊天中最新的消息ID，聊天为空时返回0
+     */
+    public long latestMessageId() throws Exception {
+        requestCount++;
+        TdApi.Messages page = pager.history(0, 0, 1);
+        long latest = 0;
+        if (page != null && page.messages != null) {
+            for (TdApi.Message message : page.messages) {
+                latest = Math.max(latest, message.id);
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * 从水位开始向后分页，直到处理到开始时聊天中最新的消息
+     * TDLib 本地缓存不完整时向后分页可能只返回起始消息本身，这时重试 {@link #EMPTY_PAGE_RETRIES} 次，
+     * 仍然没有更新的消息则从最新的消息向前分页取回水位之后的消息
+     *
+     * @param watermark  已处理到的最新消息ID
+     * @param sink       水位之后的消息，从旧到新
+     * @param checkpoint 每页处理完后保存新的水位
+     * @param stopped    每页之前检查，返回true时停止（水位已保存）
+     * @return 处理到的最新消息ID
+     */
+    public long catchUp(long watermark, Consumer<TdApi.Message> sink, Checkpoint checkpoint,
+                        BooleanSupplier stopped) throws Exception {
+        long cursor = watermark;
+        complete = false;
+        if (stopped.getAsBoolean()) {
+            return cursor;
+        }
+        // 之后到达的消息由实时更新处理
+        long latest = latestMessageId();
+        if (cursor >= latest) {
+            complete = true;
+            return cursor;
+        }
+        int emptyPages = 0;
+        while (cursor < latest && !stopped.getAsBoolean()) {
+            pause();
+            requestCount++;
+            // offset 为 -(limit-1)：返回起始消息本身和之后最多 limit-1 条更新的消息
+            TdApi.Messages page = pager.history(cursor, -(PAGE_SIZE - 1), PAGE_SIZE);
+            List<TdApi.Message> newer = select(page, cursor, latest);
+            if (newer.isEmpty()) {
+                if (++emptyPages <= EMPTY_PAGE_RETRIES) {
+                    log.debug("补同步分页没有更新的消息，重试: 水位 {}", ChatHistoryCrawler.toServerId(cursor));
+                    continue;
+                }
+                log.info("补同步向后分页没有返回更新的消息，改为从最新消息向前分页: 水位 {} -> {}",
+                        ChatHistoryCrawler.toServerId(cursor), ChatHistoryCrawler.toServerId(latest));
+                newer = scanBackward(cursor, latest, stopped);
+                if (newer == null) {
+                    break;
+                }
+                if (newer.isEmpty()) {
+                    // 水位和最新消息之间的消息都已删除
+                    cursor = latest;
+                    checkpoint.save(cursor);
+                    complete = true;
+                    break;
+                }
+            }
+            emptyPages = 0;
+            // TDLib 按从新到旧返回，交给 sink 时按从旧到新
+            newer.sort(Comparator.comparingLong(message -> message.id));
+            for (TdApi.Message message : newer) {
+                sink.accept(message);
+                deliveredCount++;
+            }
+            cursor = newer.get(newer.size() - 1).id;
+            checkpoint.save(cursor);
+            log.debug("补同步分页: {} 条新消息，水位 {}", newer.size(), ChatHistoryCrawler.toServerId(cursor));
+            if (cursor >= latest) {
+                complete = true;
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * 从最新的消息向前分页，收集 (cursor, latest] 之间的所有消息
+     *
+     * @return 收集到的消息，停止或既没有收集到消息也没有到达水位时返回null
+     */
+    private List<TdApi.Message> scanBackward(long cursor, long latest, BooleanSupplier stopped) throws Exception {
+        List<TdApi.Message> collected = new ArrayList<>();
+        long from = 0;
+        long oldest = Long.MAX_VALUE;
+        while (true) {
+            if (stopped.getAsBoolean()) {
+                return null;
+            }
+            pause();
+            requestCount++;
+            TdApi.Messages page = pager.history(from, 0, PAGE_SIZE);
+            boolean progressed = false;
+            boolean reachedCursor = false;
+            if (page != null && page.messages != null) {
+                for (TdApi.Message message : page.messages) {
+                    if (message.id >= oldest) {
+                        continue;
+                    }
+                    progressed = true;
+                    oldest = message.id;
+                    if (message.id <= cursor) {
+                        reachedCursor = true;
+                    } else if (message.id <= latest) {
+                        collected.add(message);
+                    }
+                }
+            }
+            if (reachedCursor) {
+                return collected;
+            }
+            if (!progressed) {
+                // 历史到头仍未到达水位：有消息就交给 sink，没有则无法确认水位之后是否有消息
+                return collected.isEmpty() ? null : collected;
+            }
+            from = oldest;
+        }
+    }
+
+    /**
+     * 页中 (cursor, latest] 之间的消息
+     */
+    private static List<TdApi.Message> select(TdApi.Messages page, long cursor, long latest) {
+        List<TdApi.Message> selected = new ArrayList<>();
+        if (page != null && page.messages != null) {
+            for (TdApi.Message message : page.messages) {
+                if (message.id > cursor && message.id <= latest) {
+                    selected.add(message);
+                }
+            }
+        }
+        return selected;
+    }
+
+    private void pause() throws InterruptedException {
+        if (requestCount > 0 && pageIntervalMillis > 0) {
+            Thread.sleep(pageIntervalMillis);
+        }
+    }
+
+    /**
+     * 已发出的请求数
+     */
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * 上一次补同步是否处理到了开始时最新的消息，停止或分页失败时为false
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * 交给 sink 的消息数
+     */
+    public int getDeliveredCount() {
+        return deliveredCount;
+    }
+}
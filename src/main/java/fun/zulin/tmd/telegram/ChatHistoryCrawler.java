@@ -0,0 +1,202 @@
+package fun.zulin.tmd.telegram;
+
+import it.tdlight.client.SimpleTelegramClient;
+import it.tdlight.jni.TdApi;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * 聊天历史分页抓取
+ * 按消息ID范围批量下载时，不再为每个ID组合链接逐个解析：
+ * 聊天只解析一次，然后用带媒体过滤器的 SearchChatMessages 从新到旧分页（每页最多100条），
+ * 已删除或没有媒体的消息不会返回，范围内的媒体消息边抓取边交给下载队列。
+ * 进度用（过滤器序号，游标）表示：游标是当前过滤器已处理到的最早服务器消息ID，
+ * 下一页只取游标之前的消息，保存游标即可在中断后从断点继续
+ */
+@Slf4j
+public class ChatHistoryCrawler {
+
+    /**
+     * 每次请求的最大消息数（TDLib 上限）
+     */
+    public static final int PAGE_SIZE = 100;
+
+    /**
+     * TDLib 消息ID = 服务器消息ID << 20（链接中使用服务器消息ID）
+     */
+    private static final int MESSAGE_ID_SHIFT = 20;
+
+    /**
+     * 分页请求
+     */
+    @FunctionalInterface
+    public interface Pager {
+        /**
+         * @param filter        媒体过滤器
+         * @param fromMessageId 从该消息ID开始向更早的消息分页
+         * @param limit         最多返回的消息数
+         */
+        TdApi.FoundChatMessages search(TdApi.SearchMessagesFilter filter, long fromMessageId, int limit) throws Exception;
+    }
+
+    /**
+     * 每页处理完后回调，用于保存断点
+     */
+    @FunctionalInterface
+    public interface Checkpoint {
+        /**
+         * @param filterIndex 下一页使用的过滤器序号，等于过滤器数量表示已全部完成
+         * @param cursor      下一页只取该服务器消息ID之前的消息
+         */
+        void save(int filterIndex, long cursor) throws Exception;
+    }
+
+    private final Pager pager;
+
+    private final long endServerId;
+
+    private final long lowMessageId;
+
+    private final long highMessageId;
+
+    private final long pageIntervalMillis;
+
+    private int requestCount = 0;
+
+    /**
+     * @param pager              分页请求
+     * @param startServerId      起始服务器消息ID（含）
+     * @param endServerId        结束服务器消息ID（含）
+     * @param pageIntervalMillis 两次分页请求之间的间隔（毫秒）
+     */
+    public ChatHistoryCrawler(Pager pager, long startServerId, long endServerId, long pageIntervalMillis) {
+        this.pager = pager;
+        this.endServerId = endServerId;
+        this.lowMessageId = toMessageId(startServerId);
+        this.highMessageId = toMessageId(endServerId);
+        this.pageIntervalMillis = Math.max(0, pageIntervalMillis);
+    }
+
+    /**
+     * 使用 TDLib 客户端搜索聊天消息的分页请求
+     */
+    public static Pager searchPager(SimpleTelegramClient client, long chatId) {
+        return (filter, fromMessageId, limit) -> {
+            // 按字段赋值，不依赖不同 TDLib 版本的构造参数顺序
+            var request = new TdApi.SearchChatMessages();
+            request.chatId = chatId;
+            request.query = "";
+            request.fromMessageId = fromMessageId;
+            request.offset = 0;
+            request.limit = limit;
+            request.filter = filter;
+            return client.send(request).get(1, TimeUnit.MINUTES);
+        };
+    }
+
+    /**
+     * 解析链接中的聊天，结果由 {@link LinkResolver} 缓存，重复或重叠的批量范围不再重新解析
+     *
+     * @param chat      频道/群组用户名，或私有频道的 c/{id} 形式
+     * @param messageId 范围内任意一个服务器消息ID，消息不存在时同样可以解析出聊天
+     * @return 聊天ID，无法解析时返回null
+     */
+    public static Long resolveChatId(SimpleTelegramClient client, String chat, long messageId) throws Exception {
+        return LinkResolver.resolveChat(client, chat, messageId).get(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 按过滤器依次分页，把范围内的消息交给 sink
+     *
+     * @param filters 媒体过滤器，每个过滤器单独分页
+     * @param sink    范围内的消息，按过滤器分组、组内从新到旧
+     * @return 交给 sink 的消息数
+     */
+    public int crawl(List<TdApi.SearchMessagesFilter> filters, Consumer<TdApi.Message> sink) throws Exception {
+        return crawl(filters, 0, initialCursor(), sink, (filterIndex, cursor) -> {
+        }, () -> false);
+    }
+
+    /**
+     * 从断点继续分页
+     *
+     * @param filters     媒体过滤器，每个过滤器单独分页
+     * @param filterIndex 从该过滤器开始
+     * @param cursor      该过滤器的游标，{@link #initialCursor()} 表示从范围末尾开始
+     * @param sink        范围内的消息
+     * @param checkpoint  每页处理完后保存断点
+     * @param stopped     每页之前检查，返回true时停止（断点已保存）
+     * @return 本次交给 sink 的消息数
+     */
+    public int crawl(List<TdApi.SearchMessagesFilter> filters, int filterIndex, long cursor,
+                     Consumer<TdApi.Message> sink, Checkpoint checkpoint, BooleanSupplier stopped) throws Exception {
+        Set<Long> seen = new HashSet<>();
+        int matched = 0;
+        for (int index = filterIndex; index < filters.size(); index++) {
+            TdApi.SearchMessagesFilter filter = filters.get(index);
+            // 服务器消息的 TDLib ID 都是 2^20 的倍数，减1不会对应真实消息，起点是否包含在结果内都不会重复或遗漏
+            long from = toMessageId(index == filterIndex ? cursor : initialCursor()) - 1;
+            while (from > lowMessageId) {
+                if (stopped.getAsBoolean()) {
+                    return matched;
+                }
+                if (requestCount > 0 && pageIntervalMillis > 0) {
+                    Thread.sleep(pageIntervalMillis);
+                }
+                requestCount++;
+                TdApi.FoundChatMessages page = pager.search(filter, from, PAGE_SIZE);
+                if (page == null || page.messages == null || page.messages.length == 0) {
+                    break;
+                }
+
+                long oldest = Long.MAX_VALUE;
+                for (TdApi.Message message : page.messages) {
+                    oldest = Math.min(oldest, message.id);
+                    if (message.id >= lowMessageId && message.id <= highMessageId && seen.add(message.id)) {
+                        sink.accept(message);
+                        matched++;
+                    }
+                }
+                log.debug("分页 {}: {} 条消息，最早 {}", filter.getClass().getSimpleName(),
+                        page.messages.length, toServerId(oldest));
+
+                if (page.nextFromMessageId == 0 || oldest < lowMessageId) {
+                    break;
+                }
+                // 按本页最早的消息继续，断点只需要保存这一个值
+                from = oldest - 1;
+                checkpoint.save(index, toServerId(oldest));
+            }
+            checkpoint.save(index + 1, initialCursor());
+        }
+        return matched;
+    }
+
+    /**
+     * 尚未处理任何消息时的游标（结束消息ID之后）
+     */
+    public long initialCursor() {
+        return endServerId + 1;
+    }
+
+    /**
+     * 已发出的分页请求数
+     */
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    public static long toMessageId(long serverId) {
+        return serverId << MESSAGE_ID_SHIFT;
+    }
+
+    public static long toServerId(long messageId) {
+        return messageId >> MESSAGE_ID_SHIFT;
+    }
+}
@@ -0,0 +1,53 @@
+package fun.zulin.tmd.telegram;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 实时消息的同步水位
+ * TDLib 更新线程上只在内存中记录每个聊天收到的最新消息ID，不访问数据库，
+ * 由定时任务批量写入 chat_watermark 表
+ */
+public final class ChatWatermarks {
+
+    private static final Map<Long, Long> pending = new ConcurrentHashMap<>();
+
+    private ChatWatermarks() {
+    }
+
+    /**
+     * 记录收到的消息
+     */
+    public static void observe(long chatId, long messageId) {
+        pending.merge(chatId, messageId, Math::max);
+    }
+
+    /**
+     * 取出待写入的水位
+     *
+     * @param excluded 不取出的聊天（尚未补同步，写入会跳过离线期间的消息）
+     * @return 聊天ID → 最新消息ID
+     */
+    public static Map<Long, Long> drain(Set<Long> excluded) {
+        Map<Long, Long> drained = new HashMap<>();
+        for (Long chatId : pending.keySet()) {
+            if (excluded.contains(chatId)) {
+                continue;
+            }
+            Long messageId = pending.remove(chatId);
+            if (messageId != null) {
+                drained.put(chatId, messageId);
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * 写入失败时放回
+     */
+    public static void restore(Map<Long, Long> watermarks) {
+        watermarks.forEach(ChatWatermarks::observe);
+    }
+}
@@ -0,0 +1,120 @@
+package fun.zulin.tmd.telegram;
+
+import fun.zulin.tmd.data.item.DownloadItem;
+import fun.zulin.tmd.data.item.DownloadState;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 下载状态事件总线
+ * 按 uniqueId 保存订阅，一次状态变更只通知该下载项的订阅者和少量全局订阅者（监控、推送等），
+ * 订阅和取消订阅只影响对应下载项的列表
+ */
+@Slf4j
+public class DownloadEventBus {
+
+    private static final DownloadManage.StateChangeListener[] EMPTY = new DownloadManage.StateChangeListener[0];
+
+    private final Map<String, List<DownloadManage.StateChangeListener>> keyed = new ConcurrentHashMap<>();
+
+    private final List<DownloadManage.StateChangeListener> wildcard = new CopyOnWriteArrayList<>();
+
+    /**
+     * 订阅指定下载项的状态变更
+     */
+    public void subscribe(String uniqueId, DownloadManage.StateChangeListener listener) {
+        keyed.compute(uniqueId, (key, listeners) -> {
+            List<DownloadManage.StateChangeListener> result = listeners != null ? listeners : new ArrayList<>(1);
+            result.add(listener);
+            return result;
+        });
+    }
+
+    public void unsubscribe(String uniqueId, DownloadManage.StateChangeListener listener) {
+        keyed.computeIfPresent(uniqueId, (key, listeners) -> {
+            listeners.remove(listener);
+            return listeners.isEmpty() ? null : listeners;
+        });
+    }
+
+    /**
+     * 订阅所有下载项的状态变更
+     */
+    public void subscribeAll(DownloadManage.StateChangeListener listener) {
+        wildcard.add(listener);
+    }
+
+    public void unsubscribeAll(DownloadManage.StateChangeListener listener) {
+        wildcard.remove(listener);
+    }
+
+    /**
+     * 等待下载项进入完成或失败状态
+     *
+     * @return 以最终状态完成的 Future
+     */
+    public CompletableFuture<String> awaitTerminalState(String uniqueId) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        DownloadManage.StateChangeListener listener = (item, oldState, newState) -> {
+            if (DownloadState.Complete.name().equals(newState) || DownloadState.Failed.name().equals(newState)) {
+                future.complete(newState);
+            }
+        };
+        subscribe(uniqueId, listener);
+        // 完成或调用方取消等待时移除订阅
+        future.whenComplete((state, error) -> unsubscribe(uniqueId, listener));
+        return future;
+    }
+
+    /**
+     * 发布状态变更
+     */
+    public void publish(DownloadItem item, String oldState, String newState) {
+        for (DownloadManage.StateChangeListener listener : wildcard) {
+            deliver(listener, item, oldState, newState);
+        }
+
+        DownloadManage.StateChangeListener[] snapshot = snapshot(item.getUniqueId());
+        for (DownloadManage.StateChangeListener listener : snapshot) {
+            deliver(listener, item, oldState, newState);
+        }
+    }
+
+    /**
+     * 指定下载项的订阅者数量
+     */
+    public int getSubscriberCount(String uniqueId) {
+        return snapshot(uniqueId).length;
+    }
+
+    /**
+     * 有订阅者的下载项数量
+     */
+    public int getSubscribedItemCount() {
+        return keyed.size();
+    }
+
+    private DownloadManage.StateChangeListener[] snapshot(String uniqueId) {
+        DownloadManage.StateChangeListener[][] holder = new DownloadManage.StateChangeListener[1][];
+        keyed.computeIfPresent(uniqueId, (key, listeners) -> {
+            holder[0] = listeners.toArray(EMPTY);
+            return listeners;
+        });
+        return holder[0] != null ? holder[0] : EMPTY;
+    }
+
+    private static void deliver(DownloadManage.StateChangeListener listener, DownloadItem item,
+                                String oldState, String newState) {
+        try {
+            listener.onStateChanged(item, oldState, newState);
+        } catch (Exception e) {
+            log.error("状态变更监听器执行异常", e);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package fun.zulin.tmd.telegram;
+
+import fun.zulin.tmd.data.item.DownloadItem;
+import fun.zulin.tmd.data.item.DownloadItemServiceImpl;
+import fun.zulin.tmd.data.item.DownloadState;
+import fun.zulin.tmd.utils.SpringContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 下载项入库入口
+ * 所有来源（Saved Messages、批量下载、链接下载）都经由这里创建下载项：
+ * 按 uniqueId 分段加锁完成“查询-保存”，数据库 unique_id 唯一索引兜底，
+ * 同一文件只会创建一条记录、发起一次 TDLib 下载；重复请求可以等待已有下载的结果。
+ * 新记录的ID在插入前预先分配，基于ID的文件名随插入一起写入；
+ * 监听到的新消息经批量队列异步入库，一批记录在一个事务中插入
+ */
+@Slf4j
+public final class DownloadIngest {
+
+    private static final int STRIPES = 64;
+
+    private static final Object[] locks = new Object[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * 分配ID和插入记录时持有，保证预先分配的ID不会被其他插入占用；
+     * 插入前在锁内再确认记录不存在，唯一索引未创建（旧数据中有重复的已完成记录）时也不会重复插入
+     */
+    private static final Object insertLock = new Object();
+
+    /**
+     * 下一个可分配的ID，0表示需要从数据库读取
+     */
+    private static long nextId = 0;
+
+    private static volatile BatchingQueue<Request> queue;
+
+    private DownloadIngest() {
+    }
+
+    /**
+     * 启动批量入库队列
+     *
+     * @param batchSize    每批最多记录数
+     * @param lingerMillis 凑批的最长等待时间（毫秒）
+     */
+    public static synchronized void start(int batchSize, long lingerMillis) {
+        if (queue != null) {
+            return;
+        }
+        var created = new BatchingQueue<Request>("download-ingest", batchSize * 8, batchSize, lingerMillis,
+                request -> request.candidate.getUniqueId(), DownloadIngest::ingestBatch);
+        created.start();
+        queue = created;
+    }
+
+    /**
+     * 停止批量入库队列，等待已入队的记录写入
+     */
+    public static synchronized void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        if (queue == null) {
+            return;
+        }
+        if (!queue.shutdown(timeout, unit)) {
+            log.warn("入库队列未在超时前处理完毕，剩余 {} 条", queue.getBacklog());
+        }
+        queue = null;
+    }
+
+    /**
+     * 排队等待入库的记录数
+     */
+    public static int getBacklog() {
+        var current = queue;
+        return current != null ? current.getBacklog() : 0;
+    }
+
+    /**
+     * 异步创建下载项，调用线程不访问数据库
+     * 队列未启动或已满时退回同步入库
+     *
+     * @param candidate        待保存的下载项（uniqueId 必填）
+     * @param filenameResolver 根据分配的ID生成文件名
+     */
+    public static void enqueue(DownloadItem candidate, Function<DownloadItem, String> filenameResolver) {
+        var current = queue;
+        if (current != null && current.offer(new Request(candidate, filenameResolver))) {
+            return;
+        }
+        if (current != null) {
+            log.warn("入库队列已满，同步入库: {}", candidate.getUniqueId());
+        }
+        ingest(candidate, filenameResolver);
+    }
+
+    /**
+     * 创建下载项并开始下载，已存在时返回已有记录
+     *
+     * @param candidate        待保存的下载项（uniqueId 必填）
+     * @param filenameResolver 保存后根据数据库ID生成文件名
+     * @return 入库结果
+     */
+    public static Result ingest(DownloadItem candidate, Function<DownloadItem, String> filenameResolver) {
+        var service = SpringContext.getBean(DownloadItemServiceImpl.class);
+        String uniqueId = candidate.getUniqueId();
+
+        synchronized (lockFor(uniqueId)) {
+            var existing = service.getByUniqueId(uniqueId);
+            if (existing != null) {
+                return new Result(existing, false);
+            }
+
+            try {
+                synchronized (insertLock) {
+                    // 批量入库可能在上面的检查之后插入了同一文件
+                    existing = service.getByUniqueId(uniqueId);
+                    if (existing != null) {
+                        return new Result(existing, false);
+                    }
+                    candidate.setId(allocateId(service));
+                    candidate.setFilename(filenameResolver.apply(candidate));
+                    try {
+                        service.save(candidate);
+                    } catch (Exception e) {
+                        nextId = 0;
+                        throw e;
+                    }
+                }
+            } catch (Exception e) {
+                candidate.setId(null);
+                // 其他进程或绕过入口的写入先一步插入，唯一索引拒绝了本次写入
+                existing = service.getByUniqueId(uniqueId);
+                if (existing != null) {
+                    log.info("下载项已由其他请求创建: {}", uniqueId);
+                    return new Result(existing, false);
+                }
+                throw e;
+            }
+
+            DownloadManage.addDownloadingItems(candidate);
+        }
+
+        DownloadManage.download(candidate);
+        return new Result(candidate, true);
+    }
+
+    /**
+     * 等待下载项完成或失败
+     * 先订阅再检查数据库状态，避免在两者之间完成而错过事件
+     *
+     * @return 以最终状态（Complete 或 Failed）完成的 Future
+     */
+    public static CompletableFuture<String> awaitCompletion(String uniqueId) {
+        CompletableFuture<String> future = DownloadManage.awaitTerminalState(uniqueId);
+        try {
+            var service = SpringContext.getBean(DownloadItemServiceImpl.class);
+            var current = service.getByUniqueId(uniqueId);
+            if (current == null) {
+                future.complete(DownloadState.Failed.name());
+            } else if (DownloadState.Complete.name().equals(current.getState())
+                    || DownloadState.Failed.name().equals(current.getState())) {
+                future.complete(current.getState());
+            }
+        } catch (Exception e) {
+            log.warn("查询下载项状态失败: {}", uniqueId, e);
+        }
+        return future;
+    }
+
+    /**
+     * 整批入库：在 insertLock 内一次查询过滤已存在的记录，其余记录预先分配ID和文件名后在一个事务中插入，
+     * 同步入库的插入也在同一把锁内确认记录不存在，两者不会插入同一文件；
+     * 事务失败时逐条退回同步入库
+     */
+    private static void ingestBatch(List<Request> batch) {
+        var service = SpringContext.getBean(DownloadItemServiceImpl.class);
+        List<Request> fresh = new ArrayList<>(batch.size());
+        List<DownloadItem> created;
+        try {
+            synchronized (insertLock) {
+                Set<String> existing = service.getExistingUniqueIds(
+                        batch.stream().map(request -> request.candidate.getUniqueId()).toList());
+                for (Request request : batch) {
+                    if (existing.contains(request.candidate.getUniqueId())) {
+                        log.debug("视频已存在，跳过重复下载: {}", request.candidate.getUniqueId());
+                    } else {
+                        fresh.add(request);
+                    }
+                }
+                if (fresh.isEmpty()) {
+                    return;
+                }
+
+                created = fresh.stream().map(request -> request.candidate).toList();
+                for (Request request : fresh) {
+                    request.candidate.setId(allocateId(service));
+                    request.candidate.setFilename(request.filenameResolver.apply(request.candidate));
+                }
+                try {
+                    service.insertAll(created);
+                } catch (Exception e) {
+                    nextId = 0;
+                    throw e;
+                }
+            }
+        } catch (Exception e) {
+            // 查询已有记录失败时整批逐条入库，逐条入库会再次检查是否已存在
+            List<Request> retry = fresh.isEmpty() ? batch : fresh;
+            log.warn("批量入库失败，逐条入库 {} 条: {}", retry.size(), e.getMessage());
+            for (Request request : retry) {
+                request.candidate.setId(null);
+                try {
+                    ingest(request.candidate, request.filenameResolver);
+                } catch (Exception ex) {
+                    log.error("入库失败: {}", request.candidate.getUniqueId(), ex);
+                }
+            }
+            return;
+        }
+
+        log.info("批量入库 {} 条下载项", created.size());
+        for (DownloadItem item : created) {
+            DownloadManage.addDownloadingItems(item);
+        }
+        for (DownloadItem item : created) {
+            DownloadManage.download(item);
+        }
+    }
+
+    /**
+     * 分配新记录的ID，调用方必须持有 insertLock
+     */
+    private static long allocateId(DownloadItemServiceImpl service) {
+        if (nextId <= 0) {
+            nextId = service.getMaxAllocatedId() + 1;
+        }
+        return nextId++;
+    }
+
+    private static Object lockFor(String uniqueId) {
+        return locks[(uniqueId.hashCode() & 0x7fffffff) % STRIPES];
+    }
+
+    /**
+     * 等待入库的下载项
+     */
+    private static final class Request {
+
+        private final DownloadItem candidate;
+
+        private final Function<DownloadItem, String> filenameResolver;
+
+        private Request(DownloadItem candidate, Function<DownloadItem, String> filenameResolver) {
+            this.candidate = candidate;
+            this.filenameResolver = filenameResolver;
+        }
+    }
+
+    /**
+     * 入库结果
+     */
+    public static final class Result {
+
+        private final DownloadItem item;
+
+        private final boolean created;
+
+        private Result(DownloadItem item, boolean created) {
+            this.item = item;
+            this.created = created;
+        }
+
+        public DownloadItem getItem() {
+            return item;
+        }
+
+        /**
+         * 是否新建（false 表示已存在，没有发起新的下载）
+         */
+        public boolean isCreated() {
+            return created;
+        }
+    }
+}
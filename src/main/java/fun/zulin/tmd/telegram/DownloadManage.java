@@ -1,13 +1,15 @@
 package fun.zulin.tmd.telegram;
 
-import cn.hutool.core.collection.CollectionUtil;
 import fun.zulin.tmd.common.constant.SystemConstants;
 import fun.zulin.tmd.config.TmdProperties;
 import fun.zulin.tmd.data.item.DownloadItem;
 import fun.zulin.tmd.data.item.DownloadItemServiceImpl;
 import fun.zulin.tmd.data.item.DownloadState;
+import fun.zulin.tmd.utils.DownloadDirectoryManager;
+import fun.zulin.tmd.utils.FileFinalizer;
 import fun.zulin.tmd.utils.SpringContext;
 import fun.zulin.tmd.utils.VideoProcessor;
+import it.tdlight.client.SimpleTelegramClient;
 import it.tdlight.jni.TdApi;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
@@ -16,31 +18,97 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.ZoneId;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 public class DownloadManage {
 
-    private static final List<DownloadItem> downloadingItems = new CopyOnWriteArrayList<>();
-
-    private static final AtomicInteger activeDownloads = new AtomicInteger(0);
+    private static final DownloadRegistry registry = new DownloadRegistry();
 
     private static volatile int DOWNLOAD_PRIORITY = 16;
 
+    /**
+     * TDLib DownloadFile 优先级范围
+     */
+    public static final int MIN_PRIORITY = 1;
+
+    public static final int MAX_PRIORITY = 32;
+
     private static volatile int MAX_CONCURRENT_DOWNLOADS = 3;
 
     private static volatile int DOWNLOAD_TIMEOUT_MINUTES = 30;
 
-    private static volatile ThreadPoolExecutor executorService;
+    /**
+     * 限速时每次 DownloadFile 请求的字节数
+     */
+    private static volatile int CHUNK_SIZE = 1048576;
+
+    /**
+     * 启动恢复时每秒最多发出的请求数
+     */
+    private static volatile double RECOVERY_RATE = 2;
+
+    private static final BandwidthGovernor governor = new BandwidthGovernor(0, System.nanoTime());
+
+    private static final AtomicInteger throttledCount = new AtomicInteger(0);
+
+    /**
+     * 没有进展的分段请求重试间隔
+     */
+    private static final long STALLED_RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static volatile RetryPolicy retryPolicy = new RetryPolicy(3, 2000, 300000);
+
+    private static volatile ExecutorService executorService;
+
+    private static volatile ScheduledExecutorService timer;
+
+    private static volatile DownloadScheduler scheduler;
+
+    /**
+     * 存储空间准入控制
+     */
+    private static volatile StorageAdmission storage;
+
+    /**
+     * 已完成文件占用字节数的缓存，避免每次准入检查都查询数据库
+     */
+    private static volatile long usedBytesCache = 0;
+
+    private static volatile long usedBytesCachedAt = 0;
+
+    private static final long USED_BYTES_TTL_NANOS = TimeUnit.SECONDS.toNanos(5);
 
-    private static final List<StateChangeListener> stateChangeListeners = new CopyOnWriteArrayList<>();
+    /**
+     * 下载完成后的处理流水线
+     */
+    private static volatile StagedPipeline<FinalizeJob> finalizer;
+
+    private static final Map<String, DownloadTask> activeTasks = new ConcurrentHashMap<>();
+
+    /**
+     * 恢复时 TDLib 已有部分或完整文件的下载项（按 uniqueId）
+     * 这些下载项不改派会话：完整文件直接进入完成处理，部分文件在原会话中从已下载前缀继续
+     */
+    private static final Map<String, TdApi.File> localFiles = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger threadCounter = new AtomicInteger(0);
+
+    private static final AtomicLong downloadErrorCount = new AtomicLong(0);
+
+    /**
+     * 启动下载的线程数，与最大并发数无关
+     */
+    private static final int DISPATCH_THREADS = 2;
+
+    private static final DownloadEventBus eventBus = new DownloadEventBus();
 
     private static volatile boolean initialized = false;
 
@@ -55,280 +123,1202 @@ public class DownloadManage {
             return;
         }
         
+        int finalizeQueueCapacity = 64;
+        int thumbnailThreads = 1;
+        int ingestBatchSize = 100;
+        long ingestLingerMillis = 50;
+        long storageQuota = 0;
+        long minFreeSpace = 0;
+
         // 从配置获取参数
         try {
             var properties = SpringContext.getBean(TmdProperties.class);
             MAX_CONCURRENT_DOWNLOADS = properties.getDownload().getMaxConcurrent();
             DOWNLOAD_PRIORITY = properties.getDownload().getPriority();
             DOWNLOAD_TIMEOUT_MINUTES = properties.getDownload().getTimeoutMinutes();
+            CHUNK_SIZE = properties.getDownload().getChunkSize();
+            RECOVERY_RATE = properties.getDownload().getRecoveryRate();
+            retryPolicy = new RetryPolicy(properties.getDownload().getRetryCount(),
+                    properties.getDownload().getRetryBaseDelay(), properties.getDownload().getRetryMaxDelay());
+            finalizeQueueCapacity = properties.getDownload().getFinalizeQueueCapacity();
+            thumbnailThreads = properties.getDownload().getThumbnailThreads();
+            ingestBatchSize = properties.getDownload().getIngestBatchSize();
+            ingestLingerMillis = properties.getDownload().getIngestLingerMillis();
+            storageQuota = properties.getStorage().getQuotaBytes();
+            minFreeSpace = properties.getStorage().getMinFreeSpaceBytes();
+            governor.setLimit(BandwidthSchedule.from(properties.getBandwidth())
+                    .limitAt(LocalTime.now(ZoneId.of("Asia/Shanghai"))), System.nanoTime());
         } catch (Exception e) {
             log.warn("无法获取配置，使用默认值: 最大并发数={}, 优先级={}, 超时={}分钟", 
                     MAX_CONCURRENT_DOWNLOADS, DOWNLOAD_PRIORITY, DOWNLOAD_TIMEOUT_MINUTES);
         }
-
-        // 创建线程池（核心线程空闲超时需要非零的 keepAliveTime）
-        executorService = new ThreadPoolExecutor(
-                MAX_CONCURRENT_DOWNLOADS,
-                MAX_CONCURRENT_DOWNLOADS,
-                60L,
-                TimeUnit.SECONDS,
-                new LinkedBlockingQueue<>(),
-                r -> {
-                    Thread t = new Thread(r);
-                    t.setName("download-thread-" + System.nanoTime());
-                    t.setDaemon(true);
-                    return t;
-                },
-                new ThreadPoolExecutor.CallerRunsPolicy()
-        );
-        executorService.allowCoreThreadTimeOut(true);
-        
-        initialized = true;
-        log.info("DownloadManage 初始化完成: 最大并发数={}, 优先级={}, 超时={}分钟", 
-                MAX_CONCURRENT_DOWNLOADS, DOWNLOAD_PRIORITY, DOWNLOAD_TIMEOUT_MINUTES);
+
+        // 下载过程完全异步，线程只用于启动下载（更新状态并发出请求），超时由共享定时器处理
+        executorService = Executors.newFixedThreadPool(DISPATCH_THREADS, r -> {
+            Thread t = new Thread(r);
+            t.setName("download-dispatch-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r);
+            t.setName("download-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        storage = new StorageAdmission(storageQuota, minFreeSpace,
+                DownloadManage::queryUsableSpace, DownloadManage::queryUsedBytes);
+        scheduler = new DownloadScheduler(MAX_CONCURRENT_DOWNLOADS, executorService,
+                DownloadManage::startDownload, storage);
+        // 删除文件等操作释放空间后，定期重新检查因空间不足排队的下载项
+        timer.scheduleWithFixedDelay(() -> {
+            try {
+                scheduler.retryBlocked();
+            } catch (Exception e) {
+                log.warn("重新检查排队下载项失败", e);
+            }
+        }, 30, 30, TimeUnit.SECONDS);
+        finalizer = createFinalizer(finalizeQueueCapacity, thumbnailThreads);
+        finalizer.start();
+        DownloadIngest.start(ingestBatchSize, ingestLingerMillis);
+
+        initialized = true;
+        log.info("DownloadManage 初始化完成: 最大并发数={}, 优先级={}, 超时={}分钟", 
+                MAX_CONCURRENT_DOWNLOADS, DOWNLOAD_PRIORITY, DOWNLOAD_TIMEOUT_MINUTES);
+    }
+
+    /**
+     * 优雅关闭下载管理器
+     */
+    public static synchronized void shutdown() {
+        if (!initialized || executorService == null) {
+            return;
+        }
+
+        log.info("开始优雅关闭 DownloadManage...");
+
+        try {
+            // 已监听到的消息先写入数据库，重启后可以恢复
+            DownloadIngest.shutdown(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        // 停止派发排队中的任务
+        scheduler.clear();
+        executorService.shutdown();
+        timer.shutdownNow();
+        
+        try {
+            // 等待正在启动的下载完成，最多等待30秒
+            if (!executorService.awaitTermination(30, TimeUnit.SECONDS)) {
+                // 强制停止
+                executorService.shutdownNow();
+                log.warn("下载线程池强制关闭");
+            } else {
+                log.info("下载线程池正常关闭");
+            }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+            log.warn("关闭过程被中断");
+        }
+        try {
+            // 等待已完成的下载处理完毕，避免文件留在 TDLib 目录
+            if (!finalizer.shutdown(30, TimeUnit.SECONDS)) {
+                log.warn("完成处理流水线未在30秒内处理完毕，剩余 {} 个", finalizer.getBacklog());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 记录下载中文件的进度和部分文件路径，重启后从已下载前缀继续
+        activeTasks.values().stream()
+                .filter(task -> !task.isFinished())
+                .forEach(task -> persistPartial(task.getItem()));
+        activeTasks.clear();
+        
+        initialized = false;
+    }
+
+    /**
+     * 获取内存中的下载项快照（只读）
+     */
+    public static List<DownloadItem> getItems() {
+        List<DownloadItem> items = registry.snapshot();
+        if (scheduler != null) {
+            // 排队中未通过准入检查的下载项带上原因，前端显示在排队状态旁
+            for (DownloadItem item : items) {
+                item.setBlockedReason(DownloadState.Created.name().equals(item.getState())
+                        ? scheduler.getBlockedReason(item.getUniqueId()) : null);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * 获取当前活跃下载数量
+     */
+    public static int getActiveDownloadCount() {
+        return scheduler != null ? scheduler.getActiveCount() : 0;
+    }
+
+    /**
+     * 获取等待准入的下载数量
+     */
+    public static int getPendingDownloadCount() {
+        return scheduler != null ? scheduler.getPendingCount() : 0;
+    }
+
+    /**
+     * 获取最大并发下载数
+     */
+    public static int getMaxConcurrentDownloads() {
+        return MAX_CONCURRENT_DOWNLOADS;
+    }
+
+    /**
+     * 运行时调整最大并发下载数，不中断正在进行的下载
+     *
+     * @param maxConcurrent 新的最大并发数，超出范围时自动截断
+     * @return 实际生效的最大并发数
+     */
+    public static int setMaxConcurrentDownloads(int maxConcurrent) {
+        int value = Math.max(1, Math.min(TmdProperties.DownloadConfig.MAX_CONCURRENT_LIMIT, maxConcurrent));
+        int previous = MAX_CONCURRENT_DOWNLOADS;
+        MAX_CONCURRENT_DOWNLOADS = value;
+        if (scheduler != null) {
+            scheduler.setMaxConcurrent(value);
+        }
+        if (previous != value) {
+            log.info("最大并发下载数调整: {} -> {}", previous, value);
+        }
+        return value;
+    }
+
+    /**
+     * 获取所有活跃下载的总速度（字节/秒）
+     */
+    public static long getTotalBytesPerSec() {
+        long total = 0;
+        for (DownloadTask task : activeTasks.values()) {
+            total += task.getItem().getDownloadBytePerSec();
+        }
+        return total;
+    }
+
+    /**
+     * 获取启动以来 TDLib 返回的下载错误数
+     */
+    public static long getDownloadErrorCount() {
+        return downloadErrorCount.get();
+    }
+
+    /**
+     * 设置全局限速
+     * 从不限速切换为限速时，正在进行的整文件请求会被替换为分段请求，已下载的部分不受影响
+     *
+     * @param bytesPerSec 限速（字节/秒），0表示不限速
+     */
+    public static void setBandwidthLimit(long bytesPerSec) {
+        long previous = governor.getLimit();
+        if (previous == bytesPerSec) {
+            return;
+        }
+        governor.setLimit(bytesPerSec, System.nanoTime());
+        log.info("全局限速调整: {} -> {} B/s (0表示不限速)", previous, bytesPerSec);
+
+        if (bytesPerSec > 0 && initialized) {
+            for (DownloadTask task : activeTasks.values()) {
+                if (!task.isRanged() && !task.isFinished()) {
+                    issueRange(task, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取当前生效的全局限速（字节/秒），0表示不限速
+     */
+    public static long getBandwidthLimit() {
+        return governor.getLimit();
+    }
+
+    /**
+     * 获取因限速而等待发出下一段请求的下载数
+     */
+    public static int getThrottledDownloadCount() {
+        return throttledCount.get();
+    }
+
+    /**
+     * 获取下载目录所在磁盘的可用空间，无法获取时为-1
+     */
+    public static long getStorageFreeBytes() {
+        return storage != null ? storage.getUsableSpace() : queryUsableSpace();
+    }
+
+    /**
+     * 获取为下载中文件预留的字节数（尚未写入的部分）
+     */
+    public static long getStorageReservedBytes() {
+        return storage != null ? storage.getReservedBytes() : 0;
+    }
+
+    /**
+     * 获取因磁盘空间或存储配额不足而排队的下载数
+     */
+    public static int getStorageBlockedCount() {
+        return scheduler != null ? scheduler.getBlockedCount() : 0;
+    }
+
+    /**
+     * 获取完成处理流水线中排队和处理中的下载数
+     */
+    public static int getFinalizeBacklog() {
+        return finalizer != null ? finalizer.getBacklog() : 0;
+    }
+
+    /**
+     * 状态变更监听器接口
+     */
+    public interface StateChangeListener {
+        void onStateChanged(DownloadItem item, String oldState, String newState);
+    }
+
+    /**
+     * 添加全局状态变更监听器（接收所有下载项的事件）
+     */
+    public static void addListener(StateChangeListener listener) {
+        if (listener != null) {
+            eventBus.subscribeAll(listener);
+        }
+    }
+
+    /**
+     * 移除全局状态变更监听器
+     */
+    public static void removeListener(StateChangeListener listener) {
+        if (listener != null) {
+            eventBus.unsubscribeAll(listener);
+        }
+    }
+
+    /**
+     * 订阅指定下载项的状态变更
+     */
+    public static void subscribe(String uniqueId, StateChangeListener listener) {
+        if (uniqueId != null && listener != null) {
+            eventBus.subscribe(uniqueId, listener);
+        }
+    }
+
+    /**
+     * 取消订阅指定下载项的状态变更
+     */
+    public static void unsubscribe(String uniqueId, StateChangeListener listener) {
+        if (uniqueId != null && listener != null) {
+            eventBus.unsubscribe(uniqueId, listener);
+        }
+    }
+
+    /**
+     * 等待下载项完成或失败
+     *
+     * @return 以最终状态（Complete 或 Failed）完成的 Future
+     */
+    public static CompletableFuture<String> awaitTerminalState(String uniqueId) {
+        return eventBus.awaitTerminalState(uniqueId);
+    }
+
+    /**
+     * 触发状态变更事件
+     */
+    private static void fireStateChanged(DownloadItem item, String oldState, String newState) {
+        eventBus.publish(item, oldState, newState);
+    }
+
+    /**
+     * 下载文件
+     *
+     * @param item 下载项
+     */
+    public static void download(DownloadItem item) {
+        if (item == null) {
+            log.warn("下载项不能为空");
+            return;
+        }
+
+        // 确保初始化
+        if (!initialized) {
+            initialize();
+        }
+
+        if (!scheduler.submit(item, priorityOf(item))) {
+            log.debug("下载项已在队列中，忽略重复提交: {}", item.getUniqueId());
+        }
+    }
+
+    /**
+     * 修改下载项优先级
+     * 排队中的下载项按新优先级调整准入顺序；下载中的下载项按原范围重新发出 DownloadFile，
+     * TDLib 以新的优先级分配带宽
+     *
+     * @param priority 优先级（1-32，越大越优先）
+     * @return 是否找到下载项
+     */
+    public static boolean setDownloadPriority(String uniqueId, int priority) {
+        int value = Math.max(MIN_PRIORITY, Math.min(MAX_PRIORITY, priority));
+        var service = SpringContext.getBean(DownloadItemServiceImpl.class);
+        boolean updated = service.lambdaUpdate()
+                .eq(DownloadItem::getUniqueId, uniqueId)
+                .set(DownloadItem::getPriority, value)
+                .update();
+        if (!updated) {
+            return false;
+        }
+
+        DownloadItem live = registry.getByUniqueId(uniqueId);
+        if (live != null) {
+            live.setPriority(value);
+        }
+        if (scheduler != null && scheduler.reprioritize(uniqueId, value)) {
+            log.info("调整排队下载项优先级: {} -> {}", uniqueId, value);
+        }
+
+        DownloadTask task = activeTasks.get(uniqueId);
+        if (task != null && !task.isFinished() && clientFor(task.getItem()) != null) {
+            task.getItem().setPriority(value);
+            sendDownloadFile(task, task.getRequestOffset(), task.getRequestLimit());
+            log.info("调整下载中下载项优先级: {} -> {}", uniqueId, value);
+        }
+        return true;
+    }
+
+    /**
+     * 批量修改下载项优先级
+     *
+     * @return 找到并修改的下载项数量
+     */
+    public static int setDownloadPriority(List<String> uniqueIds, int priority) {
+        int count = 0;
+        for (String uniqueId : uniqueIds) {
+            if (setDownloadPriority(uniqueId, priority)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 下载项的有效优先级，未设置时使用全局默认优先级
+     */
+    private static int priorityOf(DownloadItem item) {
+        Integer priority = item.getPriority();
+        return priority != null ? priority : DOWNLOAD_PRIORITY;
+    }
+
+    /**
+     * 启动已获准入的下载
+     * 只发出 TDLib 请求并登记超时，不阻塞任何线程等待下载结束
+     *
+     * @param item 下载项
+     */
+    private static void startDownload(DownloadItem item) {
+        DownloadTask task = new DownloadTask(item);
+        activeTasks.put(item.getUniqueId(), task);
+        item.getProgressTracker().reset();
+        log.info("开始下载文件: {}, 当前活跃下载数: {}", item.getFilename(), scheduler.getActiveCount());
+
+        try {
+            // 更新状态为下载中
+            try {
+                var service = SpringContext.getBean(DownloadItemServiceImpl.class);
+                var saveItem = service.getByUniqueId(item.getUniqueId());
+                if (saveItem != null && !DownloadState.Downloading.name().equals(saveItem.getState())) {
+                    String oldState = saveItem.getState();
+                    saveItem.setState(DownloadState.Downloading.name());
+                    service.updateById(saveItem);
+                    log.info("更新下载项状态为下载中: {}", item.getFilename());
+
+                    // 触发状态变更事件
+                    fireStateChanged(saveItem, oldState, saveItem.getState());
+
+                    // 立即推送状态更新
+                    pushStateUpdate(saveItem);
+                }
+            } catch (Exception e) {
+                log.warn("更新下载状态失败: {}", item.getUniqueId(), e);
+            }
+
+            task.markProgress(item.getDownloadedSize());
+            scheduleTimeout(task);
+            routeAndIssue(task);
+        } catch (Exception e) {
+            log.error("下载过程中发生异常: {}", item.getUniqueId(), e);
+            failDownload(task, 0, e.getMessage());
+        }
+    }
+
+    /**
+     * 选择执行下载的会话后发出请求
+     * 频道消息可以交给负载更低的会话：在目标会话中获取消息，绑定该会话的 fileId；
+     * 获取失败时仍由当前绑定的会话下载
+     */
+    private static void routeAndIssue(DownloadTask task) {
+        DownloadItem item = task.getItem();
+        int current = registry.getSession(item.getUniqueId());
+        TdApi.File local = localFiles.remove(item.getUniqueId());
+        if (local != null) {
+            task.bindSession(SessionPool.get(current));
+            if (local.local.isDownloadingCompleted) {
+                log.info("TDLib 已有完整文件，跳过下载直接完成处理: {}", item.getFilename());
+                completeDownload(task, local);
+            } else {
+                issueDownload(task);
+            }
+            return;
+        }
+        TelegramSession target = SessionPool.route(item.getChatId(), item.getMassageId());
+        if (target == null || target.getIndex() == current) {
+            task.bindSession(SessionPool.get(current));
+            issueDownload(task);
+            return;
+        }
+
+        task.bindSession(target);
+        target.getClient().send(new TdApi.GetMessage(item.getChatId(), item.getMassageId()), message -> {
+            if (task.isFinished()) {
+                return;
+            }
+            TdApi.File file = message.isError() ? null : fileOf(message.get().content, item.getUniqueId());
+            if (file == null) {
+                log.warn("会话 #{} 获取消息失败，改用会话 #{} 下载: {}", target.getIndex(), current, item.getUniqueId());
+                task.bindSession(SessionPool.get(current));
+            } else {
+                registry.bindFileId(item, target.getIndex(), file.id);
+                log.info("下载分配到会话 #{} {}: {}", target.getIndex(), target.getName(), item.getFilename());
+            }
+            issueDownload(task);
+        });
+    }
+
+    /**
+     * 消息中的文件：视频、文档，或图片中与 uniqueId 相同的尺寸（没有时取最大的尺寸）
+     *
+     * @param uniqueId 下载项的 uniqueId
+     */
+    private static TdApi.File fileOf(TdApi.MessageContent content, String uniqueId) {
+        if (content instanceof TdApi.MessageVideo video) {
+            return video.video.video;
+        }
+        if (content instanceof TdApi.MessageDocument document) {
+            return document.document.document;
+        }
+        if (content instanceof TdApi.MessagePhoto photo && photo.photo.sizes.length > 0) {
+            TdApi.File largest = null;
+            for (TdApi.PhotoSize size : photo.photo.sizes) {
+                if (size.photo.remote.uniqueId.equals(uniqueId)) {
+                    return size.photo;
+                }
+                if (largest == null || size.photo.size > largest.size) {
+                    largest = size.photo;
+                }
+            }
+            return largest;
+        }
+        return null;
+    }
+
+    /**
+     * 下载项当前绑定会话的客户端
+     */
+    private static SimpleTelegramClient clientFor(DownloadItem item) {
+        return SessionPool.clientOf(registry.getSession(item.getUniqueId()));
+    }
+
+    /**
+     * 向 TDLib 发出下载请求，结果在回调中处理
+     * 不限速时一次请求整个文件；限速时按分块发出请求，每块完成后按令牌桶决定何时发出下一块
+     */
+    private static void issueDownload(DownloadTask task) {
+        if (governor.isLimited()) {
+            issueRange(task, 0);
+        } else {
+            task.setRanged(false);
+            sendDownloadFile(task, 0, 0);
+        }
+    }
+
+    private static void issueRange(DownloadTask task, long offset) {
+        task.setRanged(true);
+        sendDownloadFile(task, offset, CHUNK_SIZE);
+    }
+
+    private static void sendDownloadFile(DownloadTask task, long offset, long limit) {
+        DownloadItem item = task.getItem();
+        int generation = task.nextGeneration();
+        task.setRequest(offset, limit);
+        clientFor(item).send(new TdApi.DownloadFile(item.getFileId(),
+                priorityOf(item), offset, limit, true), result -> {
+            if (result.isError()) {
+                if (!task.isCurrent(generation) || task.isFinished()) {
+                    // 请求已被替代，或下载已暂停/取消（CancelDownloadFile 会让进行中的请求返回错误）
+                    log.debug("忽略已被替代的下载请求结果 {}: {}", item.getUniqueId(), result.getError().message);
+                    return;
+                }
+                downloadErrorCount.incrementAndGet();
+                log.error("下载失败 {}: {} {}", item.getUniqueId(), result.getError().code, result.getError().message);
+                failDownload(task, result.getError().code, result.getError().message);
+            } else {
+                onDownloadResult(task, generation, offset, result.get());
+            }
+        });
+    }
+
+    /**
+     * 处理 DownloadFile 的返回：文件完成则进入完成流程，否则计入令牌桶并安排下一段请求
+     */
+    private static void onDownloadResult(DownloadTask task, int generation, long offset, TdApi.File file) {
+        if (file.local.isDownloadingCompleted) {
+            completeDownload(task, file);
+            return;
+        }
+        if (!task.isCurrent(generation) || task.isFinished()) {
+            // 请求已被新的请求替代
+            return;
+        }
+        if (!task.isRanged()) {
+            failDownload(task, 0, "下载请求返回但文件未完成");
+            return;
+        }
+
+        long position = file.local.downloadOffset + file.local.downloadedPrefixSize;
+        long delayNanos = governor.acquire(task.charge(position), System.nanoTime());
+        if (position <= offset) {
+            delayNanos = Math.max(delayNanos, STALLED_RETRY_NANOS);
+        }
+        if (delayNanos <= 0) {
+            continueDownload(task, position);
+            return;
+        }
+
+        throttledCount.incrementAndGet();
+        try {
+            timer.schedule(() -> {
+                throttledCount.decrementAndGet();
+                continueDownload(task, position);
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            throttledCount.decrementAndGet();
+        }
+    }
+
+    private static void continueDownload(DownloadTask task, long position) {
+        if (task.isFinished()) {
+            return;
+        }
+        try {
+            if (governor.isLimited()) {
+                issueRange(task, position);
+            } else {
+                // 限速解除，改为一次请求剩余部分
+                task.setRanged(false);
+                sendDownloadFile(task, 0, 0);
+            }
+        } catch (Exception e) {
+            log.error("继续下载时发生异常: {}", task.getItem().getUniqueId(), e);
+            failDownload(task, 0, e.getMessage());
+        }
+    }
+
+    /**
+     * 下载完成：交给完成处理流水线，TDLib 回调线程立即返回
+     */
+    private static void completeDownload(DownloadTask task, TdApi.File file) {
+        if (!task.finish()) {
+            return;
+        }
+        FinalizeJob job = new FinalizeJob(task, file.local.path, file.size);
+        if (finalizer == null || !finalizer.submit(job)) {
+            log.error("完成处理队列已满或未启动: {}", task.getItem().getUniqueId());
+            handleDownloadError(task.getItem(), "完成处理队列已满");
+            endDownload(task);
+        }
+    }
+
+    /**
+     * 创建完成处理流水线：移动 → 校验 → 缩略图 → 持久化 → 通知
+     * 文件移出 TDLib 目录后即归还下载槽位，缩略图等慢操作不占用下载并发
+     */
+    private static StagedPipeline<FinalizeJob> createFinalizer(int capacity, int thumbnailThreads) {
+        return new StagedPipeline<FinalizeJob>("download-finalize", (job, e) -> failFinalize(job, e.getMessage()))
+                .addStage("move", 1, capacity, DownloadManage::moveStage)
+                .addStage("probe", 1, capacity, DownloadManage::probeStage)
+                .addStage("thumbnail", thumbnailThreads, capacity, DownloadManage::thumbnailStage)
+                .addStage("persist", 1, capacity, DownloadManage::persistStage)
+                .addStage("notify", 1, capacity, DownloadManage::notifyStage);
+    }
+
+    /**
+     * 移动阶段：把文件从 TDLib 目录移动到视频目录
+     */
+    private static boolean moveStage(FinalizeJob job) {
+        var service = SpringContext.getBean(DownloadItemServiceImpl.class);
+        job.saveItem = service.getByUniqueId(job.task.getItem().getUniqueId());
+        if (job.saveItem == null) {
+            log.warn("下载完成但记录已删除: {}", job.task.getItem().getUniqueId());
+            endDownload(job.task);
+            return false;
+        }
+
+        if (!renameDownloadedFile(job.saveItem, job.localPath)) {
+            log.error("文件重命名失败，不更新完成状态: {}", job.saveItem.getFilename());
+            failFinalize(job, "文件重命名失败");
+            return false;
+        }
+
+        // 文件已离开 TDLib 目录，下载槽位可以交给下一个下载；
+        // 存储预留保留到记录为已完成之后，结束下载时归还，期间文件仍计入配额
+        scheduler.releaseSlot(job.task.getItem().getUniqueId());
+        return true;
+    }
+
+    /**
+     * 校验阶段：确认文件存在且大小与 Telegram 记录一致，重命名落盘的文件在这里计算 SHA-256
+     * 此时下载槽位已归还，读取大文件不阻塞其他下载和移动
+     */
+    private static boolean probeStage(FinalizeJob job) throws IOException {
+        Path finalFilePath = Paths.get(SystemConstants.File.getVideosDirPath(), job.saveItem.getFilename());
+        if (!Files.exists(finalFilePath)) {
+            log.error("下载完成但文件不存在，不更新状态: {}", finalFilePath);
+            failFinalize(job, "文件未正确保存到目标位置");
+            return false;
+        }
+
+        long actualSize = Files.size(finalFilePath);
+        if (job.size > 0 && actualSize != job.size) {
+            log.error("文件大小校验失败: {} 期望 {} bytes，实际 {} bytes", finalFilePath, job.size, actualSize);
+            failFinalize(job, "文件大小校验失败");
+            return false;
+        }
+
+        if (job.saveItem.getSha256() == null) {
+            job.saveItem.setSha256(FileFinalizer.sha256(finalFilePath));
+        }
+        log.info("文件校验通过: {} (SHA-256: {})", job.saveItem.getFilename(), job.saveItem.getSha256());
+        return true;
+    }
+
+    /**
+     * 缩略图阶段：视频文件截取本地截图作为封面，失败不影响完成状态
+     */
+    private static boolean thumbnailStage(FinalizeJob job) {
+        DownloadItem saveItem = job.saveItem;
+        if (isVideoFile(saveItem.getFilename())) {
+            log.info("开始生成视频 {} 的缩略图", saveItem.getFilename());
+            String thumbnailFilename = generateVideoThumbnail(saveItem);
+            if (thumbnailFilename != null) {
+                saveItem.setThumbnail(thumbnailFilename);
+                log.info("成功设置视频封面: {} -> {}", saveItem.getFilename(), thumbnailFilename);
+            } else {
+                log.warn("设置视频封面失败: {}", saveItem.getFilename());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 持久化阶段：更新下载完成状态
+     */
+    private static boolean persistStage(FinalizeJob job) {
+        var service = SpringContext.getBean(DownloadItemServiceImpl.class);
+        DownloadItem saveItem = job.saveItem;
+        job.oldState = saveItem.getState();
+        saveItem.setState(DownloadState.Complete.name());
+        saveItem.setDownloadedSize(job.size);
+        saveItem.setProgress(100.0f);
+        saveItem.setCompleteTime(LocalDateTime.now(ZoneId.of("Asia/Shanghai")));
+        saveItem.setDownloadBytePerSec(job.task.getItem().getProgressTracker().getAverageBytesPerSec());
+        saveItem.setDownloadUpdateTime(saveItem.getCompleteTime());
+
+        if (!service.updateById(saveItem)) {
+            log.error("更新下载完成状态失败: {}", saveItem.getFilename());
+            endDownload(job.task);
+            return false;
+        }
+        // 已完成文件计入已用空间，存储预留在结束下载时归还
+        usedBytesCachedAt = 0;
+        log.info("成功更新下载完成状态: {} 文件大小: {} bytes", saveItem.getFilename(), job.size);
+        return true;
+    }
+
+    /**
+     * 通知阶段：触发状态变更事件并推送到前端
+     */
+    private static boolean notifyStage(FinalizeJob job) {
+        try {
+            fireStateChanged(job.saveItem, job.oldState, job.saveItem.getState());
+            pushStateUpdate(job.saveItem);
+            log.info("下载完成: {}", job.saveItem.getFilename());
+        } finally {
+            endDownload(job.task);
+        }
+        return true;
+    }
+
+    /**
+     * 完成处理失败：标记下载失败并结束下载
+     */
+    private static void failFinalize(FinalizeJob job, String errorMessage) {
+        try {
+            handleDownloadError(job.saveItem != null ? job.saveItem : job.task.getItem(), errorMessage);
+        } finally {
+            endDownload(job.task);
+        }
+    }
+
+    /**
+     * 完成处理流水线中传递的任务
+     */
+    private static final class FinalizeJob {
+        private final DownloadTask task;
+        private final String localPath;
+        private final long size;
+        private DownloadItem saveItem;
+        private String oldState;
+
+        private FinalizeJob(DownloadTask task, String localPath, long size) {
+            this.task = task;
+            this.localPath = localPath;
+            this.size = size;
+        }
+    }
+
+    /**
+     * 下载失败：可重试的错误按重试策略延迟后重新下载，否则标记失败
+     *
+     * @param errorCode TDLib 错误码，非 TDLib 错误传0
+     */
+    private static void failDownload(DownloadTask task, int errorCode, String errorMessage) {
+        if (!task.finish()) {
+            return;
+        }
+        boolean retrying = false;
+        try {
+            retrying = scheduleRetry(task.getItem(), errorCode, errorMessage);
+            if (!retrying) {
+                handleDownloadError(task.getItem(), errorMessage);
+            }
+        } finally {
+            endDownload(task, retrying);
+        }
+    }
+
+    /**
+     * 安排重试
+     * 重试次数记录在 downloadCount 中；放弃重试时把次数记满，避免恢复任务继续重试
+     *
+     * @return 是否已安排重试
+     */
+    private static boolean scheduleRetry(DownloadItem item, int errorCode, String errorMessage) {
+        try {
+            var service = SpringContext.getBean(DownloadItemServiceImpl.class);
+            var saveItem = service.getByUniqueId(item.getUniqueId());
+            if (saveItem == null) {
+                return false;
+            }
+
+            int attempt = saveItem.getDownloadCount() + 1;
+            if (!retryPolicy.canRetry(attempt, errorCode, errorMessage)) {
+                if (saveItem.getDownloadCount() < retryPolicy.getMaxRetries()) {
+                    saveItem.setDownloadCount(retryPolicy.getMaxRetries());
+                    service.updateById(saveItem);
+                }
+                log.warn("下载失败且不再重试: {} (第{}次, 错误: {} {})", item.getUniqueId(), attempt, errorCode, errorMessage);
+                return false;
+            }
+
+            long delayMillis = retryPolicy.nextDelayMillis(attempt, errorMessage, ThreadLocalRandom.current().nextDouble());
+            String oldState = saveItem.getState();
+            saveItem.setState(DownloadState.Created.name());
+            saveItem.setDownloadCount(attempt);
+            saveItem.setCaption(String.format("下载失败，%d秒后第%d次重试: %s",
+                    TimeUnit.MILLISECONDS.toSeconds(delayMillis), attempt, errorMessage));
+            if (item.getDownloadedSize() > saveItem.getDownloadedSize()) {
+                saveItem.setDownloadedSize(item.getDownloadedSize());
+            }
+            service.updateById(saveItem);
+
+            item.setState(DownloadState.Created.name());
+            item.setDownloadCount(attempt);
+            item.getProgressTracker().reset();
+
+            timer.schedule(() -> retryDownload(item.getUniqueId()), delayMillis, TimeUnit.MILLISECONDS);
+            log.info("下载失败，{}ms 后第{}次重试: {} ({})", delayMillis, attempt, item.getUniqueId(), errorMessage);
+
+            fireStateChanged(saveItem, oldState, saveItem.getState());
+            pushStateUpdate(saveItem);
+            return true;
+        } catch (Exception e) {
+            log.error("安排重试失败: {}", item.getUniqueId(), e);
+            return false;
+        }
     }
 
     /**
-     * 优雅关闭下载管理器
+     * 执行到期的重试，等待期间被取消、删除或暂停的下载项不再重试
      */
-    public static synchronized void shutdown() {
-        if (!initialized || executorService == null) {
-            return;
-        }
-
-        log.info("开始优雅关闭 DownloadManage...");
-        
-        // 停止接受新任务
-        executorService.shutdown();
-        
+    private static void retryDownload(String uniqueId) {
         try {
-            // 等待现有任务完成，最多等待30秒
-            if (!executorService.awaitTermination(30, TimeUnit.SECONDS)) {
-                // 强制停止
-                executorService.shutdownNow();
-                log.warn("下载线程池强制关闭");
-            } else {
-                log.info("下载线程池正常关闭");
+            DownloadItem live = registry.getByUniqueId(uniqueId);
+            if (live == null || isScheduled(uniqueId) || !DownloadState.Created.name().equals(live.getState())) {
+                return;
             }
-        } catch (InterruptedException e) {
-            executorService.shutdownNow();
-            Thread.currentThread().interrupt();
-            log.warn("关闭过程被中断");
+            log.info("重试下载: {} (第{}次)", live.getFilename(), live.getDownloadCount());
+            resubmit(live);
+        } catch (Exception e) {
+            log.error("重试下载失败: {}", uniqueId, e);
         }
-        
-        initialized = false;
     }
 
     /**
-     * 获取执行器
+     * 重新提交内存中的下载项：本次会话已绑定 fileId 的直接提交，否则先获取消息重新绑定
      */
-    static ExecutorService getExecutorService() {
-        if (!initialized) {
-            initialize();
+    private static void resubmit(DownloadItem live) {
+        if (live.getFileId() != null && registry.getByFileId(registry.getSession(live.getUniqueId()), live.getFileId()) == live) {
+            download(live);
+        } else {
+            resolveAndDownload(live);
         }
-        return executorService;
     }
 
-    public static List<DownloadItem> getItems() {
-        return new ArrayList<>(downloadingItems);
+    private static void scheduleTimeout(DownloadTask task) {
+        task.setTimeout(timer.schedule(() -> onDownloadTimeout(task),
+                DOWNLOAD_TIMEOUT_MINUTES, TimeUnit.MINUTES));
     }
 
     /**
-     * 获取当前活跃下载数量
+     * 下载超时：超时时间内没有任何进展则取消 TDLib 下载并标记失败
+     * 限速时大文件的总耗时可能超过超时时间，只要仍有进展就继续等待
      */
-    public static int getActiveDownloadCount() {
-        return activeDownloads.get();
+    private static void onDownloadTimeout(DownloadTask task) {
+        DownloadItem item = task.getItem();
+        if (task.markProgress(item.getDownloadedSize()) && !task.isFinished()) {
+            scheduleTimeout(task);
+            return;
+        }
+        if (!task.finish()) {
+            return;
+        }
+        log.warn("下载超时: {}，{}分钟内没有进展", item.getUniqueId(), DOWNLOAD_TIMEOUT_MINUTES);
+        boolean retrying = false;
+        try {
+            clientFor(item).send(new TdApi.CancelDownloadFile(item.getFileId(), false), ignored -> {
+            });
+            retrying = scheduleRetry(item, 0, "下载超时");
+            if (!retrying) {
+                handleDownloadTimeout(item);
+            }
+        } catch (Exception e) {
+            log.error("处理下载超时时发生异常: {}", item.getUniqueId(), e);
+        } finally {
+            endDownload(task, retrying);
+        }
     }
 
     /**
-     * 获取最大并发下载数
+     * 结束下载：移出内存队列并归还槽位
      */
-    public static int getMaxConcurrentDownloads() {
-        return MAX_CONCURRENT_DOWNLOADS;
+    private static void endDownload(DownloadTask task) {
+        endDownload(task, false);
     }
 
     /**
-     * 状态变更监听器接口
+     * 结束下载并归还槽位
+     *
+     * @param keepRegistered 是否保留在内存队列中（等待重试的下载项保留，界面上仍可见）
      */
-    public interface StateChangeListener {
-        void onStateChanged(DownloadItem item, String oldState, String newState);
+    private static void endDownload(DownloadTask task, boolean keepRegistered) {
+        String uniqueId = task.getItem().getUniqueId();
+        activeTasks.remove(uniqueId, task);
+        task.releaseSession();
+        if (!keepRegistered) {
+            // 从下载队列中移除
+            removeDownloadingItems(uniqueId);
+        }
+        scheduler.release(uniqueId);
+        log.info("下载结束: {}, 当前活跃下载数: {}", task.getItem().getFilename(), scheduler.getActiveCount());
     }
 
     /**
-     * 添加状态变更监听器
+     * 暂停下载
+     * 通过 CancelDownloadFile 停止传输，TDLib 保留已下载的部分，继续下载时从已有前缀接着下载
+     *
+     * @return 是否暂停成功（已完成或不存在的下载项返回false）
      */
-    public static void addListener(StateChangeListener listener) {
-        if (listener != null) {
-            stateChangeListeners.add(listener);
-            log.debug("添加状态监听器，当前监听器数量: {}", stateChangeListeners.size());
+    public static boolean pauseDownload(String uniqueId) {
+        if (scheduler != null) {
+            scheduler.remove(uniqueId);
+        }
+        localFiles.remove(uniqueId);
+
+        DownloadTask task = activeTasks.get(uniqueId);
+        if (task != null) {
+            if (!task.finish()) {
+                // 下载恰好结束，交由完成流程处理
+                return false;
+            }
+            DownloadItem item = task.getItem();
+            // 让进行中的 DownloadFile 请求失效，取消导致的错误不计为下载失败
+            task.nextGeneration();
+            clientFor(item).send(new TdApi.CancelDownloadFile(item.getFileId(), false), result -> {
+                if (result.isError()) {
+                    log.warn("暂停下载时取消 TDLib 下载失败 {}: {}", uniqueId, result.getError().message);
+                }
+            });
+            activeTasks.remove(uniqueId, task);
+            task.releaseSession();
+            scheduler.release(uniqueId);
+        }
+
+        try {
+            var service = SpringContext.getBean(DownloadItemServiceImpl.class);
+            var saveItem = service.getByUniqueId(uniqueId);
+            if (saveItem == null || DownloadState.Complete.name().equals(saveItem.getState())) {
+                return false;
+            }
+
+            String oldState = saveItem.getState();
+            saveItem.setState(DownloadState.Pause.name());
+            DownloadItem live = registry.getByUniqueId(uniqueId);
+            if (live != null) {
+                live.setState(DownloadState.Pause.name());
+                live.getProgressTracker().reset();
+                // 记录暂停时的下载进度和部分文件路径
+                if (live.getDownloadedSize() > saveItem.getDownloadedSize()) {
+                    saveItem.setDownloadedSize(live.getDownloadedSize());
+                }
+                if (live.getLocalPath() != null) {
+                    saveItem.setLocalPath(live.getLocalPath());
+                }
+            }
+            service.updateById(saveItem);
+            log.info("下载已暂停: {} (已下载 {} bytes)", saveItem.getFilename(), saveItem.getDownloadedSize());
+
+            fireStateChanged(saveItem, oldState, saveItem.getState());
+            pushStateUpdate(saveItem);
+            return true;
+        } catch (Exception e) {
+            log.error("暂停下载失败: {}", uniqueId, e);
+            return false;
         }
     }
 
     /**
-     * 移除状态变更监听器
+     * 继续已暂停（或失败）的下载
+     * 本次会话中已绑定 fileId 的下载项直接重新提交，TDLib 会跳过已下载的部分；
+     * 否则先获取消息重新绑定 fileId
+     *
+     * @return 是否已重新提交
      */
-    public static void removeListener(StateChangeListener listener) {
-        if (listener != null) {
-            stateChangeListeners.remove(listener);
-            log.debug("移除状态监听器，当前监听器数量: {}", stateChangeListeners.size());
+    public static boolean resumeDownload(String uniqueId) {
+        if (isScheduled(uniqueId)) {
+            return false;
+        }
+        if (Tmd.client == null) {
+            log.warn("Telegram客户端未就绪，无法继续下载: {}", uniqueId);
+            return false;
+        }
+
+        try {
+            var service = SpringContext.getBean(DownloadItemServiceImpl.class);
+            var saveItem = service.getByUniqueId(uniqueId);
+            if (saveItem == null || DownloadState.Complete.name().equals(saveItem.getState())) {
+                return false;
+            }
+
+            String oldState = saveItem.getState();
+            saveItem.setState(DownloadState.Created.name());
+            // 手动继续时重新计算重试次数
+            saveItem.setDownloadCount(0);
+            service.updateById(saveItem);
+            fireStateChanged(saveItem, oldState, saveItem.getState());
+
+            DownloadItem live = registry.getByUniqueId(uniqueId);
+            if (live != null) {
+                live.setState(DownloadState.Created.name());
+                live.setDownloadCount(0);
+                log.info("继续下载: {} (已下载 {} bytes)", live.getFilename(), live.getDownloadedSize());
+                resubmit(live);
+            } else {
+                registry.put(saveItem, false);
+                log.info("继续下载: {}，重新获取消息", saveItem.getFilename());
+                resolveAndDownload(saveItem);
+            }
+            pushStateUpdate(saveItem);
+            return true;
+        } catch (Exception e) {
+            log.error("继续下载失败: {}", uniqueId, e);
+            return false;
         }
     }
 
     /**
-     * 触发状态变更事件
+     * 暂停所有排队中和下载中的任务
+     *
+     * @return 暂停的任务数
      */
-    private static void fireStateChanged(DownloadItem item, String oldState, String newState) {
-        if (!stateChangeListeners.isEmpty()) {
-            for (StateChangeListener listener : stateChangeListeners) {
-                try {
-                    listener.onStateChanged(item, oldState, newState);
-                } catch (Exception e) {
-                    log.error("状态变更监听器执行异常", e);
-                }
+    public static int pauseAllDownloads() {
+        int count = 0;
+        for (DownloadItem item : getItems()) {
+            if (isScheduled(item.getUniqueId()) && pauseDownload(item.getUniqueId())) {
+                count++;
             }
         }
+        log.info("已暂停 {} 个下载任务", count);
+        return count;
     }
 
     /**
-     * 下载文件
+     * 继续所有已暂停的任务
      *
-     * @param item 下载项
+     * @return 继续的任务数
      */
-    public static void download(DownloadItem item) {
-        if (item == null) {
-            log.warn("下载项不能为空");
-            return;
+    public static int resumeAllDownloads() {
+        var service = SpringContext.getBean(DownloadItemServiceImpl.class);
+        int count = 0;
+        for (DownloadItem item : service.getDownloadingItemsFromDB()) {
+            if (DownloadState.Pause.name().equals(item.getState()) && resumeDownload(item.getUniqueId())) {
+                count++;
+            }
         }
+        log.info("已继续 {} 个下载任务", count);
+        return count;
+    }
 
-        // 确保初始化
-        if (!initialized) {
-            initialize();
+    /**
+     * 取消下载
+     * 停止 TDLib 传输并删除已下载的部分文件，同时移出内存队列（不删除数据库记录）
+     */
+    public static void cancelDownload(String uniqueId) {
+        if (scheduler != null) {
+            scheduler.remove(uniqueId);
+        }
+        localFiles.remove(uniqueId);
+
+        DownloadTask task = activeTasks.get(uniqueId);
+        if (task != null && task.finish()) {
+            task.nextGeneration();
+            activeTasks.remove(uniqueId, task);
+            task.releaseSession();
+            scheduler.release(uniqueId);
         }
 
-        getExecutorService().submit(() -> {
-            try {
-                // 检查并发限制
-                while (activeDownloads.get() >= MAX_CONCURRENT_DOWNLOADS) {
-                    log.debug("达到并发限制，等待中: {}", item.getUniqueId());
-                    Thread.sleep(500);
-                }
-
-                activeDownloads.incrementAndGet();
-                log.info("开始下载文件: {}, 当前活跃下载数: {}", item.getFilename(), activeDownloads.get());
-
-                CountDownLatch countDownLatch = new CountDownLatch(1);
-
-                // 更新状态为下载中
-                try {
-                    var service = SpringContext.getBean(DownloadItemServiceImpl.class);
-                    var saveItem = service.getByUniqueId(item.getUniqueId());
-                    if (saveItem != null && !DownloadState.Downloading.name().equals(saveItem.getState())) {
-                        String oldState = saveItem.getState();
-                        saveItem.setState(DownloadState.Downloading.name());
-                        service.updateById(saveItem);
-                        log.info("更新下载项状态为下载中: {}", item.getFilename());
-
-                        // 触发状态变更事件
-                        fireStateChanged(saveItem, oldState, saveItem.getState());
-
-                        // 立即推送状态更新
-                        pushStateUpdate(saveItem);
-                    }
-                } catch (Exception e) {
-                    log.warn("更新下载状态失败: {}", item.getUniqueId(), e);
-                }
-
-                Tmd.client.send(new TdApi.DownloadFile(item.getFileId(),
-                        DOWNLOAD_PRIORITY, 0, 0, true), result -> {
-                    try {
-                        if (result.isError()) {
-                            log.error("下载失败 {}: {}", item.getUniqueId(), result.getError().message);
-                            handleDownloadError(item, result.getError().message);
+        DownloadItem item = registry.getByUniqueId(uniqueId);
+        if (item == null) {
+            item = findSavedItem(uniqueId);
+        }
+        // 只有本次会话绑定的 fileId 才指向这个文件
+        int session = registry.getSession(uniqueId);
+        boolean bound = item != null && item.getFileId() != null
+                && registry.getByFileId(session, item.getFileId()) == item;
+        var client = SessionPool.clientOf(session);
+        registry.remove(uniqueId);
+
+        if (bound && client != null) {
+            int fileId = item.getFileId();
+            client.send(new TdApi.CancelDownloadFile(fileId, false), cancelled ->
+                    client.send(new TdApi.DeleteFile(fileId), deleted -> {
+                        if (deleted.isError()) {
+                            log.warn("删除部分下载文件失败 {}: {}", uniqueId, deleted.getError().message);
                         } else {
-                            var service = SpringContext.getBean(DownloadItemServiceImpl.class);
-                            var saveItem = service.getByUniqueId(item.getUniqueId());
-
-                            // 执行文件重命名操作
-                            boolean renameSuccess = renameDownloadedFile(saveItem, result.get().local.path);
-
-                            if (!renameSuccess) {
-                                log.error("文件重命名失败，不更新完成状态: {}", saveItem.getFilename());
-                                handleDownloadError(saveItem, "文件重命名失败");
-                                return;
-                            }
-
-                            // 如果是视频文件，直接生成本地截图作为缩略图
-                            String thumbnailFilename = null;
-                            if (isVideoFile(saveItem.getFilename())) {
-                                log.info("开始生成视频 {} 的缩略图", saveItem.getFilename());
-                                thumbnailFilename = generateVideoThumbnail(saveItem);
-                                if (thumbnailFilename != null) {
-                                    saveItem.setThumbnail(thumbnailFilename);
-                                    log.info("成功设置视频封面: {} -> {}", saveItem.getFilename(), thumbnailFilename);
-                                } else {
-                                    log.warn("设置视频封面失败: {}", saveItem.getFilename());
-                                }
-                            }
-
-                            // 确认文件确实存在后再更新完成状态
-                            Path finalFilePath = Paths.get(SystemConstants.File.getVideosDirPath(), saveItem.getFilename());
-                            if (!Files.exists(finalFilePath)) {
-                                log.error("下载完成但文件不存在，不更新状态: {}", finalFilePath);
-                                handleDownloadError(saveItem, "文件未正确保存到目标位置");
-                                return;
-                            }
-
-                            // 更新下载完成状态
-                            String oldState = saveItem.getState();
-                            saveItem.setState(DownloadState.Complete.name());
-                            saveItem.setDownloadedSize(result.get().size);
-                            saveItem.setProgress(100.0f);
-                            saveItem.setCompleteTime(LocalDateTime.now(ZoneId.of("Asia/Shanghai")));
-
-                            boolean updateSuccess = service.updateById(saveItem);
-                            if (!updateSuccess) {
-                                log.error("更新下载完成状态失败: {}", saveItem.getFilename());
-                                return;
-                            }
-
-                            log.info("成功更新下载完成状态: {} (重命名: {}) 文件大小: {} bytes",
-                                    saveItem.getFilename(), renameSuccess, result.get().size);
-
-                            // 触发状态变更事件
-                            fireStateChanged(saveItem, oldState, saveItem.getState());
-
-                            // 推送状态更新
-                            pushStateUpdate(saveItem);
-
-                            log.info("下载完成: {} (重命名: {})", item.getFilename(), renameSuccess ? "成功" : "失败");
+                            log.info("已删除部分下载文件: {}", uniqueId);
                         }
-                    } finally {
-                        // 从下载队列中移除
-                        removeDownloadingItems(item.getUniqueId());
-                        countDownLatch.countDown();
-                    }
-                });
+                    }));
+        } else if (item != null && !DownloadState.Complete.name().equals(item.getState())) {
+            deletePartialFile(item);
+        }
+        log.info("下载已取消: {}", uniqueId);
+    }
 
-                try {
-                    if (!countDownLatch.await(DOWNLOAD_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
-                        log.warn("下载超时: {}", item.getUniqueId());
-                        handleDownloadTimeout(item);
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    log.error("下载被中断: {}", item.getUniqueId(), e);
-                    handleDownloadError(item, "下载被中断");
-                }
-            } catch (Exception e) {
-                log.error("下载过程中发生异常: {}", item.getUniqueId(), e);
-                handleDownloadError(item, e.getMessage());
-            } finally {
-                activeDownloads.decrementAndGet();
-                log.info("下载结束: {}, 当前活跃下载数: {}", item.getFilename(), activeDownloads.get());
+    /**
+     * 删除本次会话未绑定 fileId 的部分下载文件（如重启后仍处于暂停状态的下载项）
+     * 有远程文件ID时先通过 TDLib 删除，同时清理 TDLib 的文件记录，最后删除记录的部分文件路径
+     */
+    private static void deletePartialFile(DownloadItem item) {
+        String uniqueId = item.getUniqueId();
+        String remoteFileId = item.getRemoteFileId();
+        var client = Tmd.client;
+        if (remoteFileId == null || remoteFileId.isEmpty() || client == null) {
+            deleteLocalPath(item);
+            return;
+        }
+        client.send(new TdApi.GetRemoteFile(remoteFileId, null), result -> {
+            if (result.isError() || !uniqueId.equals(result.get().remote.uniqueId)) {
+                deleteLocalPath(item);
+                return;
             }
+            client.send(new TdApi.DeleteFile(result.get().id), deleted -> {
+                if (deleted.isError()) {
+                    log.warn("删除部分下载文件失败 {}: {}", uniqueId, deleted.getError().message);
+                }
+                deleteLocalPath(item);
+            });
         });
     }
 
+    private static void deleteLocalPath(DownloadItem item) {
+        String localPath = item.getLocalPath();
+        if (localPath == null || localPath.isEmpty()) {
+            return;
+        }
+        try {
+            if (Files.deleteIfExists(Path.of(localPath))) {
+                log.info("已删除部分下载文件: {} ({})", item.getUniqueId(), localPath);
+            }
+        } catch (IOException e) {
+            log.warn("删除部分下载文件失败 {}: {}", item.getUniqueId(), e.getMessage());
+        }
+    }
+
+    private static DownloadItem findSavedItem(String uniqueId) {
+        try {
+            return SpringContext.getBean(DownloadItemServiceImpl.class).getByUniqueId(uniqueId);
+        } catch (Exception e) {
+            log.warn("查询下载项失败 {}: {}", uniqueId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 查询下载目录所在磁盘的可用空间
+     */
+    private static long queryUsableSpace() {
+        try {
+            Path downloadPath = SpringContext.getBean(DownloadDirectoryManager.class).getDownloadPath();
+            return Files.getFileStore(downloadPath).getUsableSpace();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 查询已完成文件占用的字节数（缓存5秒）
+     */
+    private static long queryUsedBytes() {
+        long now = System.nanoTime();
+        if (usedBytesCachedAt != 0 && now - usedBytesCachedAt < USED_BYTES_TTL_NANOS) {
+            return usedBytesCache;
+        }
+        try {
+            usedBytesCache = SpringContext.getBean(DownloadItemServiceImpl.class).getCompletedFileSize();
+            usedBytesCachedAt = now;
+        } catch (Exception e) {
+            log.warn("查询已用存储空间失败", e);
+        }
+        return usedBytesCache;
+    }
+
     /**
      * 生成视频缩略图
      * 直接使用本地视频截取第一帧作为缩略图
@@ -375,10 +1365,18 @@ public class DownloadManage {
                 return;
             }
             
+            String oldState = saveItem.getState();
             saveItem.setState(DownloadState.Failed.name());
             saveItem.setCaption(errorMessage != null ? errorMessage : "未知错误");
+            // 记录失败时的下载进度
+            if (item.getDownloadedSize() > saveItem.getDownloadedSize()) {
+                saveItem.setDownloadedSize(item.getDownloadedSize());
+            }
             service.updateById(saveItem);
 
+            // 触发状态变更事件
+            fireStateChanged(saveItem, oldState, saveItem.getState());
+
             // 推送状态更新
             pushStateUpdate(saveItem);
         } catch (Exception e) {
@@ -423,15 +1421,11 @@ public class DownloadManage {
             // 构建目标文件路径
             Path targetPath = videosDir.resolve(item.getFilename());
 
-            // 如果目标文件已存在，先删除
-            if (Files.exists(targetPath)) {
-                Files.delete(targetPath);
-                log.info("删除已存在的目标文件: {}", targetPath.getFileName());
-            }
-
-            // 移动文件到目标位置
-            Files.move(sourcePath, targetPath);
-            log.info("文件重命名成功: {} -> {}",
+            // 原子替换目标文件，跨文件系统时复制并校验
+            FileFinalizer.Result result = FileFinalizer.moveInto(sourcePath, targetPath);
+            // 重命名时为null，在归还下载槽位后的校验阶段计算
+            item.setSha256(result.getSha256());
+            log.info("文件{}成功: {} -> {}", result.isCopied() ? "复制" : "重命名",
                     sourcePath.getFileName(), targetPath.getFileName());
 
             return true;
@@ -472,49 +1466,191 @@ public class DownloadManage {
                 return;
             }
 
-            downloadingItems.clear();
-            downloadingItems.addAll(CollectionUtil.emptyIfNull(items));
+            // 正在排队或下载中的任务保持原样，其余任务以数据库记录为准重新登记
+            var recoverItems = items.stream()
+                    .filter(item -> !isScheduled(item.getUniqueId()))
+                    .toList();
+            // 数据库中的 fileId 属于上一次会话，获取消息后再重新绑定
+            recoverItems.forEach(item -> registry.put(item, false));
 
-            log.info("发现 {} 个未完成的下载任务，开始恢复...", downloadingItems.size());
+            log.info("发现 {} 个未完成的下载任务，开始恢复...", recoverItems.size());
 
-            downloadingItems.forEach(item -> {
-                log.info("恢复下载任务: {} ({}) 状态: {}",
-                        item.getFilename(), item.getUniqueId(), item.getState());
+            // 暂停的任务只登记不恢复，等待用户手动继续；重试次数已用完的失败任务不再恢复
+            var resumeItems = RecoveryPlan.resumable(recoverItems, retryPolicy.getMaxRetries());
+            resumeItems.stream()
+                    .filter(item -> DownloadState.Downloading.name().equals(item.getState()))
+                    .forEach(DownloadManage::requeueInterrupted);
 
-                // 检查消息是否存在
-                long targetChatId = item.getChatId() != null ? item.getChatId() : Tmd.savedMessagesChat.id;
-                Tmd.client.send(new TdApi.GetMessage(targetChatId, item.getMassageId()), message -> {
-                    if (message.isError()) {
-                        log.error("获取消息失败 {}: {}", item.getUniqueId(), message.getError().message);
-                        handleDownloadError(item, "消息不存在或已被删除");
-                        return;
-                    }
+            if (!initialized) {
+                initialize();
+            }
+            // 按聊天分组批量获取消息，各步按速率依次执行，避免一次发出大量请求触发限流
+            var steps = RecoveryPlan.plan(resumeItems, RecoveryPlan.MAX_BATCH, Tmd.savedMessagesChat.id);
+            long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / RECOVERY_RATE);
+            for (int i = 0; i < steps.size(); i++) {
+                var step = steps.get(i);
+                timer.schedule(() -> runRecoveryStep(step), i * intervalNanos, TimeUnit.NANOSECONDS);
+            }
 
-                    // 检查消息内容类型
-                    if (message.get().content instanceof TdApi.MessageVideo video) {
-                        var fileId = video.video.video.id;
-                        item.setFileId(fileId);
-
-                        // 根据状态决定是否重新开始下载
-                        if (DownloadState.Created.name().equals(item.getState()) ||
-                                DownloadState.Failed.name().equals(item.getState()) ||
-                                DownloadState.Pause.name().equals(item.getState())) {
-                            log.info("重新开始下载任务: {} ({})", item.getFilename(), item.getUniqueId());
-                            DownloadManage.download(item);
-                        } else if (DownloadState.Downloading.name().equals(item.getState())) {
-                            log.info("任务已在下载中: {} ({})，跳过重复启动", item.getFilename(), item.getUniqueId());
-                        }
+            log.info("下载任务恢复流程启动完成: {} 个任务，{} 次请求，预计 {} 秒", resumeItems.size(), steps.size(),
+                    TimeUnit.NANOSECONDS.toSeconds(steps.size() * intervalNanos));
+        } catch (Exception e) {
+            log.error("恢复下载任务时发生异常", e);
+        }
+    }
+
+    /**
+     * 上次关闭或崩溃时仍在下载的任务改回排队状态，重新准入后再开始下载
+     */
+    private static void requeueInterrupted(DownloadItem item) {
+        log.info("继续上次中断的下载: {} ({})", item.getFilename(), item.getUniqueId());
+        item.setState(DownloadState.Created.name());
+        try {
+            var service = SpringContext.getBean(DownloadItemServiceImpl.class);
+            service.lambdaUpdate()
+                    .eq(DownloadItem::getUniqueId, item.getUniqueId())
+                    .eq(DownloadItem::getState, DownloadState.Downloading.name())
+                    .set(DownloadItem::getState, DownloadState.Created.name())
+                    .update();
+        } catch (Exception e) {
+            log.warn("更新中断下载的状态失败: {}", item.getUniqueId(), e);
+        }
+    }
+
+    /**
+     * 重新取得当前会话的 fileId，然后提交下载
+     * 有远程文件ID时用 GetRemoteFile 直接取得文件，TDLib 同时返回本地已下载的部分；
+     * 没有或已失效时获取消息
+     */
+    private static void resolveAndDownload(DownloadItem item) {
+        String remoteFileId = item.getRemoteFileId();
+        if (remoteFileId == null || remoteFileId.isEmpty()) {
+            resolveByMessage(item);
+            return;
+        }
+        Tmd.client.send(new TdApi.GetRemoteFile(remoteFileId, null), result -> {
+            if (result.isError() || !item.getUniqueId().equals(result.get().remote.uniqueId)) {
+                log.info("远程文件ID无法使用，改为获取消息 {}: {}", item.getUniqueId(),
+                        result.isError() ? result.getError().message : "文件不匹配");
+                resolveByMessage(item);
+                return;
+            }
+            rehydrate(item, result.get());
+        });
+    }
+
+    /**
+     * 执行恢复计划的一步
+     */
+    private static void runRecoveryStep(RecoveryPlan.Step step) {
+        try {
+            if (step.isRemoteFiles()) {
+                step.getItems().forEach(DownloadManage::resolveAndDownload);
+                return;
+            }
+
+            List<DownloadItem> items = step.getItems();
+            long[] messageIds = items.stream().mapToLong(DownloadItem::getMassageId).toArray();
+            log.info("批量获取聊天 {} 中的 {} 条消息", step.getChatId(), messageIds.length);
+            Tmd.client.send(new TdApi.GetMessages(step.getChatId(), messageIds), result -> {
+                if (result.isError()) {
+                    log.error("批量获取消息失败 {}: {}", step.getChatId(), result.getError().message);
+                    items.forEach(item -> handleDownloadError(item, "获取消息失败: " + result.getError().message));
+                    return;
+                }
+                // 返回的消息与请求的ID一一对应，不存在的消息为null
+                TdApi.Message[] messages = result.get().messages;
+                for (int i = 0; i < items.size(); i++) {
+                    TdApi.Message message = messages != null && i < messages.length ? messages[i] : null;
+                    if (message == null) {
+                        log.error("获取消息失败 {}: 消息不存在", items.get(i).getUniqueId());
+                        handleDownloadError(items.get(i), "消息不存在或已被删除");
                     } else {
-                        log.warn("消息内容不是视频类型 {}: {}", item.getUniqueId(),
-                                message.get().content.getClass().getSimpleName());
-                        handleDownloadError(item, "消息内容类型不支持");
+                        onMessageResolved(items.get(i), message.content);
                     }
-                });
+                }
             });
+        } catch (Exception e) {
+            log.error("执行恢复请求失败: {}", step.getChatId(), e);
+        }
+    }
+
+    /**
+     * 获取消息以绑定当前会话的 fileId
+     */
+    private static void resolveByMessage(DownloadItem item) {
+        long targetChatId = item.getChatId() != null ? item.getChatId() : Tmd.savedMessagesChat.id;
+        Tmd.client.send(new TdApi.GetMessage(targetChatId, item.getMassageId()), message -> {
+            if (message.isError()) {
+                log.error("获取消息失败 {}: {}", item.getUniqueId(), message.getError().message);
+                handleDownloadError(item, "消息不存在或已被删除");
+                return;
+            }
+            onMessageResolved(item, message.get().content);
+        });
+    }
+
+    /**
+     * 在消息中找到下载项对应的文件后提交下载，支持视频、文档和图片
+     */
+    private static void onMessageResolved(DownloadItem item, TdApi.MessageContent content) {
+        TdApi.File file = fileOf(content, item.getUniqueId());
+        if (file == null) {
+            log.warn("消息内容不是支持的类型 {}: {}", item.getUniqueId(), content.getClass().getSimpleName());
+            handleDownloadError(item, "消息内容类型不支持");
+            return;
+        }
+        if (item.getRemoteFileId() == null) {
+            // 旧记录补充远程文件ID，下次恢复不必再获取消息
+            item.setRemoteFileId(file.remote.id);
+            persistPartial(item);
+        }
+        rehydrate(item, file);
+    }
+
+    /**
+     * 按 TDLib 返回的本地文件状态提交下载
+     * 完整文件不再经过网络，部分文件从已下载前缀继续
+     */
+    private static void rehydrate(DownloadItem item, TdApi.File file) {
+        registry.bindFileId(item, file.id);
+        TdApi.LocalFile local = file.local;
+        if (local.isDownloadingCompleted && !local.path.isEmpty() && Files.exists(Path.of(local.path))) {
+            item.setDownloadedSize(file.size);
+            item.setLocalPath(local.path);
+            localFiles.put(item.getUniqueId(), file);
+            log.info("TDLib 已缓存完整文件: {} ({})", item.getFilename(), item.getUniqueId());
+        } else if (local.downloadedPrefixSize > 0) {
+            item.setDownloadedSize(local.downloadedPrefixSize);
+            item.setLocalPath(local.path);
+            localFiles.put(item.getUniqueId(), file);
+            log.info("从已下载部分继续下载: {} ({} / {} bytes)", item.getFilename(),
+                    local.downloadedPrefixSize, file.size);
+        } else {
+            if (item.getLocalPath() != null && Files.exists(Path.of(item.getLocalPath()))) {
+                log.warn("TDLib 未识别已有的部分文件，重新下载: {}", item.getLocalPath());
+            }
+            item.setDownloadedSize(0);
+            log.info("重新开始下载任务: {} ({})", item.getFilename(), item.getUniqueId());
+        }
+        DownloadManage.download(item);
+    }
 
-            log.info("下载任务恢复流程启动完成");
+    /**
+     * 记录下载进度、远程文件ID和部分文件路径
+     */
+    private static void persistPartial(DownloadItem item) {
+        try {
+            var service = SpringContext.getBean(DownloadItemServiceImpl.class);
+            service.lambdaUpdate()
+                    .eq(DownloadItem::getUniqueId, item.getUniqueId())
+                    .ne(DownloadItem::getState, DownloadState.Complete.name())
+                    .set(DownloadItem::getDownloadedSize, item.getDownloadedSize())
+                    .set(item.getRemoteFileId() != null, DownloadItem::getRemoteFileId, item.getRemoteFileId())
+                    .set(item.getLocalPath() != null, DownloadItem::getLocalPath, item.getLocalPath())
+                    .update();
         } catch (Exception e) {
-            log.error("恢复下载任务时发生异常", e);
+            log.warn("记录下载进度失败: {}", item.getUniqueId(), e);
         }
     }
 
@@ -523,8 +1659,14 @@ public class DownloadManage {
      * 用于判断是否应该恢复该任务
      */
     public static boolean isItemInDownloadingQueue(String uniqueId) {
-        return downloadingItems.stream()
-                .anyMatch(item -> item.getUniqueId().equals(uniqueId));
+        return registry.contains(uniqueId);
+    }
+
+    /**
+     * 检查下载项是否正在排队或下载中
+     */
+    private static boolean isScheduled(String uniqueId) {
+        return scheduler != null && (scheduler.isPending(uniqueId) || scheduler.isRunning(uniqueId));
     }
 
     /**
@@ -539,9 +1681,9 @@ public class DownloadManage {
                     .map(DownloadItem::getUniqueId)
                     .collect(java.util.stream.Collectors.toSet());
 
-            downloadingItems.removeIf(item -> !dbItemIds.contains(item.getUniqueId()));
+            registry.retainAll(dbItemIds);
 
-            log.info("清理完成，当前内存队列大小: {}", downloadingItems.size());
+            log.info("清理完成，当前内存队列大小: {}", registry.size());
         } catch (Exception e) {
             log.error("清理已删除下载项时发生异常", e);
         }
@@ -567,16 +1709,15 @@ public class DownloadManage {
     }
 
     public static void addDownloadingItems(DownloadItem item) {
-        downloadingItems.add(item);
+        registry.put(item);
     }
 
     public static void removeDownloadingItems(String uniqueId) {
-        int beforeSize = downloadingItems.size();
-        downloadingItems.removeIf(d -> d.getUniqueId().equals(uniqueId));
-        int afterSize = downloadingItems.size();
-
-        if (beforeSize != afterSize) {
-            log.info("从下载队列中移除项: {}, 队列大小: {} -> {}", uniqueId, beforeSize, afterSize);
+        if (scheduler != null) {
+            scheduler.remove(uniqueId);
+        }
+        if (registry.remove(uniqueId) != null) {
+            log.info("从下载队列中移除项: {}, 队列大小: {}", uniqueId, registry.size());
         }
     }
 
@@ -603,36 +1744,34 @@ public class DownloadManage {
 
     /**
      * 更新下载进度
+     * 按 fileId 常数时间定位下载项，未跟踪的文件直接丢弃；
+     * 速度由进度跟踪器计算，数据库中的速度字段只在下载完成时写入
      *
-     * @param uniqueId       唯一id
+     * @param fileId         TDLib 文件id
+     * @param uniqueId       唯一id，用于确认 fileId 索引未过期
      * @param downloadedSize 已下载
+     * @param localPath      TDLib 目录中的文件路径
      */
-    public static void updateProgress(String uniqueId, Long downloadedSize) {
-
-        for (DownloadItem item : downloadingItems) {
-            if (uniqueId.equals(item.getUniqueId())) {
-
-                // 添加null检查，确保downloadCount不为null
-                int currentDownloadCount = item.getDownloadCount() != null ? item.getDownloadCount() : 0;
-
-                if (currentDownloadCount < 5) {
-                    item.setDownloadCount(currentDownloadCount + 1);
-                } else {
-                    item.setDownloadCount(0);
-                    var downloadDiff = downloadedSize - item.getDownloadedSize();
-                    var timeDiff = Duration.between(item.getDownloadUpdateTime(), LocalDateTime.now(ZoneId.of("Asia/Shanghai"))).toMillis();
-
-                    item.setDownloadUpdateTime(LocalDateTime.now(ZoneId.of("Asia/Shanghai")));
-                    item.setDownloadedSize(downloadedSize);
-
-                    var speed = (((float) downloadDiff / timeDiff) * 1000);
+    public static void updateProgress(int fileId, String uniqueId, long downloadedSize, String localPath) {
+        updateProgress(SessionPool.PRIMARY, fileId, uniqueId, downloadedSize, localPath);
+    }
 
-                    item.setDownloadBytePerSec((long) speed);
-                }
-            }
+    /**
+     * 处理指定会话的下载进度，fileId 只在所属会话内有效
+     *
+     * @param session 会话序号
+     */
+    public static void updateProgress(int session, int fileId, String uniqueId, long downloadedSize, String localPath) {
+        DownloadItem item = registry.getByFileId(session, fileId);
+        if (item == null || !item.getUniqueId().equals(uniqueId)) {
+            return;
         }
 
-
+        item.setDownloadedSize(downloadedSize);
+        if (localPath != null && !localPath.isEmpty()) {
+            item.setLocalPath(localPath);
+        }
+        item.getProgressTracker().update(downloadedSize, System.nanoTime());
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,159 @@
+package fun.zulin.tmd.telegram;
+
+import fun.zulin.tmd.data.item.DownloadItem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 内存中的下载项索引
+ * 按 uniqueId 和 TDLib fileId 提供 O(1) 查找，未跟踪文件的进度更新可在常数时间内丢弃；
+ * fileId 只在所属的 TDLib 会话内唯一，索引按（会话，fileId）区分；
+ * 列表快照只在成员变化时重建
+ */
+public class DownloadRegistry {
+
+    private static final Comparator<DownloadItem> SNAPSHOT_ORDER = Comparator.comparing(
+            DownloadItem::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final Map<String, DownloadItem> byUniqueId = new ConcurrentHashMap<>();
+
+    private final Map<Long, DownloadItem> byFileId = new ConcurrentHashMap<>();
+
+    /**
+     * 下载项 fileId 所属的会话序号，未记录时为主会话
+     */
+    private final Map<String, Integer> sessionByUniqueId = new ConcurrentHashMap<>();
+
+    private volatile List<DownloadItem> snapshot = Collections.emptyList();
+
+    private volatile boolean snapshotStale = false;
+
+    /**
+     * 加入或替换下载项，并按 fileId 建立索引
+     */
+    public void put(DownloadItem item) {
+        put(item, true);
+    }
+
+    /**
+     * 加入或替换下载项
+     *
+     * @param indexFileId 是否按 fileId 建立索引（从数据库恢复的 fileId 属于上一次会话，需重新绑定后再索引）
+     */
+    public void put(DownloadItem item, boolean indexFileId) {
+        DownloadItem previous = byUniqueId.put(item.getUniqueId(), item);
+        if (previous != null) {
+            unindexFileId(previous);
+        }
+        sessionByUniqueId.remove(item.getUniqueId());
+        if (indexFileId && item.getFileId() != null) {
+            byFileId.put(key(SessionPool.PRIMARY, item.getFileId()), item);
+        }
+        snapshotStale = true;
+    }
+
+    /**
+     * 为下载项绑定主会话的 fileId
+     */
+    public void bindFileId(DownloadItem item, int fileId) {
+        bindFileId(item, SessionPool.PRIMARY, fileId);
+    }
+
+    /**
+     * 为下载项绑定指定会话的 fileId
+     */
+    public void bindFileId(DownloadItem item, int session, int fileId) {
+        unindexFileId(item);
+        item.setFileId(fileId);
+        if (byUniqueId.get(item.getUniqueId()) == item) {
+            if (session == SessionPool.PRIMARY) {
+                sessionByUniqueId.remove(item.getUniqueId());
+            } else {
+                sessionByUniqueId.put(item.getUniqueId(), session);
+            }
+            byFileId.put(key(session, fileId), item);
+        }
+    }
+
+    public DownloadItem remove(String uniqueId) {
+        DownloadItem removed = byUniqueId.remove(uniqueId);
+        if (removed != null) {
+            unindexFileId(removed);
+            sessionByUniqueId.remove(uniqueId);
+            snapshotStale = true;
+        }
+        return removed;
+    }
+
+    /**
+     * 只保留 uniqueId 在给定集合中的下载项
+     */
+    public void retainAll(Set<String> uniqueIds) {
+        for (String uniqueId : byUniqueId.keySet()) {
+            if (!uniqueIds.contains(uniqueId)) {
+                remove(uniqueId);
+            }
+        }
+    }
+
+    public DownloadItem getByUniqueId(String uniqueId) {
+        return byUniqueId.get(uniqueId);
+    }
+
+    public DownloadItem getByFileId(int fileId) {
+        return getByFileId(SessionPool.PRIMARY, fileId);
+    }
+
+    public DownloadItem getByFileId(int session, int fileId) {
+        return byFileId.get(key(session, fileId));
+    }
+
+    /**
+     * 下载项当前绑定的 fileId 所属的会话序号
+     */
+    public int getSession(String uniqueId) {
+        return sessionByUniqueId.getOrDefault(uniqueId, SessionPool.PRIMARY);
+    }
+
+    public boolean contains(String uniqueId) {
+        return byUniqueId.containsKey(uniqueId);
+    }
+
+    public int size() {
+        return byUniqueId.size();
+    }
+
+    /**
+     * 按数据库ID排序的只读快照，成员不变时复用上一次的结果
+     */
+    public List<DownloadItem> snapshot() {
+        if (snapshotStale) {
+            synchronized (this) {
+                if (snapshotStale) {
+                    snapshotStale = false;
+                    List<DownloadItem> items = new ArrayList<>(byUniqueId.values());
+                    items.sort(SNAPSHOT_ORDER);
+                    snapshot = Collections.unmodifiableList(items);
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    private void unindexFileId(DownloadItem item) {
+        Integer fileId = item.getFileId();
+        if (fileId != null) {
+            byFileId.remove(key(getSession(item.getUniqueId()), fileId), item);
+        }
+    }
+
+    private static long key(int session, int fileId) {
+        return ((long) session << 32) | (fileId & 0xffffffffL);
+    }
+}
@@ -0,0 +1,425 @@
+package fun.zulin.tmd.telegram;
+
+import fun.zulin.tmd.data.item.DownloadItem;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 下载准入调度器
+ * 维护按优先级、先进先出排序的待下载队列，槽位释放时立即派发下一个下载项，
+ * 排队中的下载项不占用任何线程；未通过准入检查（如磁盘空间不足）的下载项留在队列中，
+ * 让后面能通过的下载项先开始
+ */
+@Slf4j
+public class DownloadScheduler {
+
+    /**
+     * 准入检查，派发前调用，通过后直到归还槽位都视为占用资源
+     */
+    public interface Admission {
+
+        Admission ALWAYS = new Admission() {
+            @Override
+            public boolean tryAdmit(DownloadItem item) {
+                return true;
+            }
+
+            @Override
+            public void release(String uniqueId) {
+            }
+        };
+
+        /**
+         * @return 是否允许开始下载（在调度器锁内调用，应尽快返回）
+         */
+        boolean tryAdmit(DownloadItem item);
+
+        /**
+         * 开始一次派发，同一次派发中的检查共享资源状态的快照
+         */
+        default Pass begin() {
+            return this::tryAdmit;
+        }
+
+        /**
+         * 下载结束，归还占用的资源
+         */
+        void release(String uniqueId);
+
+        /**
+         * 一次派发中的准入检查
+         */
+        @FunctionalInterface
+        interface Pass {
+
+            /**
+             * @return 是否允许开始下载，通过后占用的资源从本次派发的快照中扣除
+             */
+            boolean tryAdmit(DownloadItem item);
+
+            /**
+             * 最近一次未通过的原因
+             */
+            default String getReason() {
+                return "资源不足";
+            }
+
+            /**
+             * 与下载项大小无关的条件已不满足（如配额已满），本次派发中后面的下载项都不会通过
+             */
+            default boolean isExhausted() {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 排序规则：优先级高的在前，同优先级按入队顺序
+     */
+    private static final Comparator<PendingEntry> ORDER = Comparator
+            .comparingInt((PendingEntry entry) -> entry.priority).reversed()
+            .thenComparingLong(entry -> entry.sequence);
+
+    private final Object lock = new Object();
+
+    private final TreeSet<PendingEntry> pending = new TreeSet<>(ORDER);
+
+    private final Map<String, PendingEntry> pendingIndex = new HashMap<>();
+
+    private final Set<String> running = new HashSet<>();
+
+    /**
+     * 未通过准入检查、仍在排队的下载项 → 原因
+     */
+    private final Map<String, String> blocked = new HashMap<>();
+
+    /**
+     * 最近一次派发中资源耗尽时停止检查的位置，排在它及之后的下载项都视为未通过准入检查
+     */
+    private PendingEntry exhaustedFrom;
+
+    private String exhaustedReason;
+
+    private final AtomicInteger activeCount = new AtomicInteger(0);
+
+    private final AtomicLong sequence = new AtomicLong(0);
+
+    private final Executor dispatchExecutor;
+
+    private final Consumer<DownloadItem> starter;
+
+    private final Admission admission;
+
+    private volatile int maxConcurrent;
+
+    /**
+     * @param maxConcurrent    最大并发数
+     * @param dispatchExecutor 执行启动逻辑的执行器
+     * @param starter          下载启动逻辑，结束时必须调用 {@link #release(String)} 归还槽位
+     */
+    public DownloadScheduler(int maxConcurrent, Executor dispatchExecutor, Consumer<DownloadItem> starter) {
+        this(maxConcurrent, dispatchExecutor, starter, Admission.ALWAYS);
+    }
+
+    /**
+     * @param admission 派发前的准入检查
+     */
+    public DownloadScheduler(int maxConcurrent, Executor dispatchExecutor, Consumer<DownloadItem> starter,
+                             Admission admission) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.dispatchExecutor = dispatchExecutor;
+        this.starter = starter;
+        this.admission = admission;
+    }
+
+    /**
+     * 提交下载项，已在排队或下载中的同一项会被忽略
+     *
+     * @return 是否成功加入队列
+     */
+    public boolean submit(DownloadItem item, int priority) {
+        String uniqueId = item.getUniqueId();
+        synchronized (lock) {
+            if (pendingIndex.containsKey(uniqueId) || running.contains(uniqueId)) {
+                return false;
+            }
+            PendingEntry entry = new PendingEntry(item, priority, sequence.incrementAndGet());
+            pending.add(entry);
+            pendingIndex.put(uniqueId, entry);
+        }
+        dispatch();
+        return true;
+    }
+
+    /**
+     * 下载结束：归还下载槽位和准入占用的资源，并派发下一个下载项
+     */
+    public void release(String uniqueId) {
+        release(uniqueId, true);
+    }
+
+    /**
+     * 只归还下载槽位，准入占用的资源（如存储预留）保留到 {@link #release(String)} 时归还
+     * 用于文件已离开下载目录、但尚未记录为已完成的下载项
+     */
+    public void releaseSlot(String uniqueId) {
+        release(uniqueId, false);
+    }
+
+    private void release(String uniqueId, boolean releaseAdmission) {
+        boolean released;
+        synchronized (lock) {
+            released = running.remove(uniqueId);
+            if (released) {
+                activeCount.decrementAndGet();
+            }
+            if (releaseAdmission) {
+                admission.release(uniqueId);
+            }
+        }
+        if (released || releaseAdmission) {
+            dispatch();
+        }
+    }
+
+    /**
+     * 重新检查因准入检查未通过而排队的下载项（如磁盘空间释放后）
+     */
+    public void retryBlocked() {
+        boolean hasBlocked;
+        synchronized (lock) {
+            hasBlocked = !blocked.isEmpty() || exhaustedFrom != null;
+        }
+        if (hasBlocked) {
+            dispatch();
+        }
+    }
+
+    /**
+     * 从待下载队列中移除（不影响已开始的下载）
+     *
+     * @return 是否移除成功
+     */
+    public boolean remove(String uniqueId) {
+        synchronized (lock) {
+            PendingEntry entry = pendingIndex.remove(uniqueId);
+            if (entry == null) {
+                return false;
+            }
+            pending.remove(entry);
+            blocked.remove(uniqueId);
+            return true;
+        }
+    }
+
+    /**
+     * 修改排队中下载项的优先级，保持原有的入队顺序
+     *
+     * @return 是否在排队中
+     */
+    public boolean reprioritize(String uniqueId, int priority) {
+        synchronized (lock) {
+            PendingEntry entry = pendingIndex.get(uniqueId);
+            if (entry == null) {
+                return false;
+            }
+            pending.remove(entry);
+            PendingEntry updated = new PendingEntry(entry.item, priority, entry.sequence);
+            pending.add(updated);
+            pendingIndex.put(uniqueId, updated);
+        }
+        dispatch();
+        return true;
+    }
+
+    public boolean isPending(String uniqueId) {
+        synchronized (lock) {
+            return pendingIndex.containsKey(uniqueId);
+        }
+    }
+
+    public boolean isRunning(String uniqueId) {
+        synchronized (lock) {
+            return running.contains(uniqueId);
+        }
+    }
+
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * 未通过准入检查、等待资源释放的下载项数量
+     */
+    public int getBlockedCount() {
+        synchronized (lock) {
+            int count = blocked.size();
+            if (exhaustedFrom != null) {
+                count += pending.tailSet(exhaustedFrom, true).size();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * 排队中的下载项未通过准入检查的原因，未被阻塞时为null
+     */
+    public String getBlockedReason(String uniqueId) {
+        synchronized (lock) {
+            String reason = blocked.get(uniqueId);
+            if (reason != null || exhaustedFrom == null) {
+                return reason;
+            }
+            PendingEntry entry = pendingIndex.get(uniqueId);
+            return entry != null && ORDER.compare(entry, exhaustedFrom) >= 0 ? exhaustedReason : null;
+        }
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * 运行时调整最大并发数
+     * 调高时立即派发排队项；调低时已开始的下载不受影响，只是在活跃数回落到新上限之前不再派发
+     */
+    public void setMaxConcurrent(int maxConcurrent) {
+        synchronized (lock) {
+            this.maxConcurrent = Math.max(1, maxConcurrent);
+        }
+        dispatch();
+    }
+
+    /**
+     * 清空待下载队列
+     */
+    public void clear() {
+        synchronized (lock) {
+            pending.clear();
+            pendingIndex.clear();
+            blocked.clear();
+            exhaustedFrom = null;
+            exhaustedReason = null;
+        }
+    }
+
+    /**
+     * 在有空闲槽位时按顺序派发通过准入检查的下载项
+     * 每次派发只查询一次资源状态；资源耗尽后不再检查后面的下载项
+     */
+    private void dispatch() {
+        List<DownloadItem> toStart = new ArrayList<>();
+        synchronized (lock) {
+            if (running.size() >= maxConcurrent || pending.isEmpty()) {
+                return;
+            }
+            Admission.Pass pass = begin();
+            Map<String, String> previous = new HashMap<>(blocked);
+            String previousExhausted = exhaustedReason;
+            blocked.clear();
+            exhaustedFrom = null;
+            exhaustedReason = null;
+
+            Iterator<PendingEntry> iterator = pending.iterator();
+            while (running.size() < maxConcurrent && iterator.hasNext()) {
+                PendingEntry entry = iterator.next();
+                String uniqueId = entry.item.getUniqueId();
+                if (!tryAdmit(pass, entry.item)) {
+                    String reason = pass.getReason();
+                    if (pass.isExhausted()) {
+                        exhaustedFrom = entry;
+                        exhaustedReason = reason;
+                        if (!Objects.equals(reason, previousExhausted)) {
+                            log.info("{}，{} 个下载项继续排队", reason, pending.tailSet(entry, true).size());
+                        }
+                        break;
+                    }
+                    blocked.put(uniqueId, reason);
+                    if (!previous.containsKey(uniqueId)) {
+                        log.info("下载项暂不满足准入条件（{}），继续排队: {}", reason, uniqueId);
+                    }
+                    continue;
+                }
+                iterator.remove();
+                pendingIndex.remove(uniqueId);
+                running.add(uniqueId);
+                activeCount.incrementAndGet();
+                toStart.add(entry.item);
+            }
+        }
+
+        for (DownloadItem item : toStart) {
+            try {
+                dispatchExecutor.execute(() -> start(item));
+            } catch (RejectedExecutionException e) {
+                log.warn("下载执行器已关闭，无法启动下载: {}", item.getUniqueId());
+                synchronized (lock) {
+                    if (running.remove(item.getUniqueId())) {
+                        activeCount.decrementAndGet();
+                        admission.release(item.getUniqueId());
+                    }
+                }
+            }
+        }
+    }
+
+    private Admission.Pass begin() {
+        try {
+            return admission.begin();
+        } catch (Exception e) {
+            log.warn("准入检查异常，允许下载", e);
+            return Admission.ALWAYS::tryAdmit;
+        }
+    }
+
+    private boolean tryAdmit(Admission.Pass pass, DownloadItem item) {
+        try {
+            return pass.tryAdmit(item);
+        } catch (Exception e) {
+            log.warn("准入检查异常，允许下载: {}", item.getUniqueId(), e);
+            return true;
+        }
+    }
+
+    private void start(DownloadItem item) {
+        try {
+            starter.accept(item);
+        } catch (Exception e) {
+            log.error("启动下载时发生异常: {}", item.getUniqueId(), e);
+            release(item.getUniqueId());
+        }
+    }
+
+    private static final class PendingEntry {
+        private final DownloadItem item;
+        private final int priority;
+        private final long sequence;
+
+        private PendingEntry(DownloadItem item, int priority, long sequence) {
+            this.item = item;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package fun.zulin.tmd.telegram;
+
+import fun.zulin.tmd.data.item.DownloadItem;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 单个下载的运行时状态
+ * 保证完成、失败、超时三种结局只处理一次，并用世代号识别已被新请求替代的 TDLib 回调
+ */
+final class DownloadTask {
+
+    private final DownloadItem item;
+
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+
+    private final AtomicInteger generation = new AtomicInteger(0);
+
+    private volatile ScheduledFuture<?> timeout;
+
+    /**
+     * 是否使用分段请求（限速时按分块发出 DownloadFile）
+     */
+    private volatile boolean ranged = false;
+
+    /**
+     * 已计入带宽令牌桶的下载位置，-1表示尚未建立基准
+     */
+    private volatile long chargedPosition = -1;
+
+    /**
+     * 上一次超时检查时的已下载字节数
+     */
+    private volatile long progressMark = -1;
+
+    /**
+     * 最近一次 DownloadFile 请求的范围，修改优先级时按原范围重新发出
+     */
+    private volatile long requestOffset = 0;
+
+    private volatile long requestLimit = 0;
+
+    /**
+     * 执行本次下载的会话，用于统计各会话的负载
+     */
+    private final AtomicReference<TelegramSession> session = new AtomicReference<>();
+
+    DownloadTask(DownloadItem item) {
+        this.item = item;
+    }
+
+    DownloadItem getItem() {
+        return item;
+    }
+
+    /**
+     * 标记下载结束并取消超时任务
+     *
+     * @return 是否由本次调用完成结束（已结束返回false）
+     */
+    boolean finish() {
+        if (!finished.compareAndSet(false, true)) {
+            return false;
+        }
+        ScheduledFuture<?> current = timeout;
+        if (current != null) {
+            current.cancel(false);
+        }
+        return true;
+    }
+
+    boolean isFinished() {
+        return finished.get();
+    }
+
+    void setTimeout(ScheduledFuture<?> timeout) {
+        this.timeout = timeout;
+        if (finished.get()) {
+            timeout.cancel(false);
+        }
+    }
+
+    /**
+     * 发出新的 TDLib 下载请求前调用，返回该请求的世代号
+     */
+    int nextGeneration() {
+        return generation.incrementAndGet();
+    }
+
+    boolean isCurrent(int requestGeneration) {
+        return generation.get() == requestGeneration;
+    }
+
+    boolean isRanged() {
+        return ranged;
+    }
+
+    void setRanged(boolean ranged) {
+        this.ranged = ranged;
+    }
+
+    /**
+     * 记录新的下载位置
+     *
+     * @return 自上次记录以来新增的字节数，首次记录只建立基准返回0
+     */
+    long charge(long position) {
+        long previous = chargedPosition;
+        chargedPosition = position;
+        return previous < 0 ? 0 : Math.max(0, position - previous);
+    }
+
+    /**
+     * 记录超时检查时的已下载字节数
+     *
+     * @return 与上次检查相比是否有进展
+     */
+    boolean markProgress(long downloadedSize) {
+        boolean progressed = downloadedSize > progressMark;
+        progressMark = downloadedSize;
+        return progressed;
+    }
+
+    /**
+     * 记录本次请求的范围
+     */
+    void setRequest(long offset, long limit) {
+        this.requestOffset = offset;
+        this.requestLimit = limit;
+    }
+
+    long getRequestOffset() {
+        return requestOffset;
+    }
+
+    long getRequestLimit() {
+        return requestLimit;
+    }
+
+    /**
+     * 把下载计入会话的负载，已绑定其他会话时先释放
+     */
+    void bindSession(TelegramSession target) {
+        if (target != null) {
+            target.acquireDownload();
+        }
+        TelegramSession previous = session.getAndSet(target);
+        if (previous != null) {
+            previous.releaseDownload();
+        }
+    }
+
+    /**
+     * 下载结束时释放会话负载，重复调用无副作用
+     */
+    void releaseSession() {
+        TelegramSession previous = session.getAndSet(null);
+        if (previous != null) {
+            previous.releaseDownload();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package fun.zulin.tmd.telegram;
+
+import it.tdlight.client.SimpleTelegramClient;
+import it.tdlight.jni.TdApi;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Telegram 链接解析入口
+ * 链接下载、Saved Messages 中的链接和批量下载都经由这里解析，结果按 LRU + TTL 缓存：
+ * 聊天（用户名或 c/{id}）→ 聊天ID，链接 → （聊天ID，消息ID，消息内容）。
+ * 聊天已解析过时，同一聊天的新链接直接用 GetMessage 获取消息，不再让 TDLib 重新解析用户名；
+ * 同一个键的并发解析合并为一次请求
+ */
+@Slf4j
+public final class LinkResolver {
+
+    /**
+     * https://t.me/{用户名}/{消息ID} 或 https://t.me/c/{频道ID}/{消息ID}，忽略查询参数
+     */
+    private static final Pattern MESSAGE_LINK = Pattern.compile(
+            "^(?:https?://)?(?:www\\.)?(?:t|telegram)\\.me/(c/\\d+|[A-Za-z0-9_]+)/(\\d+)/?(?:\\?.*)?$",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final int DEFAULT_MAX_SIZE = 1000;
+
+    private static final long DEFAULT_TTL_MINUTES = 60;
+
+    private static volatile ResolutionCache<String, Long> chats =
+            new ResolutionCache<>(DEFAULT_MAX_SIZE, TimeUnit.MINUTES.toMillis(DEFAULT_TTL_MINUTES));
+
+    private static volatile ResolutionCache<String, Resolved> links =
+            new ResolutionCache<>(DEFAULT_MAX_SIZE, TimeUnit.MINUTES.toMillis(DEFAULT_TTL_MINUTES));
+
+    private LinkResolver() {
+    }
+
+    /**
+     * 链接解析结果
+     */
+    public static final class Resolved {
+        private final long chatId;
+        private final long messageId;
+        private final TdApi.MessageContent content;
+
+        public Resolved(long chatId, long messageId, TdApi.MessageContent content) {
+            this.chatId = chatId;
+            this.messageId = messageId;
+            this.content = content;
+        }
+
+        public long getChatId() {
+            return chatId;
+        }
+
+        /**
+         * TDLib 消息ID，消息不存在时为0
+         */
+        public long getMessageId() {
+            return messageId;
+        }
+
+        /**
+         * 消息内容，消息不存在或不可访问时为null
+         */
+        public TdApi.MessageContent getContent() {
+            return content;
+        }
+    }
+
+    /**
+     * 按配置重建缓存
+     *
+     * @param maxSize    每种缓存最多的条目数
+     * @param ttlMinutes 条目有效期（分钟）
+     */
+    public static void configure(int maxSize, long ttlMinutes) {
+        long ttlMillis = TimeUnit.MINUTES.toMillis(ttlMinutes);
+        chats = new ResolutionCache<>(maxSize, ttlMillis);
+        links = new ResolutionCache<>(maxSize, ttlMillis);
+        log.info("链接解析缓存: 容量={}, 有效期={}分钟", maxSize, ttlMinutes);
+    }
+
+    /**
+     * 解析消息链接
+     *
+     * @return 解析结果，链接无法解析时为null
+     */
+    public static CompletableFuture<Resolved> resolveLink(SimpleTelegramClient client, String link) {
+        String trimmed = link.trim();
+        String key = linkKey(trimmed);
+        var cache = links;
+        return cache.get(key, k -> load(client, trimmed, k)).thenApply(resolved -> {
+            // 消息不存在时只缓存聊天，不缓存链接，之后可以重新获取
+            if (resolved != null && resolved.getContent() == null) {
+                cache.invalidate(key);
+            }
+            return resolved;
+        });
+    }
+
+    /**
+     * 解析链接中的聊天
+     *
+     * @param chat      频道/群组用户名，或私有频道的 c/{id} 形式
+     * @param messageId 聊天中任意一个服务器消息ID，消息不存在时同样可以解析出聊天
+     * @return 聊天ID，无法解析时为null
+     */
+    public static CompletableFuture<Long> resolveChat(SimpleTelegramClient client, String chat, long messageId) {
+        String link = String.format("https://t.me/%s/%d", chat.trim(), messageId);
+        return chats.get(chatKey(chat), k -> resolveViaLinkInfo(client, link, k)
+                .thenApply(resolved -> resolved == null ? null : resolved.getChatId()));
+    }
+
+    /**
+     * 按用户名解析公开频道/群组
+     *
+     * @return 聊天ID，无法解析时为null
+     */
+    public static CompletableFuture<Long> resolvePublicChat(SimpleTelegramClient client, String username) {
+        String name = username.trim();
+        if (name.startsWith("@")) {
+            name = name.substring(1);
+        }
+        String query = name;
+        return chats.get(chatKey(query), k -> client.send(new TdApi.SearchPublicChat(query))
+                .thenApply(chat -> chat == null ? null : chat.id));
+    }
+
+    public static ResolutionCache<String, Long> getChatCache() {
+        return chats;
+    }
+
+    public static ResolutionCache<String, Resolved> getLinkCache() {
+        return links;
+    }
+
+    /**
+     * 链接的缓存键：{聊天}/{服务器消息ID}，不是消息链接时使用原链接
+     */
+    static String linkKey(String link) {
+        Matcher matcher = MESSAGE_LINK.matcher(link.trim());
+        if (!matcher.matches()) {
+            return link.trim();
+        }
+        return chatKey(matcher.group(1)) + "/" + Long.parseLong(matcher.group(2));
+    }
+
+    /**
+     * 聊天的缓存键，用户名不区分大小写
+     */
+    static String chatKey(String chat) {
+        return chat.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static CompletableFuture<Resolved> load(SimpleTelegramClient client, String link, String key) {
+        Matcher matcher = MESSAGE_LINK.matcher(link);
+        if (!matcher.matches()) {
+            return resolveViaLinkInfo(client, link, null);
+        }
+        String chatKey = chatKey(matcher.group(1));
+        Long chatId = chats.getIfPresent(chatKey);
+        if (chatId == null) {
+            return resolveViaLinkInfo(client, link, chatKey);
+        }
+
+        long serverId = Long.parseLong(matcher.group(2));
+        log.debug("聊天已缓存，直接获取消息: {} -> {}", key, chatId);
+        return client.send(new TdApi.GetMessage(chatId, ChatHistoryCrawler.toMessageId(serverId)))
+                .thenApply(message -> new Resolved(message.chatId, message.id, message.content))
+                .exceptionallyCompose(e -> {
+                    log.debug("直接获取消息失败，改为解析链接: {}", link);
+                    return resolveViaLinkInfo(client, link, chatKey);
+                });
+    }
+
+    private static CompletableFuture<Resolved> resolveViaLinkInfo(SimpleTelegramClient client, String link, String chatKey) {
+        return client.send(new TdApi.GetMessageLinkInfo(link)).thenApply(info -> {
+            if (info == null || info.chatId == 0) {
+                return null;
+            }
+            if (chatKey != null) {
+                chats.put(chatKey, info.chatId);
+            }
+            return info.message != null
+                    ? new Resolved(info.chatId, info.message.id, info.message.content)
+                    : new Resolved(info.chatId, 0, null);
+        });
+    }
+}
@@ -12,6 +12,19 @@ import java.util.concurrent.CompletableFuture;
 
 public class QrCodeClientInteraction implements ClientInteraction {
 
+    private final String topic;
+
+    public QrCodeClientInteraction() {
+        this("/topic/qrcode");
+    }
+
+    /**
+     * @param topic 推送登录二维码链接的主题，额外会话使用 /topic/qrcode/{名称}
+     */
+    public QrCodeClientInteraction(String topic) {
+        this.topic = topic;
+    }
+
     @Override
     public CompletableFuture<String> onParameterRequest(InputParameter parameter, ParameterInfo parameterInfo) {
 
@@ -23,7 +36,7 @@ public class QrCodeClientInteraction implements ClientInteraction {
             if (parameterInfo instanceof ParameterInfoNotifyLink info) {
                 var link = info.getLink();
                 var simpMessagingTemplate = SpringContext.getBean(SimpMessagingTemplate.class);
-                simpMessagingTemplate.convertAndSend("/topic/qrcode", link);
+                simpMessagingTemplate.convertAndSend(topic, link);
             }
 
             return "";
@@ -0,0 +1,104 @@
+package fun.zulin.tmd.telegram;
+
+import fun.zulin.tmd.data.item.DownloadItem;
+import fun.zulin.tmd.data.item.DownloadState;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 启动恢复的请求计划
+ * 有远程文件ID的下载项用 GetRemoteFile 在本地解析，不访问服务器，每步最多处理 {@link #MAX_BATCH} 个；
+ * 其余下载项按聊天分组，每步用一次 GetMessages 获取同一聊天中最多 {@link #MAX_BATCH} 条消息。
+ * 各步按配置的速率依次执行，下载项逐步进入准入队列
+ */
+public final class RecoveryPlan {
+
+    /**
+     * 每步最多处理的下载项数（GetMessages 单次请求的消息数）
+     */
+    public static final int MAX_BATCH = 100;
+
+    private RecoveryPlan() {
+    }
+
+    /**
+     * 恢复的一步
+     */
+    public static final class Step {
+        private final Long chatId;
+        private final List<DownloadItem> items;
+
+        private Step(Long chatId, List<DownloadItem> items) {
+            this.chatId = chatId;
+            this.items = items;
+        }
+
+        /**
+         * GetMessages 的聊天ID，用远程文件ID解析的步为null
+         */
+        public Long getChatId() {
+            return chatId;
+        }
+
+        public List<DownloadItem> getItems() {
+            return items;
+        }
+
+        public boolean isRemoteFiles() {
+            return chatId == null;
+        }
+    }
+
+    /**
+     * 选出需要重新提交的下载项
+     * 暂停的下载项只登记，等待手动继续；状态仍为下载中的是上次关闭或崩溃时中断的下载，
+     * 和排队中的一样重新提交，从已下载的部分继续；失败的下载项在重试次数用完前才重新提交
+     *
+     * @param items      数据库中未完成、且不在队列中的下载项
+     * @param maxRetries 最大重试次数
+     */
+    public static List<DownloadItem> resumable(List<DownloadItem> items, int maxRetries) {
+        return items.stream()
+                .filter(item -> !DownloadState.Pause.name().equals(item.getState()))
+                .filter(item -> !DownloadState.Failed.name().equals(item.getState())
+                        || item.getDownloadCount() < maxRetries)
+                .toList();
+    }
+
+    /**
+     * 生成恢复计划
+     * 远程文件ID的步排在前面（只查本地数据库，最快让下载项进入队列），消息组保持下载项的原有顺序
+     *
+     * @param items         待恢复的下载项
+     * @param maxBatch      每步最多处理的下载项数
+     * @param defaultChatId 下载项没有记录聊天ID时使用的聊天（Saved Messages）
+     */
+    public static List<Step> plan(List<DownloadItem> items, int maxBatch, long defaultChatId) {
+        int batch = Math.max(1, Math.min(MAX_BATCH, maxBatch));
+        List<DownloadItem> remote = new ArrayList<>();
+        Map<Long, List<DownloadItem>> byChat = new LinkedHashMap<>();
+        for (DownloadItem item : items) {
+            String remoteFileId = item.getRemoteFileId();
+            if (remoteFileId != null && !remoteFileId.isEmpty()) {
+                remote.add(item);
+            } else {
+                long chatId = item.getChatId() != null ? item.getChatId() : defaultChatId;
+                byChat.computeIfAbsent(chatId, k -> new ArrayList<>()).add(item);
+            }
+        }
+
+        List<Step> steps = new ArrayList<>();
+        for (int i = 0; i < remote.size(); i += batch) {
+            steps.add(new Step(null, remote.subList(i, Math.min(i + batch, remote.size()))));
+        }
+        byChat.forEach((chatId, group) -> {
+            for (int i = 0; i < group.size(); i += batch) {
+                steps.add(new Step(chatId, group.subList(i, Math.min(i + batch, group.size()))));
+            }
+        });
+        return steps;
+    }
+}
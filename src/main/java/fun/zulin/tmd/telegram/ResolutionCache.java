@@ -0,0 +1,172 @@
+package fun.zulin.tmd.telegram;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * 解析结果缓存
+ * 按最近访问顺序淘汰（LRU），超过容量时淘汰最久未访问的条目，条目写入后超过 TTL 即失效；
+ * 同一个键的并发查询合并为一次请求，所有调用方共享同一个结果。
+ * 失败的查询和空结果不缓存，下次访问重新请求
+ *
+ * @param <K> 键
+ * @param <V> 解析结果
+ */
+public class ResolutionCache<K, V> {
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxSize;
+
+    private final long ttlMillis;
+
+    private final LongSupplier clock;
+
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private final Map<K, CompletableFuture<V>> inflight = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @param maxSize   最多缓存的条目数
+     * @param ttlMillis 条目有效期（毫秒）
+     */
+    public ResolutionCache(int maxSize, long ttlMillis) {
+        this(maxSize, ttlMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * @param maxSize   最多缓存的条目数
+     * @param ttlMillis 条目有效期（毫秒）
+     * @param clock     当前时间（毫秒）
+     */
+    public ResolutionCache(int maxSize, long ttlMillis, LongSupplier clock) {
+        this.maxSize = Math.max(1, maxSize);
+        this.ttlMillis = Math.max(0, ttlMillis);
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > ResolutionCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * 获取缓存的结果，未命中时调用 loader 请求
+     * 同一个键已有请求在进行中时不再调用 loader，直接返回进行中的请求
+     *
+     * @param key    键
+     * @param loader 发起请求，只在未命中且没有进行中的请求时调用
+     */
+    public CompletableFuture<V> get(K key, Function<K, CompletableFuture<V>> loader) {
+        CompletableFuture<V> pending;
+        synchronized (this) {
+            V cached = lookup(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return CompletableFuture.completedFuture(cached);
+            }
+            CompletableFuture<V> running = inflight.get(key);
+            if (running != null) {
+                coalesced.incrementAndGet();
+                return running;
+            }
+            misses.incrementAndGet();
+            pending = new CompletableFuture<>();
+            inflight.put(key, pending);
+        }
+
+        // 在锁外发起请求，loader 同步回调时不会阻塞其他键
+        CompletableFuture<V> loaded;
+        try {
+            loaded = loader.apply(key);
+        } catch (Exception e) {
+            loaded = CompletableFuture.failedFuture(e);
+        }
+        loaded.whenComplete((value, error) -> {
+            synchronized (this) {
+                inflight.remove(key);
+                if (error == null && value != null) {
+                    entries.put(key, new Entry<>(value, clock.getAsLong() + ttlMillis));
+                }
+            }
+            if (error != null) {
+                pending.completeExceptionally(error);
+            } else {
+                pending.complete(value);
+            }
+        });
+        return pending;
+    }
+
+    /**
+     * 未过期的缓存结果，不发起请求
+     */
+    public synchronized V getIfPresent(K key) {
+        return lookup(key);
+    }
+
+    /**
+     * 直接写入结果（其他请求顺带得到的解析结果）
+     */
+    public synchronized void put(K key, V value) {
+        if (value != null) {
+            entries.put(key, new Entry<>(value, clock.getAsLong() + ttlMillis));
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    private V lookup(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (clock.getAsLong() >= entry.expiresAt) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+}
@@ -0,0 +1,102 @@
+package fun.zulin.tmd.telegram;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 下载重试策略
+ * Telegram 要求等待时（FLOOD_WAIT_x / retry after x）按要求的秒数等待，
+ * 其余可重试错误使用带抖动的指数退避
+ */
+public class RetryPolicy {
+
+    private static final Pattern FLOOD_WAIT = Pattern.compile("FLOOD_WAIT_(\\d+)");
+
+    private static final Pattern RETRY_AFTER = Pattern.compile("(?i)retry after (\\d+)");
+
+    private final int maxRetries;
+
+    private final long baseDelayMillis;
+
+    private final long maxDelayMillis;
+
+    /**
+     * @param maxRetries      最大重试次数
+     * @param baseDelayMillis 首次重试的基础延迟（毫秒）
+     * @param maxDelayMillis  退避延迟上限（毫秒），不限制 Telegram 要求的等待时间
+     */
+    public RetryPolicy(int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.baseDelayMillis = Math.max(1, baseDelayMillis);
+        this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+    }
+
+    /**
+     * 解析 Telegram 要求的等待秒数
+     *
+     * @return 等待秒数，消息中没有等待要求时返回-1
+     */
+    public static long parseRetryAfterSeconds(String message) {
+        if (message == null) {
+            return -1;
+        }
+        Matcher matcher = FLOOD_WAIT.matcher(message);
+        if (matcher.find()) {
+            return Long.parseLong(matcher.group(1));
+        }
+        matcher = RETRY_AFTER.matcher(message);
+        if (matcher.find()) {
+            return Long.parseLong(matcher.group(1));
+        }
+        return -1;
+    }
+
+    /**
+     * 判断错误是否值得重试
+     * 请求被限流、服务器错误、网络错误和文件引用过期（重新获取消息即可恢复）可以重试；
+     * 其余 400/403/404 类错误重试也不会成功
+     *
+     * @param code    TDLib 错误码，非 TDLib 错误传0
+     * @param message 错误信息
+     */
+    public boolean isRetryable(int code, String message) {
+        if (code == 429 || parseRetryAfterSeconds(message) >= 0) {
+            return true;
+        }
+        if (message != null && message.contains("FILE_REFERENCE")) {
+            return true;
+        }
+        return code != 400 && code != 403 && code != 404;
+    }
+
+    /**
+     * 判断第 attempt 次重试是否允许
+     *
+     * @param attempt 重试序号，从1开始
+     */
+    public boolean canRetry(int attempt, int code, String message) {
+        return attempt <= maxRetries && isRetryable(code, message);
+    }
+
+    /**
+     * 计算第 attempt 次重试前的等待时间
+     *
+     * @param attempt 重试序号，从1开始
+     * @param random  [0, 1) 之间的随机数，用于抖动
+     * @return 等待毫秒数
+     */
+    public long nextDelayMillis(int attempt, String message, double random) {
+        long retryAfter = parseRetryAfterSeconds(message);
+        if (retryAfter >= 0) {
+            return retryAfter * 1000;
+        }
+        int shift = Math.min(Math.max(0, attempt - 1), 30);
+        long delay = Math.min(maxDelayMillis, baseDelayMillis << shift);
+        // 一半固定、一半随机，避免多个下载同时重试
+        return delay / 2 + (long) (random * (delay - delay / 2));
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+}
@@ -0,0 +1,111 @@
+package fun.zulin.tmd.telegram;
+
+import it.tdlight.client.SimpleTelegramClient;
+import it.tdlight.jni.TdApi;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Telegram 会话池
+ * 主会话（序号0）即 {@link Tmd#client}，负责监听 Saved Messages；其余会话只用于分担下载。
+ * 频道和超级群组的消息ID在所有账号中一致，这类下载分配给能看到该聊天且负载最低的会话；
+ * 私聊和普通群组的消息ID因账号而异，只由主会话下载
+ */
+@Slf4j
+public final class SessionPool {
+
+    public static final int PRIMARY = 0;
+
+    /**
+     * 频道和超级群组的 chatId 小于该值（-100 前缀）
+     */
+    private static final long CHANNEL_CHAT_ID_BOUND = -1000000000000L;
+
+    private static final Comparator<TelegramSession> LOAD_ORDER = Comparator
+            .comparingInt(TelegramSession::getActiveDownloads)
+            .thenComparingInt(TelegramSession::getIndex);
+
+    private static final List<TelegramSession> sessions = new CopyOnWriteArrayList<>();
+
+    private SessionPool() {
+    }
+
+    /**
+     * 注册会话，序号与已有会话重复时替换
+     */
+    public static synchronized void register(TelegramSession session) {
+        sessions.removeIf(existing -> existing.getIndex() == session.getIndex());
+        sessions.add(session);
+        sessions.sort(Comparator.comparingInt(TelegramSession::getIndex));
+        log.info("注册 Telegram 会话 #{} {}", session.getIndex(), session.getName());
+    }
+
+    public static List<TelegramSession> getSessions() {
+        return List.copyOf(sessions);
+    }
+
+    public static TelegramSession get(int index) {
+        for (TelegramSession session : sessions) {
+            if (session.getIndex() == index) {
+                return session;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 获取会话的客户端，会话不存在时使用主会话客户端
+     */
+    public static SimpleTelegramClient clientOf(int index) {
+        TelegramSession session = get(index);
+        return session != null && session.getClient() != null ? session.getClient() : Tmd.client;
+    }
+
+    /**
+     * 为聊天中的消息选择下载会话
+     * 对可见性未知的会话发起异步探测，探测完成前只在已知可见的会话中选择
+     *
+     * @return 选中的会话，没有可用会话时返回null（使用下载项当前绑定的会话）
+     */
+    public static TelegramSession route(Long chatId, Long messageId) {
+        if (sessions.size() < 2 || !isRoutable(chatId, messageId)) {
+            return null;
+        }
+        for (TelegramSession session : sessions) {
+            if (!session.isPrimary() && session.isReady() && session.beginProbe(chatId)) {
+                probe(session, chatId);
+            }
+        }
+        return select(sessions, chatId);
+    }
+
+    /**
+     * 只有频道和超级群组的消息可以跨账号下载
+     */
+    static boolean isRoutable(Long chatId, Long messageId) {
+        return chatId != null && messageId != null && messageId > 0 && chatId < CHANNEL_CHAT_ID_BOUND;
+    }
+
+    /**
+     * 在可用且能看到聊天的会话中选择负载最低的，主会话可见性未知时视为可见
+     */
+    static TelegramSession select(List<TelegramSession> candidates, long chatId) {
+        return candidates.stream()
+                .filter(TelegramSession::isReady)
+                .filter(session -> Boolean.TRUE.equals(session.canSee(chatId))
+                        || (session.isPrimary() && session.canSee(chatId) == null))
+                .min(LOAD_ORDER)
+                .orElse(null);
+    }
+
+    private static void probe(TelegramSession session, long chatId) {
+        session.getClient().send(new TdApi.GetChat(chatId), result -> {
+            boolean visible = !result.isError();
+            session.setVisible(chatId, visible);
+            log.debug("会话 #{} 对聊天 {} 的可见性: {}", session.getIndex(), chatId, visible);
+        });
+    }
+}
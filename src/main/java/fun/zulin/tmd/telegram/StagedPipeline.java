@@ -0,0 +1,218 @@
+package fun.zulin.tmd.telegram;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * 分阶段处理流水线
+ * 每个阶段有独立的有界队列和工作线程，任务按添加顺序依次经过各阶段；
+ * 入口提交不阻塞（队列满时返回false），阶段之间的交接在下游队列满时阻塞，
+ * 慢阶段的积压会逐级向上游传导，而不会无限堆积
+ *
+ * @param <T> 在各阶段之间传递的任务上下文
+ */
+@Slf4j
+public class StagedPipeline<T> {
+
+    /**
+     * 阶段处理逻辑
+     */
+    @FunctionalInterface
+    public interface Stage<T> {
+        /**
+         * @return 是否继续进入下一阶段（false 表示任务已在本阶段结束）
+         */
+        boolean process(T job) throws Exception;
+    }
+
+    private final String name;
+
+    private final List<StageWorker> stages = new ArrayList<>();
+
+    private final BiConsumer<T, Exception> errorHandler;
+
+    private volatile boolean started = false;
+
+    private volatile boolean stopped = false;
+
+    /**
+     * @param name         流水线名称，用于线程命名
+     * @param errorHandler 阶段抛出异常时的处理逻辑，任务随之结束
+     */
+    public StagedPipeline(String name, BiConsumer<T, Exception> errorHandler) {
+        this.name = name;
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * 添加阶段，必须在 {@link #start()} 之前调用
+     *
+     * @param stageName 阶段名称
+     * @param threads   工作线程数
+     * @param capacity  队列容量
+     */
+    public StagedPipeline<T> addStage(String stageName, int threads, int capacity, Stage<T> stage) {
+        if (started) {
+            throw new IllegalStateException("流水线已启动，不能再添加阶段");
+        }
+        stages.add(new StageWorker(stageName, Math.max(1, threads), Math.max(1, capacity), stage));
+        return this;
+    }
+
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        for (int i = 0; i < stages.size(); i++) {
+            stages.get(i).start(i);
+        }
+    }
+
+    /**
+     * 提交任务到第一个阶段，不阻塞
+     *
+     * @return 是否提交成功（未启动、已关闭或队列已满时返回false）
+     */
+    public boolean submit(T job) {
+        if (!started || stopped || stages.isEmpty()) {
+            return false;
+        }
+        StageWorker first = stages.get(0);
+        // 先计数再入队，工作线程取走任务时计数已经存在
+        first.inFlight.incrementAndGet();
+        if (!first.queue.offer(job)) {
+            first.inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 停止接收任务，等待队列中的任务处理完毕
+     *
+     * @return 是否在超时前处理完毕
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        stopped = true;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (StageWorker stage : stages) {
+            // 上游阶段处理完后下游才不会再收到任务
+            while (stage.inFlight() > 0) {
+                if (System.nanoTime() >= deadline) {
+                    interruptAll();
+                    return false;
+                }
+                Thread.sleep(10);
+            }
+        }
+        interruptAll();
+        return true;
+    }
+
+    /**
+     * 指定阶段排队中和处理中的任务数
+     */
+    public int getBacklog(String stageName) {
+        for (StageWorker stage : stages) {
+            if (stage.name.equals(stageName)) {
+                return stage.inFlight();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 所有阶段排队中和处理中的任务总数
+     */
+    public int getBacklog() {
+        int total = 0;
+        for (StageWorker stage : stages) {
+            total += stage.inFlight();
+        }
+        return total;
+    }
+
+    private void interruptAll() {
+        for (StageWorker stage : stages) {
+            stage.threads.forEach(Thread::interrupt);
+        }
+    }
+
+    private final class StageWorker {
+        private final String name;
+        private final int threadCount;
+        private final BlockingQueue<T> queue;
+        private final Stage<T> stage;
+        private final List<Thread> threads = new ArrayList<>();
+        /**
+         * 排队中和处理中的任务数，入队前增加，任务离开本阶段时减少
+         */
+        private final AtomicInteger inFlight = new AtomicInteger(0);
+
+        private StageWorker(String name, int threadCount, int capacity, Stage<T> stage) {
+            this.name = name;
+            this.threadCount = threadCount;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.stage = stage;
+        }
+
+        private int inFlight() {
+            return inFlight.get();
+        }
+
+        private void start(int index) {
+            StageWorker next = index + 1 < stages.size() ? stages.get(index + 1) : null;
+            for (int i = 0; i < threadCount; i++) {
+                Thread thread = new Thread(() -> run(next));
+                thread.setName(StagedPipeline.this.name + "-" + name + "-" + (i + 1));
+                thread.setDaemon(true);
+                threads.add(thread);
+                thread.start();
+            }
+        }
+
+        private void run(StageWorker next) {
+            while (!Thread.currentThread().isInterrupted()) {
+                T job;
+                try {
+                    job = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                boolean proceed = false;
+                try {
+                    proceed = stage.process(job) && next != null;
+                } catch (Exception e) {
+                    log.error("{} 阶段 {} 处理失败", StagedPipeline.this.name, name, e);
+                    errorHandler.accept(job, e);
+                } finally {
+                    if (proceed) {
+                        // 先计入下游再离开本阶段，任务在交接过程中始终计入某个阶段
+                        next.inFlight.incrementAndGet();
+                    }
+                    inFlight.decrementAndGet();
+                }
+                if (!proceed) {
+                    continue;
+                }
+                try {
+                    // 下游队列满时阻塞，形成背压
+                    next.queue.put(job);
+                } catch (InterruptedException e) {
+                    next.inFlight.decrementAndGet();
+                    log.warn("{} 阶段 {} 交接被中断", StagedPipeline.this.name, name);
+                    errorHandler.accept(job, e);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package fun.zulin.tmd.telegram;
+
+import fun.zulin.tmd.data.item.DownloadItem;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * 存储空间准入控制
+ * 开始下载前为下载项预留剩余字节数：磁盘可用空间扣除已预留的剩余字节和保留空间后必须放得下，
+ * 配置了存储配额时，已完成文件加上所有下载中文件的大小不能超过配额；
+ * 预留按下载项实时的剩余字节计算，随下载进度自动减少。
+ * 每次派发只查询一次磁盘和已用空间，排队的下载项依次在这份快照上扣减
+ */
+@Slf4j
+public class StorageAdmission implements DownloadScheduler.Admission {
+
+    private final LongSupplier usableSpace;
+
+    private final LongSupplier usedBytes;
+
+    private final long quotaBytes;
+
+    private final long minFreeBytes;
+
+    private final Map<String, DownloadItem> reservations = new ConcurrentHashMap<>();
+
+    /**
+     * @param quotaBytes   存储配额（字节），0表示不限制
+     * @param minFreeBytes 磁盘上始终保留的空间（字节）
+     * @param usableSpace  下载目录所在磁盘的可用空间，无法获取时返回-1
+     * @param usedBytes    已完成文件占用的字节数
+     */
+    public StorageAdmission(long quotaBytes, long minFreeBytes, LongSupplier usableSpace, LongSupplier usedBytes) {
+        this.quotaBytes = Math.max(0, quotaBytes);
+        this.minFreeBytes = Math.max(0, minFreeBytes);
+        this.usableSpace = usableSpace;
+        this.usedBytes = usedBytes;
+    }
+
+    @Override
+    public boolean tryAdmit(DownloadItem item) {
+        return begin().tryAdmit(item);
+    }
+
+    /**
+     * 查询一次磁盘可用空间和已用空间，同一次派发中的准入检查都基于这份快照，在本地扣减
+     */
+    @Override
+    public synchronized DownloadScheduler.Admission.Pass begin() {
+        long free = usableSpace.getAsLong();
+        long available = free >= 0 ? free - getReservedBytes() - minFreeBytes : Long.MAX_VALUE;
+        long committed = quotaBytes > 0 ? usedBytes.getAsLong() + getReservedFileSize() : 0;
+        return new StoragePass(available, committed);
+    }
+
+    @Override
+    public void release(String uniqueId) {
+        reservations.remove(uniqueId);
+    }
+
+    /**
+     * 下载中文件尚未写入的字节数之和
+     */
+    public long getReservedBytes() {
+        long total = 0;
+        for (DownloadItem item : reservations.values()) {
+            total += remaining(item);
+        }
+        return total;
+    }
+
+    /**
+     * 下载中文件的完整大小之和（计入配额）
+     */
+    public long getReservedFileSize() {
+        long total = 0;
+        for (DownloadItem item : reservations.values()) {
+            total += Math.max(0, item.getFileSize());
+        }
+        return total;
+    }
+
+    /**
+     * 下载目录所在磁盘的可用空间，无法获取时为-1
+     */
+    public long getUsableSpace() {
+        return usableSpace.getAsLong();
+    }
+
+    public long getQuotaBytes() {
+        return quotaBytes;
+    }
+
+    /**
+     * 一次派发的准入检查，通过的下载项从快照中扣除
+     */
+    private final class StoragePass implements DownloadScheduler.Admission.Pass {
+        private long available;
+        private long committed;
+        private String reason;
+
+        private StoragePass(long available, long committed) {
+            this.available = available;
+            this.committed = committed;
+        }
+
+        @Override
+        public boolean tryAdmit(DownloadItem item) {
+            String uniqueId = item.getUniqueId();
+            if (reservations.containsKey(uniqueId)) {
+                return true;
+            }
+
+            long needed = remaining(item);
+            if (available < needed) {
+                log.debug("磁盘空间不足，暂缓下载 {}: 需要 {} bytes，可用 {} bytes", uniqueId, needed, available);
+                reason = "磁盘空间不足";
+                return false;
+            }
+
+            long fileSize = Math.max(0, item.getFileSize());
+            if (quotaBytes > 0 && committed + fileSize > quotaBytes) {
+                log.debug("超出存储配额，暂缓下载 {}: 需要 {} bytes，配额 {} bytes", uniqueId, committed + fileSize, quotaBytes);
+                reason = "超出存储配额";
+                return false;
+            }
+
+            synchronized (StorageAdmission.this) {
+                reservations.put(uniqueId, item);
+            }
+            available -= needed;
+            committed += fileSize;
+            return true;
+        }
+
+        @Override
+        public String getReason() {
+            return reason;
+        }
+
+        /**
+         * 磁盘可用空间已低于保留空间或已用满配额时，任何下载项都无法通过
+         */
+        @Override
+        public boolean isExhausted() {
+            return available <= 0 || (quotaBytes > 0 && committed >= quotaBytes);
+        }
+    }
+
+    private static long remaining(DownloadItem item) {
+        return Math.max(0, item.getFileSize() - item.getDownloadedSize());
+    }
+}
@@ -0,0 +1,110 @@
+package fun.zulin.tmd.telegram;
+
+import it.tdlight.client.SimpleTelegramClient;
+import it.tdlight.jni.TdApi;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一个已登录的 Telegram 账号会话
+ * 每个会话有独立的 TDLib 数据库目录，fileId 只在会话内有效
+ */
+public class TelegramSession {
+
+    private final int index;
+
+    private final String name;
+
+    private final SimpleTelegramClient client;
+
+    private volatile TdApi.User me;
+
+    private volatile boolean ready = false;
+
+    private final AtomicInteger activeDownloads = new AtomicInteger(0);
+
+    /**
+     * 聊天可见性缓存：true 可见，false 不可见或正在探测
+     */
+    private final Map<Long, Boolean> chatVisibility = new ConcurrentHashMap<>();
+
+    /**
+     * @param index  会话序号，主会话为0
+     * @param name   会话名称
+     * @param client TDLib 客户端
+     */
+    public TelegramSession(int index, String name, SimpleTelegramClient client) {
+        this.index = index;
+        this.name = name;
+        this.client = client;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public SimpleTelegramClient getClient() {
+        return client;
+    }
+
+    public boolean isPrimary() {
+        return index == SessionPool.PRIMARY;
+    }
+
+    public TdApi.User getMe() {
+        return me;
+    }
+
+    /**
+     * 登录完成后标记为可用
+     */
+    public void markReady(TdApi.User me) {
+        this.me = me;
+        this.ready = true;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 当前分配到该会话的下载数
+     */
+    public int getActiveDownloads() {
+        return activeDownloads.get();
+    }
+
+    void acquireDownload() {
+        activeDownloads.incrementAndGet();
+    }
+
+    void releaseDownload() {
+        activeDownloads.decrementAndGet();
+    }
+
+    /**
+     * @return 可见性，未知时为null
+     */
+    public Boolean canSee(long chatId) {
+        return chatVisibility.get(chatId);
+    }
+
+    /**
+     * 开始探测聊天可见性
+     *
+     * @return 是否需要探测（已探测过或正在探测时返回false）
+     */
+    boolean beginProbe(long chatId) {
+        return chatVisibility.putIfAbsent(chatId, false) == null;
+    }
+
+    void setVisible(long chatId, boolean visible) {
+        chatVisibility.put(chatId, visible);
+    }
+}
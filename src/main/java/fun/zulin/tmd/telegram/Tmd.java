@@ -3,6 +3,10 @@ package fun.zulin.tmd.telegram;
 
 import cn.hutool.core.convert.Convert;
 import cn.hutool.core.util.StrUtil;
+import fun.zulin.tmd.config.TmdProperties;
+import fun.zulin.tmd.data.watch.WatchRuleService;
+import fun.zulin.tmd.service.BatchJobRunner;
+import fun.zulin.tmd.service.ChatSyncService;
 import fun.zulin.tmd.telegram.handler.AuthorizationStateWaitOtherDeviceConfirmationHandler;
 import fun.zulin.tmd.telegram.handler.UpdateFileHandler;
 import fun.zulin.tmd.telegram.handler.UpdateNewMessageHandler;
@@ -23,6 +27,7 @@ import java.io.File;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
 
@@ -108,9 +113,18 @@ public class Tmd {
         settings.setDatabaseDirectoryPath(dataPath);
         settings.setDownloadedFilesDirectoryPath(downloadsPath);
         settings.setUseTestDatacenter(test);
+        applyTdlibOptions(settings);
 
         SimpleTelegramClientBuilder clientBuilder = clientFactory.builder(settings);
 
+        var telegramConfig = SpringContext.getBean(TmdProperties.class).getTelegram();
+        LinkResolver.configure(telegramConfig.getResolveCacheSize(), telegramConfig.getResolveCacheTtlMinutes());
+        try {
+            WatchRuleIndex.reload(SpringContext.getBean(WatchRuleService.class).listEnabled());
+        } catch (Exception e) {
+            log.error("加载监听规则失败", e);
+        }
+
 
         SimpleAuthenticationSupplier<?> authenticationData = AuthenticationSupplier.qrCode();
 
@@ -127,14 +141,25 @@ public class Tmd {
 
         clientBuilder.setClientInteraction(clientInteraction);
         client = clientBuilder.build(authenticationData);
+        applyTdlibOptions(client);
+        var primarySession = new TelegramSession(SessionPool.PRIMARY, "primary", client);
+        SessionPool.register(primarySession);
 
         var meAsync = client.getMeAsync();
         me = meAsync.get();
         if (me != null) {
+            primarySession.markReady(me);
             savedMessagesChat = client.send(new TdApi.CreatePrivateChat(me.id, true)).get(1, TimeUnit.MINUTES);
             //开始下载未完成任务
             DownloadManage.startDownloading();
+            //从断点继续未完成的批量下载任务
+            SpringContext.getBean(BatchJobRunner.class).resumeUnfinished();
+            //从水位补同步离线期间的新消息
+            SpringContext.getBean(ChatSyncService.class).startup();
         }
+
+        // 额外的下载会话各自等待二维码登录，不阻塞主会话
+        startExtraSessions(apiToken, downloadsPath, test);
         
         } catch (Exception e) {
             log.error("Telegram客户端初始化失败: {}", e.getMessage(), e);
@@ -143,6 +168,84 @@ public class Tmd {
         }
     }
 
+    /**
+     * 按配置开关 TDLib 数据库，影响内存和磁盘占用
+     */
+    private static void applyTdlibOptions(TDLibSettings settings) {
+        var tdlib = SpringContext.getBean(TmdProperties.class).getTdlib();
+        settings.setFileDatabaseEnabled(tdlib.isFileDatabaseEnabled());
+        settings.setChatInfoDatabaseEnabled(tdlib.isChatInfoDatabaseEnabled());
+        settings.setMessageDatabaseEnabled(tdlib.isMessageDatabaseEnabled());
+    }
+
+    /**
+     * 设置存储相关的 TDLib 运行时选项
+     */
+    private static void applyTdlibOptions(SimpleTelegramClient client) {
+        var tdlib = SpringContext.getBean(TmdProperties.class).getTdlib();
+        setOption(client, "use_storage_optimizer", tdlib.isStorageOptimizerEnabled());
+        setOption(client, "ignore_file_names", tdlib.isIgnoreFileNames());
+    }
+
+    private static void setOption(SimpleTelegramClient client, String name, boolean value) {
+        client.send(new TdApi.SetOption(name, new TdApi.OptionValueBoolean(value)), result -> {
+            if (result.isError()) {
+                log.warn("设置 TDLib 选项 {} 失败: {}", name, result.getError().message);
+            }
+        });
+    }
+
+    /**
+     * 启动配置中的额外下载会话
+     */
+    private void startExtraSessions(APIToken apiToken, Path downloadsPath, boolean test) {
+        List<String> names = SpringContext.getBean(TmdProperties.class).getTelegram().getExtraSessions();
+        for (int i = 0; i < names.size(); i++) {
+            int index = i + 1;
+            String name = names.get(i);
+            Thread thread = new Thread(() -> startExtraSession(index, name, apiToken, downloadsPath, test));
+            thread.setName("tdlib-session-" + name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * 启动一个额外的下载会话
+     * 使用独立的数据库目录和文件目录，只处理文件更新，不监听新消息
+     */
+    private void startExtraSession(int index, String name, APIToken apiToken, Path downloadsPath, boolean test) {
+        try {
+            TDLibSettings settings = TDLibSettings.create(apiToken);
+            settings.setDatabaseDirectoryPath(Path.of("data", "sessions", name));
+            settings.setDownloadedFilesDirectoryPath(downloadsPath.resolve("sessions").resolve(name));
+            settings.setUseTestDatacenter(test);
+            applyTdlibOptions(settings);
+
+            SimpleTelegramClientBuilder builder = clientFactory.builder(settings);
+            var interaction = new QrCodeClientInteraction("/topic/qrcode/" + name);
+            builder.addUpdateHandler(TdApi.UpdateFile.class, UpdateFileHandler.forSession(index));
+            builder.addUpdateHandler(TdApi.UpdateAuthorizationState.class,
+                    new AuthorizationStateWaitOtherDeviceConfirmationHandler(interaction));
+            builder.setClientInteraction(interaction);
+
+            SimpleTelegramClient sessionClient = builder.build(AuthenticationSupplier.qrCode());
+            applyTdlibOptions(sessionClient);
+            var session = new TelegramSession(index, name, sessionClient);
+            SessionPool.register(session);
+            log.info("Telegram会话 {} 已启动，等待登录", name);
+
+            TdApi.User sessionMe = sessionClient.getMeAsync().get();
+            if (sessionMe != null) {
+                session.markReady(sessionMe);
+                log.info("Telegram会话 {} 登录成功: {}", name, sessionMe.id);
+                SpringContext.getBean(SimpMessagingTemplate.class).convertAndSend("/topic/auth/" + name, "ok");
+            }
+        } catch (Exception e) {
+            log.error("Telegram会话 {} 初始化失败: {}", name, e.getMessage(), e);
+        }
+    }
+
     private void onUpdateAuthorizationState(TdApi.UpdateAuthorizationState update) {
         TdApi.AuthorizationState authorizationState = update.authorizationState;
         if (authorizationState instanceof TdApi.AuthorizationStateReady) {
@@ -0,0 +1,218 @@
+package fun.zulin.tmd.telegram;
+
+import fun.zulin.tmd.data.watch.WatchRule;
+import it.tdlight.jni.TdApi;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 频道监听规则索引
+ * 启用的规则预先编译（媒体类型转为标志位、正则表达式只编译一次），按聊天ID建立哈希索引。
+ * 每条新消息先按聊天ID查找一次，未监听的聊天不再做任何判断；规则变化时整体替换索引，匹配时不加锁
+ */
+@Slf4j
+public final class WatchRuleIndex {
+
+    public static final int VIDEO = 1;
+
+    public static final int DOCUMENT = 1 << 1;
+
+    public static final int PHOTO = 1 << 2;
+
+    private static final int ALL = VIDEO | DOCUMENT | PHOTO;
+
+    private static volatile Map<Long, Rule[]> index = Map.of();
+
+    private WatchRuleIndex() {
+    }
+
+    /**
+     * 规则判断需要的消息属性
+     */
+    public static final class Media {
+        private final int type;
+        private final int durationSeconds;
+        private final long size;
+        private final String caption;
+
+        public Media(int type, int durationSeconds, long size, String caption) {
+            this.type = type;
+            this.durationSeconds = durationSeconds;
+            this.size = size;
+            this.caption = caption;
+        }
+
+        /**
+         * 从消息内容中提取，不是视频、文档或图片时返回null
+         */
+        public static Media of(TdApi.MessageContent content) {
+            if (content instanceof TdApi.MessageVideo video) {
+                return new Media(VIDEO, video.video.duration, sizeOf(video.video.video), textOf(video.caption));
+            }
+            if (content instanceof TdApi.MessageDocument document) {
+                return new Media(DOCUMENT, 0, sizeOf(document.document.document), textOf(document.caption));
+            }
+            if (content instanceof TdApi.MessagePhoto photo && photo.photo.sizes.length > 0) {
+                TdApi.PhotoSize largest = photo.photo.sizes[photo.photo.sizes.length - 1];
+                return new Media(PHOTO, 0, sizeOf(largest.photo), textOf(photo.caption));
+            }
+            return null;
+        }
+
+        private static long sizeOf(TdApi.File file) {
+            return file.size > 0 ? file.size : file.expectedSize;
+        }
+
+        private static String textOf(TdApi.FormattedText text) {
+            return text != null && text.text != null ? text.text : "";
+        }
+    }
+
+    /**
+     * 编译后的规则
+     */
+    private static final class Rule {
+        private final long id;
+        private final int types;
+        private final int minDurationSeconds;
+        private final long minSize;
+        private final long maxSize;
+        private final Pattern caption;
+
+        private Rule(WatchRule rule) {
+            this.id = rule.getId() != null ? rule.getId() : 0;
+            this.types = parseTypes(rule.getMediaTypes());
+            this.minDurationSeconds = rule.getMinDurationSeconds() != null ? rule.getMinDurationSeconds() : 0;
+            this.minSize = rule.getMinSize() != null ? rule.getMinSize() : 0;
+            this.maxSize = rule.getMaxSize() != null && rule.getMaxSize() > 0 ? rule.getMaxSize() : Long.MAX_VALUE;
+            String regex = rule.getCaptionRegex();
+            this.caption = regex == null || regex.isBlank() ? null : Pattern.compile(regex);
+        }
+
+        private boolean matches(Media media) {
+            if ((types & media.type) == 0) {
+                return false;
+            }
+            if (media.type == VIDEO && media.durationSeconds < minDurationSeconds) {
+                return false;
+            }
+            // 大小未知时不按大小过滤
+            if (media.size > 0 && (media.size < minSize || media.size > maxSize)) {
+                return false;
+            }
+            return caption == null || caption.matcher(media.caption).find();
+        }
+    }
+
+    /**
+     * 用启用的规则重建索引
+     *
+     * @return 编译成功的规则数
+     */
+    public static int reload(List<WatchRule> rules) {
+        Map<Long, List<Rule>> grouped = new HashMap<>();
+        int count = 0;
+        for (WatchRule rule : rules) {
+            if (rule.getChatId() == null || Boolean.FALSE.equals(rule.getEnabled())) {
+                continue;
+            }
+            try {
+                Rule compiled = new Rule(rule);
+                grouped.computeIfAbsent(rule.getChatId(), k -> new ArrayList<>()).add(compiled);
+                count++;
+            } catch (IllegalArgumentException e) {
+                log.warn("监听规则 #{} 无效，已忽略: {}", rule.getId(), e.getMessage());
+            }
+        }
+        Map<Long, Rule[]> compiled = new HashMap<>(grouped.size() * 2);
+        grouped.forEach((chatId, list) -> compiled.put(chatId, list.toArray(new Rule[0])));
+        index = compiled;
+        log.info("监听规则索引已加载: {} 条规则, {} 个聊天", count, compiled.size());
+        return count;
+    }
+
+    /**
+     * 校验规则，规则无效时抛出 IllegalArgumentException
+     */
+    public static void validate(WatchRule rule) {
+        parseTypes(rule.getMediaTypes());
+        if (rule.getMinSize() != null && rule.getMaxSize() != null && rule.getMaxSize() > 0
+                && rule.getMinSize() > rule.getMaxSize()) {
+            throw new IllegalArgumentException("最小大小不能大于最大大小");
+        }
+        String regex = rule.getCaptionRegex();
+        if (regex != null && !regex.isBlank()) {
+            try {
+                Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("正则表达式无效: " + e.getDescription());
+            }
+        }
+    }
+
+    /**
+     * 判断新消息是否满足所在聊天的监听规则
+     *
+     * @return 满足的规则ID，聊天未监听或不满足任何规则时为null
+     */
+    public static Long match(long chatId, TdApi.MessageContent content) {
+        Rule[] rules = index.get(chatId);
+        if (rules == null) {
+            return null;
+        }
+        Media media = Media.of(content);
+        return media == null ? null : match(rules, media);
+    }
+
+    static Long match(long chatId, Media media) {
+        Rule[] rules = index.get(chatId);
+        return rules == null ? null : match(rules, media);
+    }
+
+    public static boolean isWatched(long chatId) {
+        return index.containsKey(chatId);
+    }
+
+    public static Set<Long> getWatchedChatIds() {
+        return Set.copyOf(index.keySet());
+    }
+
+    public static int getWatchedChatCount() {
+        return index.size();
+    }
+
+    private static Long match(Rule[] rules, Media media) {
+        for (Rule rule : rules) {
+            if (rule.matches(media)) {
+                return rule.id;
+            }
+        }
+        return null;
+    }
+
+    private static int parseTypes(String mediaTypes) {
+        if (mediaTypes == null || mediaTypes.isBlank()) {
+            return ALL;
+        }
+        int types = 0;
+        for (String type : mediaTypes.split(",")) {
+            switch (type.trim().toLowerCase(Locale.ROOT)) {
+                case "" -> {
+                }
+                case "video" -> types |= VIDEO;
+                case "document" -> types |= DOCUMENT;
+                case "photo" -> types |= PHOTO;
+                default -> throw new IllegalArgumentException("未知的媒体类型: " + type.trim());
+            }
+        }
+        return types == 0 ? ALL : types;
+    }
+}
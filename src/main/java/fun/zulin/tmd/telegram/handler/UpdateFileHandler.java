@@ -1,14 +1,24 @@
 package fun.zulin.tmd.telegram.handler;
 
 import fun.zulin.tmd.telegram.DownloadManage;
+import it.tdlight.client.GenericUpdateHandler;
 import it.tdlight.jni.TdApi;
 
 public class UpdateFileHandler {
 
     public static void accept(TdApi.UpdateFile update) {
 
-        DownloadManage.updateProgress(update.file.remote.uniqueId, update.file.local.downloadedSize);
+        DownloadManage.updateProgress(update.file.id, update.file.remote.uniqueId,
+                update.file.local.downloadedSize, update.file.local.path);
 
     }
 
+    /**
+     * 额外会话的文件更新处理，fileId 只在所属会话内有效
+     */
+    public static GenericUpdateHandler<TdApi.UpdateFile> forSession(int session) {
+        return update -> DownloadManage.updateProgress(session, update.file.id,
+                update.file.remote.uniqueId, update.file.local.downloadedSize, update.file.local.path);
+    }
+
 }
@@ -1,11 +1,12 @@
 package fun.zulin.tmd.telegram.handler;
 
 import fun.zulin.tmd.data.item.DownloadItem;
-import fun.zulin.tmd.data.item.DownloadItemServiceImpl;
 import fun.zulin.tmd.data.item.DownloadState;
-import fun.zulin.tmd.telegram.DownloadManage;
+import fun.zulin.tmd.telegram.ChatWatermarks;
+import fun.zulin.tmd.telegram.DownloadIngest;
+import fun.zulin.tmd.telegram.LinkResolver;
 import fun.zulin.tmd.telegram.Tmd;
-import fun.zulin.tmd.utils.SpringContext;
+import fun.zulin.tmd.telegram.WatchRuleIndex;
 import it.tdlight.jni.TdApi;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.logging.log4j.util.Strings;
@@ -18,12 +19,31 @@ import java.util.Objects;
 public class UpdateNewMessageHandler {
 
     public static void accept(TdApi.UpdateNewMessage update) {
+        TdApi.Message message = update.message;
+        // 未监听的聊天只需一次哈希查找
+        if (message.chatId != Tmd.savedMessagesChat.id && !WatchRuleIndex.isWatched(message.chatId)) {
+            return;
+        }
+        // 记录同步水位，下次启动时从这里补同步
+        ChatWatermarks.observe(message.chatId, message.id);
+        handle(message);
+    }
+
+    /**
+     * 处理 Saved Messages 或监听聊天中的消息，补同步获取到的消息也经由这里
+     */
+    public static void handle(TdApi.Message message) {
 
-        var messageContent = update.message.content;
-        final long messageId = update.message.id;
+        var messageContent = message.content;
+        final long messageId = message.id;
 
         TdApi.Chat savedMessagesChat = Tmd.savedMessagesChat;
-        if (update.message.chatId != savedMessagesChat.id) {
+        if (message.chatId != savedMessagesChat.id) {
+            Long ruleId = WatchRuleIndex.match(message.chatId, messageContent);
+            if (ruleId != null) {
+                log.info("监听规则 #{} 匹配聊天 {} 的消息 {}", ruleId, message.chatId, messageId);
+                enqueueWatchedMessage(messageId, messageContent, message.chatId);
+            }
             return;
         }
 
@@ -31,14 +51,12 @@ public class UpdateNewMessageHandler {
             // Get the text of the text message
             final String text = messageText.text.text;
             if (Strings.isNotBlank(text) && text.toLowerCase().startsWith("https://t.me")) {
-                Tmd.client.send(new TdApi.GetMessageLinkInfo(text), res -> {
-                    if (res != null && !res.isError()) {
-                        TdApi.MessageLinkInfo linkInfo = res.get();
-                        if (linkInfo != null && linkInfo.message != null &&
-                                linkInfo.message.content instanceof TdApi.MessageVideo video) {
+                LinkResolver.resolveLink(Tmd.client, text).whenComplete((resolved, error) -> {
+                    if (error == null && resolved != null) {
+                        if (resolved.getContent() instanceof TdApi.MessageVideo video) {
                             // 转发到Saved Messages的视频不进行时长限制
                             log.info("在saved messages中检测到视频链接: {}", text);
-                            processVideoMessage(messageId, video, linkInfo.chatId);
+                            enqueueVideoMessage(messageId, video, resolved.getChatId());
                         } else {
                             log.debug("链接指向的消息不是视频类型或无法解析");
                         }
@@ -50,20 +68,57 @@ public class UpdateNewMessageHandler {
         } else {
             if (messageContent instanceof TdApi.MessageVideo video) {
                 // 转发到Saved Messages的视频不进行时长限制
-                processVideoMessage(messageId, video, savedMessagesChat.id);
+                enqueueVideoMessage(messageId, video, savedMessagesChat.id);
             }
         }
 
     }
 
-    public static void processVideoMessage(long messageId, TdApi.MessageVideo video, long chatId) {
-        var service = SpringContext.getBean(DownloadItemServiceImpl.class);
-        var uniqueId = video.video.video.remote.uniqueId;
+    /**
+     * 处理视频消息：创建下载项并开始下载
+     *
+     * @return 下载项（已存在时返回已有记录，不会重复下载）
+     */
+    public static DownloadItem processVideoMessage(long messageId, TdApi.MessageVideo video, long chatId) {
+        var item = createVideoItem(messageId, video, chatId);
+        String originalFilename = video.video.fileName;
 
-        var item = service.getByUniqueId(uniqueId);
-        if (item != null) {
-            return;
+        // 保存时使用数据库ID作为文件名，并开始下载
+        var result = DownloadIngest.ingest(item, saved -> generateIdBasedFilename(saved, originalFilename));
+        if (!result.isCreated()) {
+            log.debug("视频已存在，跳过重复下载: {}", item.getUniqueId());
         }
+        return result.getItem();
+    }
+
+    /**
+     * 把监听聊天中匹配规则的消息放入入库队列
+     */
+    private static void enqueueWatchedMessage(long messageId, TdApi.MessageContent content, long chatId) {
+        if (content instanceof TdApi.MessageVideo video) {
+            enqueueVideoMessage(messageId, video, chatId);
+        } else if (content instanceof TdApi.MessageDocument document) {
+            documentMessage(messageId, document, chatId, true);
+        } else if (content instanceof TdApi.MessagePhoto photo) {
+            photoMessage(messageId, photo, chatId, true);
+        }
+    }
+
+    /**
+     * 把视频消息放入入库队列，在 TDLib 更新线程上不访问数据库
+     */
+    private static void enqueueVideoMessage(long messageId, TdApi.MessageVideo video, long chatId) {
+        var item = createVideoItem(messageId, video, chatId);
+        String originalFilename = video.video.fileName;
+        DownloadIngest.enqueue(item, saved -> generateIdBasedFilename(saved, originalFilename));
+    }
+
+    /**
+     * 根据视频消息构造待保存的下载项
+     */
+    private static DownloadItem createVideoItem(long messageId, TdApi.MessageVideo video, long chatId) {
+        var uniqueId = video.video.video.remote.uniqueId;
+
         // 获取原始文件名作为描述
         String originalFilename = video.video.fileName;
         String captionText = video.caption.text;
@@ -87,30 +142,157 @@ public class UpdateNewMessageHandler {
 
         // 不再处理Telegram缩略图，直接使用本地生成
 
-        // 先保存获取数据库ID
-        item = DownloadItem.builder()
+        return DownloadItem.builder()
                 .description(description)  // 原始描述，包含特殊字符
                 .filename("temp_placeholder") // 临时占位符
                 .caption(video.caption.text)
                 .createTime(LocalDateTime.now(ZoneId.of("Asia/Shanghai")))
                 .downloadedSize(0)
                 .fileId(video.video.video.id)
+                .remoteFileId(video.video.video.remote.id)
                 .fileSize(video.video.video.size)
                 .massageId(messageId)
                 .chatId(chatId)  // 保存chatId用于恢复下载
                 .uniqueId(uniqueId)
                 .state(DownloadState.Created.name())
                 .build();
-        service.save(item);
+    }
 
-        // 使用数据库ID作为文件名
-        String idBasedFilename = generateIdBasedFilename(item, originalFilename);
-        item.setFilename(idBasedFilename);
-        service.updateById(item);
-        //
-        DownloadManage.addDownloadingItems(item);
-        // 下载视频
-        DownloadManage.download(item);
+    /**
+     * 处理文档消息：创建下载项并开始下载
+     *
+     * @return 下载项（已存在时返回已有记录）
+     */
+    public static DownloadItem processDocumentMessage(long messageId, TdApi.MessageDocument document, long chatId) {
+        return documentMessage(messageId, document, chatId, false);
+    }
+
+    private static DownloadItem documentMessage(long messageId, TdApi.MessageDocument document, long chatId,
+                                                boolean queued) {
+        var uniqueId = document.document.document.remote.uniqueId;
+        String originalFilename = document.document.fileName;
+        String captionText = document.caption != null ? document.caption.text : null;
+
+        // 使用公共方法处理下载
+        return processDownloadItem(messageId, chatId, uniqueId, originalFilename, captionText,
+                document.document.document, "Document", "开始下载文档: {}", queued);
+    }
+
+    /**
+     * 处理图片消息：下载最大尺寸的图片
+     *
+     * @return 下载项（已存在时返回已有记录），没有可用尺寸时返回null
+     */
+    public static DownloadItem processPhotoMessage(long messageId, TdApi.MessagePhoto photo, long chatId) {
+        return photoMessage(messageId, photo, chatId, false);
+    }
+
+    private static DownloadItem photoMessage(long messageId, TdApi.MessagePhoto photo, long chatId, boolean queued) {
+        // 获取最大的图片尺寸
+        TdApi.PhotoSize largestSize = findLargestPhotoSize(photo.photo.sizes);
+
+        if (largestSize == null) {
+            log.warn("图片消息 {} 没有可用的尺寸", messageId);
+            return null;
+        }
+
+        var uniqueId = largestSize.photo.remote.uniqueId;
+        String captionText = photo.caption != null ? photo.caption.text : null;
+
+        // 使用公共方法处理下载
+        return processDownloadItem(messageId, chatId, uniqueId, "photo.jpg", captionText,
+                largestSize.photo, "Photo", "开始下载图片: {}", queued);
+    }
+
+    /**
+     * 查找最大的图片尺寸
+     */
+    private static TdApi.PhotoSize findLargestPhotoSize(TdApi.PhotoSize[] sizes) {
+        if (sizes == null || sizes.length == 0) {
+            return null;
+        }
+        TdApi.PhotoSize largest = null;
+        for (TdApi.PhotoSize size : sizes) {
+            if (largest == null || size.photo.size > largest.photo.size) {
+                largest = size;
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * 公共下载处理方法
+     * 统一处理文档、图片等下载项的创建、保存和下载流程
+     *
+     * @param queued 是否放入入库队列异步保存（在 TDLib 更新线程上调用时）
+     * @return 下载项（已存在时返回已有记录），异步保存时返回null
+     */
+    private static DownloadItem processDownloadItem(long messageId, long chatId, String uniqueId,
+                                             String originalFilename, String captionText,
+                                             TdApi.File file, String fileType, String startLogMessage,
+                                             boolean queued) {
+        // 构造描述
+        String description = buildDescription(captionText, originalFilename, fileType);
+
+        DownloadItem item = DownloadItem.builder()
+                .description(description)
+                .filename("temp_placeholder")
+                .caption(captionText)
+                .createTime(LocalDateTime.now(ZoneId.of("Asia/Shanghai")))
+                .downloadedSize(0)
+                .fileId(file.id)
+                .remoteFileId(file.remote.id)
+                .fileSize(file.size)
+                .massageId(messageId)
+                .chatId(chatId)  // 保存来源消息用于恢复下载
+                .uniqueId(uniqueId)
+                .state(DownloadState.Created.name())
+                .build();
+
+        // 保存时使用数据库ID作为文件名并开始下载，已存在时复用现有下载
+        String extension = getFileExtension(originalFilename);
+        if (queued) {
+            DownloadIngest.enqueue(item, saved -> saved.getId() + extension);
+            return null;
+        }
+        var result = DownloadIngest.ingest(item, saved -> saved.getId() + extension);
+        if (result.isCreated()) {
+            log.info(startLogMessage, result.getItem().getFilename());
+        } else {
+            log.info("{} {} 已存在，等待现有下载完成", fileType, originalFilename);
+        }
+        return result.getItem();
+    }
+
+    /**
+     * 构造文件描述
+     */
+    private static String buildDescription(String captionText, String filename, String defaultName) {
+        StringBuilder desc = new StringBuilder();
+        if (captionText != null && !captionText.trim().isEmpty()) {
+            desc.append(captionText.trim());
+        }
+        if (filename != null && !filename.trim().isEmpty() && !filename.equals("photo.jpg")) {
+            if (desc.length() > 0) {
+                desc.append(" - ");
+            }
+            desc.append(filename.trim());
+        }
+        if (desc.length() == 0) {
+            desc.append("Unnamed ").append(defaultName);
+        }
+        return desc.toString();
+    }
+
+    /**
+     * 获取文件扩展名
+     */
+    private static String getFileExtension(String filename) {
+        if (filename == null || filename.trim().isEmpty()) {
+            return ".jpg";
+        }
+        int lastDot = filename.lastIndexOf('.');
+        return lastDot > 0 ? filename.substring(lastDot) : ".jpg";
     }
 
     /**
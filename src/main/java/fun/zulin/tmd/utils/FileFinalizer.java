@@ -0,0 +1,156 @@
+package fun.zulin.tmd.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * 下载文件落盘工具
+ * 同一文件系统内直接原子重命名，不读取文件内容（SHA-256 由调用方在之后的阶段计算）；
+ * 跨文件系统时复制到目标旁的临时文件，复制过程中同时计算 SHA-256，fsync 后再原子重命名为目标文件，
+ * 任何时刻目标路径上要么是旧文件要么是完整的新文件
+ */
+@Slf4j
+public class FileFinalizer {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final String TEMP_SUFFIX = ".part";
+
+    /**
+     * 把文件移动到目标位置
+     * 原子重命名时不计算 SHA-256（结果中为null），只有复制时顺带计算
+     *
+     * @param source 源文件（TDLib 下载目录中的文件）
+     * @param target 目标文件，已存在时被替换
+     * @return 落盘结果
+     */
+    public static Result moveInto(Path source, Path target) throws IOException {
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return new Result(null, false);
+        } catch (AtomicMoveNotSupportedException e) {
+            log.info("源文件与目标不在同一文件系统，改为复制: {} -> {}", source, target);
+        }
+        Result result = copyInto(source, target);
+        Files.delete(source);
+        return result;
+    }
+
+    /**
+     * 复制文件到目标位置（不删除源文件）
+     * 单次读取同时写入临时文件和计算 SHA-256，校验长度并 fsync 后原子重命名
+     *
+     * @return 落盘结果
+     */
+    public static Result copyInto(Path source, Path target) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path temp = dir.resolve(target.getFileName() + TEMP_SUFFIX);
+        MessageDigest digest = newDigest();
+
+        try {
+            long copied = 0;
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                long expected = in.size();
+                ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                while (in.read(buffer) >= 0) {
+                    buffer.flip();
+                    digest.update(buffer.duplicate());
+                    while (buffer.hasRemaining()) {
+                        copied += out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                if (copied != expected) {
+                    throw new IOException("复制长度不一致: 期望 " + expected + " bytes，实际 " + copied + " bytes");
+                }
+                out.force(true);
+            }
+
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            syncDirectory(dir);
+            return new Result(HexFormat.of().formatHex(digest.digest()), true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * 计算文件的 SHA-256（十六进制小写）
+     */
+    public static String sha256(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    /**
+     * 同步目录，确保重命名本身落盘（部分平台不支持，忽略失败）
+     */
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("同步目录失败: {}", dir, e);
+        }
+    }
+
+    /**
+     * 落盘结果
+     */
+    public static final class Result {
+
+        private final String sha256;
+
+        private final boolean copied;
+
+        private Result(String sha256, boolean copied) {
+            this.sha256 = sha256;
+            this.copied = copied;
+        }
+
+        /**
+         * 复制时计算的 SHA-256，原子重命名时为null
+         */
+        public String getSha256() {
+            return sha256;
+        }
+
+        /**
+         * 是否经过跨文件系统复制（false 表示原子重命名）
+         */
+        public boolean isCopied() {
+            return copied;
+        }
+    }
+}
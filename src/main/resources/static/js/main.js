@@ -638,6 +638,17 @@ class TelegramMediaDownloader {
         return `${speed.toFixed(1)} ${units[unitIndex]}`;
     }
 
+    formatEta(seconds) {
+        if (seconds == null || seconds < 0) return '--:--';
+
+        const h = Math.floor(seconds / 3600);
+        const m = Math.floor((seconds % 3600) / 60);
+        const s = seconds % 60;
+        const pad = n => String(n).padStart(2, '0');
+
+        return h > 0 ? `${h}:${pad(m)}:${pad(s)}` : `${pad(m)}:${pad(s)}`;
+    }
+
     renderDownloads() {
 
         if (this.downloadingItems.length === 0) {
@@ -657,22 +668,24 @@ class TelegramMediaDownloader {
     filterItems(items, filter) {
         // 只显示下载中的项目
         return items.filter(item => 
-            item.state === 'Downloading' || item.state === 'Created'
+            item.state === 'Downloading' || item.state === 'Created' || item.state === 'Pause'
         );
     }
 
     createDownloadItemElement(item) {
         const isCompleted = item.state === 'Complete';
+        const isPaused = item.state === 'Pause';
         const progress = item.progress || 0;
         const fileSize = this.formatFileSize(item.fileSize || 0);
         const downloadedSize = this.formatFileSize(item.downloadedSize || 0);
         const speed = this.formatSpeed(item.downloadBytePerSec || 0);
+        const eta = this.formatEta(item.etaSeconds);
         
         // 判断是否为视频文件（根据文件扩展名）
         const isVideo = isCompleted && this.isVideoFile(item.filename);
         
-        // 下载完成时不显示速度
-        const showSpeed = !isCompleted;
+        // 下载完成或暂停时不显示速度
+        const showSpeed = !isCompleted && !isPaused;
         
         return `
             <div class="download-item ${isCompleted ? 'completed' : ''}" data-unique-id="${item.uniqueId}">
@@ -689,14 +702,29 @@ class TelegramMediaDownloader {
                             <i class="fas fa-tachometer-alt"></i>
                             ${speed}
                         </div>
+                        <div class="download-eta" title="预计剩余时间">
+                            <i class="fas fa-clock"></i>
+                            ${eta}
+                        </div>
+                        ` : ''}
+                        ${item.blockedReason ? `
+                        <div class="download-blocked" title="空间释放后自动开始下载">
+                            <i class="fas fa-exclamation-triangle"></i>
+                            排队中：${this.escapeHtml(item.blockedReason)}
+                        </div>
                         ` : ''}
                         <!-- 下载操作按钮 -->
                         <div class="download-actions">
-                            ${!isCompleted ? `
+                            ${!isCompleted && !isPaused ? `
                             <button class="action-btn" onclick="app.pauseDownload('${item.uniqueId}')" title="暂停">
                                 <i class="fas fa-pause"></i>
                             </button>
                             ` : ''}
+                            ${isPaused ? `
+                            <button class="action-btn" onclick="app.resumeDownload('${item.uniqueId}')" title="继续">
+                                <i class="fas fa-play"></i>
+                            </button>
+                            ` : ''}
                             <button class="action-btn delete" onclick="app.deleteDownload('${item.uniqueId}')" title="删除">
                                 <i class="fas fa-trash"></i>
                             </button>
@@ -931,10 +959,10 @@ class TelegramMediaDownloader {
         // 确保参数是数组
         if (!Array.isArray(downloadingItems)) downloadingItems = [];
         
-        // 考虑所有关键字段：uniqueId, state, progress, fileSize, downloadedSize
+        // 考虑所有关键字段：uniqueId, state, progress, fileSize, downloadedSize, blockedReason
         const keyFields = (items) => 
             items.map(item => 
-                `${item.uniqueId}|${item.state}|${Math.floor(item.progress || 0)}|${item.fileSize}|${item.downloadedSize}`
+                `${item.uniqueId}|${item.state}|${Math.floor(item.progress || 0)}|${item.fileSize}|${item.downloadedSize}|${item.blockedReason || ''}`
             ).sort().join(';;');
         
         return keyFields(downloadingItems);
@@ -1001,6 +1029,22 @@ class TelegramMediaDownloader {
         }
     }
 
+    async resumeDownload(uniqueId) {
+        try {
+            const response = await fetch(`/api/downloads/${uniqueId}/resume`, {
+                method: 'POST'
+            });
+            
+            if (response.ok) {
+                console.log('下载已继续');
+            } else {
+                throw new Error('继续失败');
+            }
+        } catch (error) {
+            console.error('继续失败: ' + error.message);
+        }
+    }
+
     async deleteDownload(uniqueId) {
         if (!confirm('确定要删除这个下载任务吗？')) {
             return;
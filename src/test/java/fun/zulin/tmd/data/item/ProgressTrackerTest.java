@@ -0,0 +1,57 @@
+package fun.zulin.tmd.data.item;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProgressTrackerTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void testSteadySpeedAndEta() {
+        ProgressTracker tracker = new ProgressTracker();
+        assertFalse(tracker.isActive());
+        assertEquals(0, tracker.getBytesPerSec(0));
+
+        long now = 10 * SECOND;
+        tracker.update(0, now);
+        for (int i = 1; i <= 10; i++) {
+            tracker.update(i * 1_000_000L, now + i * SECOND);
+        }
+        long end = now + 10 * SECOND;
+
+        assertEquals(1_000_000L, tracker.getBytesPerSec(end));
+        assertEquals(1_000_000L, tracker.getAverageBytesPerSec());
+        assertEquals(5, tracker.getEtaSeconds(5_000_000L, end));
+        assertEquals(0, tracker.getEtaSeconds(0, end));
+    }
+
+    @Test
+    void testEwmaSmoothsBurst() {
+        ProgressTracker tracker = new ProgressTracker();
+        tracker.update(0, 0);
+        tracker.update(1_000_000L, SECOND);
+        // 单次突发只部分影响平滑后的速度
+        tracker.update(11_000_000L, 2 * SECOND);
+
+        long speed = tracker.getBytesPerSec(2 * SECOND);
+        assertTrue(speed > 1_000_000L && speed < 10_000_000L, "speed=" + speed);
+    }
+
+    @Test
+    void testDenseUpdatesIgnoredAndStaleSpeedDropsToZero() {
+        ProgressTracker tracker = new ProgressTracker();
+        tracker.update(0, 0);
+        tracker.update(1_000_000L, SECOND);
+        // 间隔过短的更新不参与速度计算
+        tracker.update(50_000_000L, SECOND + 1_000_000L);
+        assertEquals(1_000_000L, tracker.getBytesPerSec(SECOND + 1_000_000L));
+
+        assertEquals(0, tracker.getBytesPerSec(SECOND + ProgressTracker.STALE_NANOS + 1));
+        assertEquals(-1, tracker.getEtaSeconds(1_000L, SECOND + ProgressTracker.STALE_NANOS + 1));
+
+        tracker.reset();
+        assertFalse(tracker.isActive());
+    }
+}
@@ -0,0 +1,48 @@
+package fun.zulin.tmd.telegram;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyTest {
+
+    @Test
+    void testAdditiveIncreaseWhileThroughputGrows() {
+        AdaptiveConcurrency adaptive = new AdaptiveConcurrency(1, 8, 0.05);
+
+        assertEquals(4, adaptive.next(3, 3_000_000, 0, true));
+        assertEquals(5, adaptive.next(4, 4_000_000, 0, true));
+        assertEquals(6, adaptive.next(5, 5_000_000, 0, true));
+    }
+
+    @Test
+    void testRevertWhenIncreaseDoesNotHelp() {
+        AdaptiveConcurrency adaptive = new AdaptiveConcurrency(1, 8, 0.05);
+
+        assertEquals(4, adaptive.next(3, 3_000_000, 0, true));
+        // 增加并发后速度没有提升，回退并暂停探测
+        assertEquals(3, adaptive.next(4, 3_050_000, 0, true));
+        for (int i = 0; i < AdaptiveConcurrency.HOLD_TICKS; i++) {
+            assertEquals(3, adaptive.next(3, 3_000_000, 0, true));
+        }
+        assertEquals(4, adaptive.next(3, 3_000_000, 0, true));
+    }
+
+    @Test
+    void testMultiplicativeDecreaseOnErrors() {
+        AdaptiveConcurrency adaptive = new AdaptiveConcurrency(2, 8, 0.05);
+
+        assertEquals(4, adaptive.next(8, 1_000_000, 3, true));
+        assertEquals(2, adaptive.next(4, 1_000_000, 1, true));
+        assertEquals(2, adaptive.next(2, 1_000_000, 1, true));
+    }
+
+    @Test
+    void testNoProbeWhenNotSaturatedOrAtMax() {
+        AdaptiveConcurrency adaptive = new AdaptiveConcurrency(1, 4, 0.05);
+
+        assertEquals(3, adaptive.next(3, 3_000_000, 0, false));
+        assertEquals(4, adaptive.next(4, 4_000_000, 0, true));
+        assertEquals(4, adaptive.next(4, 4_000_000, 0, true));
+    }
+}
@@ -0,0 +1,60 @@
+package fun.zulin.tmd.telegram;
+
+import fun.zulin.tmd.config.TmdProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BandwidthGovernorTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void testUnlimitedNeverWaits() {
+        BandwidthGovernor governor = new BandwidthGovernor(0, 0);
+        assertFalse(governor.isLimited());
+        assertEquals(0, governor.acquire(Long.MAX_VALUE / 2, 0));
+    }
+
+    @Test
+    void testDebtTurnsIntoDelay() {
+        BandwidthGovernor governor = new BandwidthGovernor(1_000_000, 0);
+
+        // 桶中有1秒的令牌
+        assertEquals(0, governor.acquire(1_000_000, 0));
+        // 透支2MB需要等待2秒
+        assertEquals(2 * SECOND, governor.acquire(2_000_000, 0));
+        // 3秒后令牌恢复到1MB
+        assertEquals(0, governor.acquire(1_000_000, 3 * SECOND));
+    }
+
+    @Test
+    void testLimitChangeCapsTokens() {
+        BandwidthGovernor governor = new BandwidthGovernor(10_000_000, 0);
+        governor.setLimit(1_000_000, 0);
+        assertEquals(SECOND, governor.acquire(2_000_000, 0));
+
+        governor.setLimit(0, 0);
+        assertEquals(0, governor.acquire(100_000_000, 0));
+    }
+
+    @Test
+    void testScheduleMatchesRulesAcrossMidnight() {
+        TmdProperties.BandwidthConfig config = new TmdProperties.BandwidthConfig();
+        config.setLimit("5MB");
+        TmdProperties.BandwidthRule night = new TmdProperties.BandwidthRule();
+        night.setStart("23:00");
+        night.setEnd("07:00");
+        night.setLimit("0");
+        config.setSchedules(List.of(night));
+
+        BandwidthSchedule schedule = BandwidthSchedule.from(config);
+        assertEquals(0, schedule.limitAt(LocalTime.of(1, 0)));
+        assertEquals(0, schedule.limitAt(LocalTime.of(23, 30)));
+        assertEquals(5L * 1024 * 1024, schedule.limitAt(LocalTime.of(7, 0)));
+        assertEquals(5L * 1024 * 1024, schedule.limitAt(LocalTime.of(12, 0)));
+    }
+}
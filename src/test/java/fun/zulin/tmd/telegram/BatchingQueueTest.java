@@ -0,0 +1,98 @@
+package fun.zulin.tmd.telegram;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchingQueueTest {
+
+    @Test
+    void testElementsCollectedIntoOneBatchAndDeduped() throws Exception {
+        List<List<String>> batches = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        BatchingQueue<String> queue = new BatchingQueue<>("test", 16, 10, 200,
+                Function.identity(), batch -> {
+                    batches.add(batch);
+                    release.countDown();
+                });
+        queue.start();
+
+        assertTrue(queue.offer("a"));
+        assertTrue(queue.offer("b"));
+        assertTrue(queue.offer("a"));
+        assertTrue(queue.offer("c"));
+        assertTrue(release.await(5, TimeUnit.SECONDS));
+        assertTrue(queue.shutdown(5, TimeUnit.SECONDS));
+
+        assertEquals(List.of(List.of("a", "b", "c")), batches);
+    }
+
+    @Test
+    void testBatchSizeLimit() throws Exception {
+        List<Integer> sizes = new CopyOnWriteArrayList<>();
+        BatchingQueue<Integer> queue = new BatchingQueue<>("test", 16, 3, 200,
+                String::valueOf, batch -> sizes.add(batch.size()));
+        queue.start();
+
+        for (int i = 0; i < 7; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertTrue(queue.shutdown(5, TimeUnit.SECONDS));
+
+        assertEquals(7, sizes.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(sizes.stream().allMatch(size -> size <= 3));
+    }
+
+    @Test
+    void testOfferRejectedWhenFullOrNotStarted() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BatchingQueue<String> queue = new BatchingQueue<>("test", 1, 1, 0,
+                Function.identity(), batch -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+        assertFalse(queue.offer("x"), "未启动时不接收");
+        queue.start();
+
+        assertTrue(queue.offer("a"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        // 等待 a 被取出处理，队列空出
+        while (!queue.offer("b") && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(queue.offer("c"), "队列满时立即返回false");
+        assertEquals(2, queue.getBacklog());
+
+        release.countDown();
+        assertTrue(queue.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(0, queue.getBacklog());
+    }
+
+    @Test
+    void testFailedBatchDoesNotStopQueue() throws Exception {
+        List<String> processed = new CopyOnWriteArrayList<>();
+        BatchingQueue<String> queue = new BatchingQueue<>("test", 4, 1, 0,
+                Function.identity(), batch -> {
+                    if (batch.contains("boom")) {
+                        throw new IllegalStateException("boom");
+                    }
+                    processed.addAll(batch);
+                });
+        queue.start();
+
+        queue.offer("boom");
+        queue.offer("ok");
+        assertTrue(queue.shutdown(5, TimeUnit.SECONDS));
+
+        assertEquals(List.of("ok"), processed);
+    }
+}
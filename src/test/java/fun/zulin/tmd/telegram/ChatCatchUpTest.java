@@ -0,0 +1,236 @@
+package fun.zulin.tmd.telegram;
+
+import it.tdlight.jni.TdApi;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatCatchUpTest {
+
+    private static TdApi.Message message(long serverId) {
+        TdApi.Message message = new TdApi.Message();
+        message.id = ChatHistoryCrawler.toMessageId(serverId);
+        return message;
+    }
+
+    /**
+     * 模拟 GetChatHistory：从新到旧返回起始消息之后的 -offset 条消息、起始消息本身及更早的消息
+     */
+    private static ChatCatchUp.Pager history(long[] serverIds, List<Long> requests) {
+        return (fromMessageId, offset, limit) -> {
+            requests.add(fromMessageId);
+            List<TdApi.Message> page = new ArrayList<>();
+            if (fromMessageId == 0) {
+                for (int i = serverIds.length - 1; i >= 0 && page.size() < limit; i--) {
+                    page.add(message(serverIds[i]));
+                }
+            } else {
+                List<TdApi.Message> newer = new ArrayList<>();
+                for (long serverId : serverIds) {
+                    if (ChatHistoryCrawler.toMessageId(serverId) > fromMessageId && newer.size() < -offset) {
+                        newer.add(message(serverId));
+                    }
+                }
+                for (int i = newer.size() - 1; i >= 0; i--) {
+                    page.add(newer.get(i));
+                }
+                for (int i = serverIds.length - 1; i >= 0 && page.size() < limit; i--) {
+                    if (ChatHistoryCrawler.toMessageId(serverIds[i]) <= fromMessageId) {
+                        page.add(message(serverIds[i]));
+                    }
+                }
+            }
+            TdApi.Messages messages = new TdApi.Messages();
+            messages.messages = page.toArray(new TdApi.Message[0]);
+            messages.totalCount = messages.messages.length;
+            return messages;
+        };
+    }
+
+    @Test
+    void testDeliversOnlyMessagesAfterWatermarkInOrder() throws Exception {
+        long[] ids = {1, 2, 5, 8, 9, 12};
+        List<Long> delivered = new ArrayList<>();
+        List<Long> checkpoints = new ArrayList<>();
+        ChatCatchUp catchUp = new ChatCatchUp(history(ids, new ArrayList<>()), 0);
+
+        long last = catchUp.catchUp(ChatHistoryCrawler.toMessageId(5),
+                m -> delivered.add(ChatHistoryCrawler.toServerId(m.id)),
+                id -> checkpoints.add(ChatHistoryCrawler.toServerId(id)), () -> false);
+
+        assertEquals(List.of(8L, 9L, 12L), delivered);
+        assertEquals(List.of(12L), checkpoints);
+        assertEquals(ChatHistoryCrawler.toMessageId(12), last);
+        assertEquals(3, catchUp.getDeliveredCount());
+        assertEquals(2, catchUp.getRequestCount());
+    }
+
+    @Test
+    void testPagesForwardProportionallyToNewMessages() throws Exception {
+        long[] ids = LongStream.rangeClosed(1, 10000).toArray();
+        List<Long> requests = new ArrayList<>();
+        List<Long> delivered = new ArrayList<>();
+        ChatCatchUp catchUp = new ChatCatchUp(history(ids, requests), 0);
+
+        long last = catchUp.catchUp(ChatHistoryCrawler.toMessageId(9750),
+                m -> delivered.add(ChatHistoryCrawler.toServerId(m.id)), id -> {
+                }, () -> false);
+
+        assertEquals(250, delivered.size());
+        assertEquals(9751L, delivered.get(0));
+        assertEquals(10000L, delivered.get(249));
+        assertEquals(ChatHistoryCrawler.toMessageId(10000), last);
+        assertTrue(catchUp.isComplete());
+        // 1次获取最新消息 + 每页99条新消息共3页
+        assertEquals(4, requests.size());
+    }
+
+    @Test
+    void testWatermarkAtLatestMessageMakesSingleRequest() throws Exception {
+        long[] ids = {1, 2, 3};
+        List<Long> delivered = new ArrayList<>();
+        ChatCatchUp catchUp = new ChatCatchUp(history(ids, new ArrayList<>()), 0);
+
+        long last = catchUp.catchUp(ChatHistoryCrawler.toMessageId(3), m -> delivered.add(m.id), id -> {
+        }, () -> false);
+
+        assertTrue(delivered.isEmpty());
+        assertEquals(ChatHistoryCrawler.toMessageId(3), last);
+        assertEquals(1, catchUp.getRequestCount());
+    }
+
+    @Test
+    void testDeletedWatermarkMessage() throws Exception {
+        long[] ids = {1, 2, 7, 8};
+        List<Long> delivered = new ArrayList<>();
+        ChatCatchUp catchUp = new ChatCatchUp(history(ids, new ArrayList<>()), 0);
+
+        catchUp.catchUp(ChatHistoryCrawler.toMessageId(5),
+                m -> delivered.add(ChatHistoryCrawler.toServerId(m.id)), id -> {
+                }, () -> false);
+
+        assertEquals(List.of(7L, 8L), delivered);
+    }
+
+    @Test
+    void testStopKeepsCheckpoint() throws Exception {
+        long[] ids = LongStream.rangeClosed(1, 500).toArray();
+        List<Long> checkpoints = new ArrayList<>();
+        ChatCatchUp catchUp = new ChatCatchUp(history(ids, new ArrayList<>()), 0);
+
+        long last = catchUp.catchUp(ChatHistoryCrawler.toMessageId(1), m -> {
+        }, checkpoints::add, () -> !checkpoints.isEmpty());
+
+        assertEquals(List.of(ChatHistoryCrawler.toMessageId(100)), checkpoints);
+        assertEquals(ChatHistoryCrawler.toMessageId(100), last);
+        assertFalse(catchUp.isComplete());
+
+        ChatCatchUp resumed = new ChatCatchUp(history(ids, new ArrayList<>()), 0);
+        List<Long> delivered = new ArrayList<>();
+        resumed.catchUp(last, m -> delivered.add(ChatHistoryCrawler.toServerId(m.id)), id -> {
+        }, () -> false);
+        assertEquals(400, delivered.size());
+        assertEquals(101L, delivered.get(0));
+    }
+
+    /**
+     * 向后分页时前 stuckRequests 次只返回起始消息本身，模拟 TDLib 本地缓存不完整
+     */
+    private static ChatCatchUp.Pager stuckForward(ChatCatchUp.Pager pager, int stuckRequests) {
+        int[] stuck = {0};
+        return (fromMessageId, offset, limit) -> {
+            if (fromMessageId != 0 && offset < 0 && stuck[0] < stuckRequests) {
+                stuck[0]++;
+                TdApi.Messages messages = new TdApi.Messages();
+                messages.messages = new TdApi.Message[]{message(ChatHistoryCrawler.toServerId(fromMessageId))};
+                messages.totalCount = 1;
+                return messages;
+            }
+            return pager.history(fromMessageId, offset, limit);
+        };
+    }
+
+    @Test
+    void testPageWithOnlyCursorMessageIsRetried() throws Exception {
+        long[] ids = LongStream.rangeClosed(1, 300).toArray();
+        List<Long> delivered = new ArrayList<>();
+        ChatCatchUp catchUp = new ChatCatchUp(stuckForward(history(ids, new ArrayList<>()), 1), 0);
+
+        long last = catchUp.catchUp(ChatHistoryCrawler.toMessageId(50),
+                m -> delivered.add(ChatHistoryCrawler.toServerId(m.id)), id -> {
+                }, () -> false);
+
+        assertEquals(LongStream.rangeClosed(51, 300).boxed().toList(), delivered);
+        assertEquals(ChatHistoryCrawler.toMessageId(300), last);
+        assertTrue(catchUp.isComplete());
+        // 1次获取最新消息 + 1次只返回起始消息 + 3页
+        assertEquals(5, catchUp.getRequestCount());
+    }
+
+    @Test
+    void testFallsBackToBackwardScanWhenForwardPagingIsStuck() throws Exception {
+        long[] ids = LongStream.rangeClosed(1, 300).toArray();
+        List<Long> delivered = new ArrayList<>();
+        List<Long> checkpoints = new ArrayList<>();
+        ChatCatchUp catchUp = new ChatCatchUp(stuckForward(history(ids, new ArrayList<>()), Integer.MAX_VALUE), 0);
+
+        long last = catchUp.catchUp(ChatHistoryCrawler.toMessageId(50),
+                m -> delivered.add(ChatHistoryCrawler.toServerId(m.id)),
+                id -> checkpoints.add(ChatHistoryCrawler.toServerId(id)), () -> false);
+
+        assertEquals(LongStream.rangeClosed(51, 300).boxed().toList(), delivered);
+        assertEquals(List.of(300L), checkpoints);
+        assertEquals(ChatHistoryCrawler.toMessageId(300), last);
+        assertTrue(catchUp.isComplete());
+    }
+
+    @Test
+    void testEmptyHistoryAfterStuckPagingIsIncomplete() throws Exception {
+        long[] ids = {1, 2, 3};
+        int[] calls = {0};
+        ChatCatchUp.Pager history = history(ids, new ArrayList<>());
+        // 只有获取最新消息的请求成功，之后都返回空页
+        ChatCatchUp catchUp = new ChatCatchUp((fromMessageId, offset, limit) -> {
+            if (calls[0]++ == 0) {
+                return history.history(fromMessageId, offset, limit);
+            }
+            TdApi.Messages messages = new TdApi.Messages();
+            messages.messages = new TdApi.Message[0];
+            return messages;
+        }, 0);
+        List<Long> checkpoints = new ArrayList<>();
+
+        long last = catchUp.catchUp(ChatHistoryCrawler.toMessageId(1), m -> {
+        }, checkpoints::add, () -> false);
+
+        assertEquals(ChatHistoryCrawler.toMessageId(1), last);
+        assertTrue(checkpoints.isEmpty());
+        assertFalse(catchUp.isComplete());
+    }
+
+    @Test
+    void testLatestMessageId() throws Exception {
+        ChatCatchUp catchUp = new ChatCatchUp(history(new long[]{3, 4, 9}, new ArrayList<>()), 0);
+        assertEquals(ChatHistoryCrawler.toMessageId(9), catchUp.latestMessageId());
+
+        ChatCatchUp empty = new ChatCatchUp(history(new long[0], new ArrayList<>()), 0);
+        assertEquals(0, empty.latestMessageId());
+    }
+
+    @Test
+    void testLiveWatermarksSkipUnsyncedChats() {
+        ChatWatermarks.observe(1L, 10L);
+        ChatWatermarks.observe(1L, 5L);
+        ChatWatermarks.observe(2L, 20L);
+
+        assertEquals(Map.of(1L, 10L), ChatWatermarks.drain(Set.of(2L)));
+        assertEquals(Map.of(2L, 20L), ChatWatermarks.drain(Set.of()));
+        assertTrue(ChatWatermarks.drain(Set.of()).isEmpty());
+    }
+}
@@ -0,0 +1,160 @@
+package fun.zulin.tmd.telegram;
+
+import it.tdlight.jni.TdApi;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatHistoryCrawlerTest {
+
+    private static final TdApi.SearchMessagesFilter VIDEO = new TdApi.SearchMessagesFilterPhotoAndVideo();
+
+    private static final TdApi.SearchMessagesFilter DOCUMENT = new TdApi.SearchMessagesFilterDocument();
+
+    private static TdApi.Message message(long serverId) {
+        TdApi.Message message = new TdApi.Message();
+        message.id = ChatHistoryCrawler.toMessageId(serverId);
+        return message;
+    }
+
+    /**
+     * 模拟 TDLib 搜索：返回 ID 小于 from 的消息，从新到旧
+     */
+    private static ChatHistoryCrawler.Pager history(List<Long> videoIds, List<Long> documentIds, List<Long> calls) {
+        return (filter, fromMessageId, limit) -> {
+            calls.add(fromMessageId);
+            List<Long> ids = filter == VIDEO ? videoIds : documentIds;
+            TdApi.Message[] page = ids.stream()
+                    .sorted((a, b) -> Long.compare(b, a))
+                    .map(ChatHistoryCrawler::toMessageId)
+                    .filter(id -> id < fromMessageId)
+                    .limit(limit)
+                    .map(ChatHistoryCrawler::toServerId)
+                    .map(ChatHistoryCrawlerTest::message)
+                    .toArray(TdApi.Message[]::new);
+            long next = page.length == limit ? page[page.length - 1].id : 0;
+            return new TdApi.FoundChatMessages(-1, page, next);
+        };
+    }
+
+    @Test
+    void testOnlyMessagesInRangeDelivered() throws Exception {
+        List<Long> calls = new ArrayList<>();
+        List<Long> delivered = new ArrayList<>();
+        ChatHistoryCrawler crawler = new ChatHistoryCrawler(
+                history(List.of(5L, 10L, 15L, 20L, 25L), List.of(12L, 30L), calls), 10, 20, 0);
+
+        int matched = crawler.crawl(List.of(VIDEO, DOCUMENT),
+                message -> delivered.add(ChatHistoryCrawler.toServerId(message.id)));
+
+        assertEquals(4, matched);
+        assertEquals(List.of(20L, 15L, 10L, 12L), delivered);
+        assertEquals(2, crawler.getRequestCount());
+    }
+
+    @Test
+    void testLargeRangeUsesOneRequestPerPage() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 10_000; id++) {
+            ids.add(id);
+        }
+        List<Long> calls = new ArrayList<>();
+        int[] delivered = {0};
+        ChatHistoryCrawler crawler = new ChatHistoryCrawler(history(ids, List.of(), calls), 1, 10_000, 0);
+
+        int matched = crawler.crawl(List.of(VIDEO), message -> delivered[0]++);
+
+        assertEquals(10_000, matched);
+        assertEquals(10_000, delivered[0]);
+        // 100 页满页，外加一次确认没有更早消息的请求
+        assertTrue(crawler.getRequestCount() <= 101, "请求数: " + crawler.getRequestCount());
+    }
+
+    @Test
+    void testStopsOncePageReachesStartOfRange() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 1000; id++) {
+            ids.add(id);
+        }
+        List<Long> calls = new ArrayList<>();
+        ChatHistoryCrawler crawler = new ChatHistoryCrawler(history(ids, List.of(), calls), 901, 1000, 0);
+
+        assertEquals(100, crawler.crawl(List.of(VIDEO), message -> { }));
+        // 第一页恰好覆盖范围，第二页越过起点后停止，不会翻到更早的历史
+        assertTrue(crawler.getRequestCount() <= 2, "请求数: " + calls.size());
+    }
+
+    @Test
+    void testCheckpointAfterEveryPage() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 250; id++) {
+            ids.add(id);
+        }
+        List<long[]> checkpoints = new ArrayList<>();
+        ChatHistoryCrawler crawler = new ChatHistoryCrawler(history(ids, List.of(), new ArrayList<>()), 1, 250, 0);
+
+        crawler.crawl(List.of(VIDEO, DOCUMENT), 0, crawler.initialCursor(), message -> { },
+                (filterIndex, cursor) -> checkpoints.add(new long[]{filterIndex, cursor}), () -> false);
+
+        // 两个满页各保存一次游标，两个过滤器完成时各保存一次
+        assertEquals(4, checkpoints.size());
+        assertArrayEquals(new long[]{0, 151}, checkpoints.get(0));
+        assertArrayEquals(new long[]{0, 51}, checkpoints.get(1));
+        assertArrayEquals(new long[]{1, 251}, checkpoints.get(2));
+        assertArrayEquals(new long[]{2, 251}, checkpoints.get(3));
+    }
+
+    @Test
+    void testResumeFromCheckpointLosesNothing() throws Exception {
+        List<Long> videos = new ArrayList<>();
+        for (long id = 1; id <= 450; id++) {
+            videos.add(id);
+        }
+        List<Long> documents = List.of(451L, 460L);
+        List<Long> delivered = new ArrayList<>();
+        long[] saved = {0, 0};
+        int[] pages = {0};
+
+        ChatHistoryCrawler first = new ChatHistoryCrawler(history(videos, documents, new ArrayList<>()), 1, 460, 0);
+        first.crawl(List.of(VIDEO, DOCUMENT), 0, first.initialCursor(),
+                message -> delivered.add(ChatHistoryCrawler.toServerId(message.id)),
+                (filterIndex, cursor) -> {
+                    saved[0] = filterIndex;
+                    saved[1] = cursor;
+                    pages[0]++;
+                },
+                () -> pages[0] >= 2);
+        assertEquals(200, delivered.size());
+        assertArrayEquals(new long[]{0, 251}, saved);
+
+        // 新的抓取器从保存的断点继续，相当于进程重启
+        ChatHistoryCrawler second = new ChatHistoryCrawler(history(videos, documents, new ArrayList<>()), 1, 460, 0);
+        second.crawl(List.of(VIDEO, DOCUMENT), (int) saved[0], saved[1],
+                message -> delivered.add(ChatHistoryCrawler.toServerId(message.id)),
+                (filterIndex, cursor) -> { }, () -> false);
+
+        assertEquals(452, delivered.size());
+        assertEquals(452, delivered.stream().distinct().count());
+        assertTrue(delivered.containsAll(videos));
+        assertTrue(delivered.containsAll(documents));
+    }
+
+    @Test
+    void testResumeAfterAllFiltersDoesNothing() throws Exception {
+        List<Long> calls = new ArrayList<>();
+        ChatHistoryCrawler crawler = new ChatHistoryCrawler(history(List.of(1L), List.of(2L), calls), 1, 10, 0);
+
+        assertEquals(0, crawler.crawl(List.of(VIDEO, DOCUMENT), 2, crawler.initialCursor(), message -> { },
+                (filterIndex, cursor) -> { }, () -> false));
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    void testMessageIdConversion() {
+        assertEquals(1048576L * 42, ChatHistoryCrawler.toMessageId(42));
+        assertEquals(42, ChatHistoryCrawler.toServerId(ChatHistoryCrawler.toMessageId(42)));
+    }
+}
@@ -0,0 +1,64 @@
+package fun.zulin.tmd.telegram;
+
+import fun.zulin.tmd.data.item.DownloadItem;
+import fun.zulin.tmd.data.item.DownloadState;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownloadEventBusTest {
+
+    private static DownloadItem item(String uniqueId) {
+        return DownloadItem.builder().uniqueId(uniqueId).build();
+    }
+
+    @Test
+    void testKeyedAndWildcardDelivery() {
+        DownloadEventBus bus = new DownloadEventBus();
+        List<String> keyedEvents = new ArrayList<>();
+        List<String> allEvents = new ArrayList<>();
+
+        bus.subscribe("a", (item, oldState, newState) -> keyedEvents.add(item.getUniqueId() + ":" + newState));
+        bus.subscribeAll((item, oldState, newState) -> allEvents.add(item.getUniqueId()));
+
+        bus.publish(item("a"), "Created", "Downloading");
+        bus.publish(item("b"), "Created", "Downloading");
+
+        assertEquals(List.of("a:Downloading"), keyedEvents);
+        assertEquals(List.of("a", "b"), allEvents);
+    }
+
+    @Test
+    void testAwaitTerminalStateUnsubscribes() {
+        DownloadEventBus bus = new DownloadEventBus();
+        CompletableFuture<String> future = bus.awaitTerminalState("a");
+        assertEquals(1, bus.getSubscriberCount("a"));
+
+        bus.publish(item("a"), "Created", DownloadState.Downloading.name());
+        assertFalse(future.isDone());
+
+        bus.publish(item("a"), DownloadState.Downloading.name(), DownloadState.Failed.name());
+        assertEquals(DownloadState.Failed.name(), future.join());
+        assertEquals(0, bus.getSubscriberCount("a"));
+        assertEquals(0, bus.getSubscribedItemCount());
+    }
+
+    @Test
+    void testCancelledWaitRemovesSubscription() {
+        DownloadEventBus bus = new DownloadEventBus();
+        CompletableFuture<String> first = bus.awaitTerminalState("a");
+        CompletableFuture<String> second = bus.awaitTerminalState("a");
+        assertEquals(2, bus.getSubscriberCount("a"));
+
+        first.cancel(false);
+        assertEquals(1, bus.getSubscriberCount("a"));
+
+        bus.publish(item("a"), DownloadState.Downloading.name(), DownloadState.Complete.name());
+        assertEquals(DownloadState.Complete.name(), second.join());
+        assertEquals(0, bus.getSubscribedItemCount());
+    }
+}
@@ -0,0 +1,82 @@
+package fun.zulin.tmd.telegram;
+
+import fun.zulin.tmd.data.item.DownloadItem;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownloadRegistryTest {
+
+    private static DownloadItem item(long id, String uniqueId, Integer fileId) {
+        return DownloadItem.builder().id(id).uniqueId(uniqueId).fileId(fileId).build();
+    }
+
+    @Test
+    void testLookupByUniqueIdAndFileId() {
+        DownloadRegistry registry = new DownloadRegistry();
+        DownloadItem a = item(1, "a", 10);
+        registry.put(a);
+
+        assertSame(a, registry.getByUniqueId("a"));
+        assertSame(a, registry.getByFileId(10));
+        assertNull(registry.getByFileId(11));
+
+        registry.remove("a");
+        assertNull(registry.getByUniqueId("a"));
+        assertNull(registry.getByFileId(10));
+    }
+
+    @Test
+    void testRecoveredItemIndexedAfterRebind() {
+        DownloadRegistry registry = new DownloadRegistry();
+        // 数据库中的旧 fileId 不建立索引
+        DownloadItem recovered = item(1, "a", 99);
+        registry.put(recovered, false);
+        assertNull(registry.getByFileId(99));
+
+        registry.bindFileId(recovered, 7);
+        assertSame(recovered, registry.getByFileId(7));
+        assertEquals(7, recovered.getFileId());
+    }
+
+    @Test
+    void testSnapshotOrderedAndRefreshedOnChange() {
+        DownloadRegistry registry = new DownloadRegistry();
+        registry.put(item(3, "c", 3));
+        registry.put(item(1, "a", 1));
+        registry.put(item(2, "b", 2));
+
+        List<DownloadItem> first = registry.snapshot();
+        assertEquals(List.of("a", "b", "c"), first.stream().map(DownloadItem::getUniqueId).toList());
+        assertSame(first, registry.snapshot());
+
+        registry.retainAll(Set.of("a", "c"));
+        assertEquals(List.of("a", "c"), registry.snapshot().stream().map(DownloadItem::getUniqueId).toList());
+        assertThrows(UnsupportedOperationException.class, () -> registry.snapshot().clear());
+    }
+
+    @Test
+    void testFileIdIndexedPerSession() {
+        DownloadRegistry registry = new DownloadRegistry();
+        DownloadItem a = item(1, "a", 5);
+        DownloadItem b = item(2, "b", null);
+        registry.put(a);
+        registry.put(b, false);
+
+        // 同一个 fileId 在不同会话中指向不同文件
+        registry.bindFileId(b, 1, 5);
+        assertSame(a, registry.getByFileId(5));
+        assertSame(b, registry.getByFileId(1, 5));
+        assertEquals(1, registry.getSession("b"));
+        assertEquals(SessionPool.PRIMARY, registry.getSession("a"));
+
+        // 重新绑定到主会话后旧会话的索引失效
+        registry.bindFileId(b, SessionPool.PRIMARY, 8);
+        assertNull(registry.getByFileId(1, 5));
+        assertSame(b, registry.getByFileId(8));
+        assertEquals(SessionPool.PRIMARY, registry.getSession("b"));
+    }
+}
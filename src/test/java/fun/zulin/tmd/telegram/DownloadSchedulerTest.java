@@ -0,0 +1,269 @@
+package fun.zulin.tmd.telegram;
+
+import fun.zulin.tmd.data.item.DownloadItem;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownloadSchedulerTest {
+
+    private static DownloadItem item(String uniqueId) {
+        return DownloadItem.builder().uniqueId(uniqueId).build();
+    }
+
+    @Test
+    void testDispatchWhenSlotFrees() {
+        List<String> started = new ArrayList<>();
+        DownloadScheduler scheduler = new DownloadScheduler(2, Runnable::run,
+                item -> started.add(item.getUniqueId()));
+
+        assertTrue(scheduler.submit(item("a"), 16));
+        assertTrue(scheduler.submit(item("b"), 16));
+        assertTrue(scheduler.submit(item("c"), 16));
+
+        // 只有两个槽位，第三个排队等待
+        assertEquals(List.of("a", "b"), started);
+        assertEquals(2, scheduler.getActiveCount());
+        assertEquals(1, scheduler.getPendingCount());
+
+        // 槽位释放后立即派发
+        scheduler.release("a");
+        assertEquals(List.of("a", "b", "c"), started);
+        assertEquals(2, scheduler.getActiveCount());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    void testDuplicateSubmitIgnored() {
+        List<String> started = new ArrayList<>();
+        DownloadScheduler scheduler = new DownloadScheduler(1, Runnable::run,
+                item -> started.add(item.getUniqueId()));
+
+        assertTrue(scheduler.submit(item("a"), 16));
+        assertFalse(scheduler.submit(item("a"), 16));
+        assertTrue(scheduler.submit(item("b"), 16));
+        assertFalse(scheduler.submit(item("b"), 16));
+
+        assertEquals(1, scheduler.getActiveCount());
+        assertEquals(1, scheduler.getPendingCount());
+    }
+
+    @Test
+    void testPriorityThenFifoOrder() {
+        List<String> started = new ArrayList<>();
+        DownloadScheduler scheduler = new DownloadScheduler(1, Runnable::run,
+                item -> started.add(item.getUniqueId()));
+
+        scheduler.submit(item("running"), 16);
+        scheduler.submit(item("low"), 1);
+        scheduler.submit(item("first"), 16);
+        scheduler.submit(item("second"), 16);
+        scheduler.submit(item("high"), 32);
+
+        scheduler.release("running");
+        scheduler.release("high");
+        scheduler.release("first");
+        scheduler.release("second");
+
+        assertEquals(List.of("running", "high", "first", "second", "low"), started);
+    }
+
+    @Test
+    void testRemovePendingAndStarterFailure() {
+        DownloadScheduler scheduler = new DownloadScheduler(1, Runnable::run, item -> {
+            if ("bad".equals(item.getUniqueId())) {
+                throw new IllegalStateException("boom");
+            }
+        });
+
+        // 启动失败时自动归还槽位
+        scheduler.submit(item("bad"), 16);
+        assertEquals(0, scheduler.getActiveCount());
+
+        scheduler.submit(item("a"), 16);
+        scheduler.submit(item("b"), 16);
+        assertTrue(scheduler.remove("b"));
+        assertFalse(scheduler.remove("b"));
+        assertFalse(scheduler.isPending("b"));
+        assertTrue(scheduler.isRunning("a"));
+    }
+
+    @Test
+    void testResizeWithoutDroppingRunning() {
+        List<String> started = new ArrayList<>();
+        DownloadScheduler scheduler = new DownloadScheduler(1, Runnable::run,
+                item -> started.add(item.getUniqueId()));
+
+        scheduler.submit(item("a"), 16);
+        scheduler.submit(item("b"), 16);
+        scheduler.submit(item("c"), 16);
+        assertEquals(List.of("a"), started);
+
+        // 调高上限立即派发
+        scheduler.setMaxConcurrent(3);
+        assertEquals(List.of("a", "b", "c"), started);
+
+        // 调低上限不影响已开始的下载，槽位回落前不再派发
+        scheduler.setMaxConcurrent(1);
+        scheduler.submit(item("d"), 16);
+        assertEquals(3, scheduler.getActiveCount());
+        scheduler.release("a");
+        scheduler.release("b");
+        assertEquals(1, scheduler.getPendingCount());
+        scheduler.release("c");
+        assertEquals(List.of("a", "b", "c", "d"), started);
+    }
+
+    @Test
+    void testBlockedItemStaysQueuedWhileOthersStart() {
+        List<String> started = new ArrayList<>();
+        Set<String> admitted = new HashSet<>();
+        Set<String> allowed = new HashSet<>(Set.of("b"));
+        DownloadScheduler scheduler = new DownloadScheduler(2, Runnable::run,
+                item -> started.add(item.getUniqueId()), new DownloadScheduler.Admission() {
+            @Override
+            public boolean tryAdmit(DownloadItem item) {
+                if (!allowed.contains(item.getUniqueId())) {
+                    return false;
+                }
+                admitted.add(item.getUniqueId());
+                return true;
+            }
+
+            @Override
+            public void release(String uniqueId) {
+                admitted.remove(uniqueId);
+            }
+        });
+
+        scheduler.submit(item("a"), 16);
+        scheduler.submit(item("b"), 16);
+
+        // a 空间不足留在队列中，b 先开始
+        assertEquals(List.of("b"), started);
+        assertEquals(1, scheduler.getPendingCount());
+        assertEquals(1, scheduler.getBlockedCount());
+
+        // 空间释放后重新检查
+        allowed.add("a");
+        scheduler.retryBlocked();
+        assertEquals(List.of("b", "a"), started);
+        assertEquals(0, scheduler.getBlockedCount());
+
+        scheduler.release("b");
+        assertEquals(Set.of("a"), admitted);
+    }
+
+    @Test
+    void testExhaustedPassStopsScanningQueue() {
+        List<String> started = new ArrayList<>();
+        List<String> checked = new ArrayList<>();
+        AtomicInteger passes = new AtomicInteger();
+        AtomicInteger free = new AtomicInteger(1);
+        DownloadScheduler scheduler = new DownloadScheduler(10, Runnable::run,
+                item -> started.add(item.getUniqueId()), new DownloadScheduler.Admission() {
+            @Override
+            public boolean tryAdmit(DownloadItem item) {
+                return begin().tryAdmit(item);
+            }
+
+            @Override
+            public Pass begin() {
+                passes.incrementAndGet();
+                return new Pass() {
+                    @Override
+                    public boolean tryAdmit(DownloadItem item) {
+                        checked.add(item.getUniqueId());
+                        if (free.get() <= 0) {
+                            return false;
+                        }
+                        free.decrementAndGet();
+                        return true;
+                    }
+
+                    @Override
+                    public String getReason() {
+                        return "磁盘空间不足";
+                    }
+
+                    @Override
+                    public boolean isExhausted() {
+                        return free.get() <= 0;
+                    }
+                };
+            }
+
+            @Override
+            public void release(String uniqueId) {
+            }
+        });
+
+        scheduler.submit(item("a"), 16);
+        scheduler.submit(item("b"), 16);
+        scheduler.submit(item("c"), 16);
+        scheduler.submit(item("d"), 16);
+
+        // 每次派发只建立一次快照，资源耗尽后只检查队首一个下载项
+        assertEquals(List.of("a"), started);
+        assertEquals(4, passes.get());
+        assertEquals(List.of("a", "b", "b", "b"), checked);
+        assertEquals(3, scheduler.getBlockedCount());
+        assertEquals("磁盘空间不足", scheduler.getBlockedReason("d"));
+        assertNull(scheduler.getBlockedReason("a"));
+
+        free.set(2);
+        scheduler.retryBlocked();
+        assertEquals(List.of("a", "b", "c"), started);
+        assertEquals(1, scheduler.getBlockedCount());
+        assertEquals("磁盘空间不足", scheduler.getBlockedReason("d"));
+    }
+
+    @Test
+    void testReleaseSlotKeepsStorageReservationUntilRelease() {
+        List<String> started = new ArrayList<>();
+        // 配额只够一个 100 字节的文件
+        StorageAdmission storage = new StorageAdmission(100, 0, () -> -1, () -> 0);
+        DownloadScheduler scheduler = new DownloadScheduler(2, Runnable::run,
+                item -> started.add(item.getUniqueId()), storage);
+        DownloadItem a = DownloadItem.builder().uniqueId("a").fileSize(100).build();
+        DownloadItem b = DownloadItem.builder().uniqueId("b").fileSize(100).build();
+
+        scheduler.submit(a, 16);
+        scheduler.submit(b, 16);
+        assertEquals(List.of("a"), started);
+
+        // a 已移出下载目录但尚未记录为已完成：槽位归还，仍占用配额
+        a.setDownloadedSize(100);
+        scheduler.releaseSlot("a");
+        assertEquals(0, scheduler.getActiveCount());
+        assertEquals(List.of("a"), started);
+        assertEquals("超出存储配额", scheduler.getBlockedReason("b"));
+
+        scheduler.release("a");
+        assertEquals(List.of("a", "b"), started);
+    }
+
+    @Test
+    void testReprioritizeMovesQueuedItemAhead() {
+        List<String> started = new ArrayList<>();
+        DownloadScheduler scheduler = new DownloadScheduler(1, Runnable::run,
+                item -> started.add(item.getUniqueId()));
+
+        scheduler.submit(item("a"), 16);
+        scheduler.submit(item("b"), 16);
+        scheduler.submit(item("c"), 16);
+
+        assertTrue(scheduler.reprioritize("c", 32));
+        assertFalse(scheduler.reprioritize("a", 32), "已开始的下载项不在队列中");
+
+        scheduler.release("a");
+        scheduler.release("c");
+        assertEquals(List.of("a", "c", "b"), started);
+    }
+}
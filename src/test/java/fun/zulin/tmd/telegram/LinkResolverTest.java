@@ -0,0 +1,31 @@
+package fun.zulin.tmd.telegram;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LinkResolverTest {
+
+    @Test
+    void testLinkKeyNormalizesSameMessage() {
+        assertEquals("somechannel/123", LinkResolver.linkKey("https://t.me/SomeChannel/123"));
+        assertEquals("somechannel/123", LinkResolver.linkKey("  https://t.me/somechannel/123?single "));
+        assertEquals("somechannel/123", LinkResolver.linkKey("http://telegram.me/somechannel/123/"));
+    }
+
+    @Test
+    void testLinkKeyForPrivateChannel() {
+        assertEquals("c/1868938373/45", LinkResolver.linkKey("https://t.me/c/1868938373/45"));
+    }
+
+    @Test
+    void testNonMessageLinkKeptAsIs() {
+        assertEquals("https://t.me/somechannel", LinkResolver.linkKey("https://t.me/somechannel"));
+    }
+
+    @Test
+    void testChatKeyMatchesLinkKeyPrefix() {
+        String chat = LinkResolver.chatKey(" SomeChannel ");
+        assertTrue(LinkResolver.linkKey("https://t.me/SOMECHANNEL/1").startsWith(chat + "/"));
+    }
+}
@@ -0,0 +1,99 @@
+package fun.zulin.tmd.telegram;
+
+import fun.zulin.tmd.data.item.DownloadItem;
+import fun.zulin.tmd.data.item.DownloadState;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecoveryPlanTest {
+
+    private static final long SAVED_MESSAGES = 777;
+
+    private static DownloadItem item(String uniqueId, Long chatId, long messageId, String remoteFileId) {
+        return DownloadItem.builder().uniqueId(uniqueId).chatId(chatId)
+                .massageId(messageId).remoteFileId(remoteFileId).build();
+    }
+
+    @Test
+    void testGroupsByChatInOriginalOrder() {
+        List<DownloadItem> items = List.of(
+                item("a", 1L, 10, null),
+                item("b", 2L, 20, null),
+                item("c", 1L, 11, null),
+                item("d", null, 30, null));
+
+        List<RecoveryPlan.Step> steps = RecoveryPlan.plan(items, 100, SAVED_MESSAGES);
+
+        assertEquals(3, steps.size());
+        assertEquals(1L, steps.get(0).getChatId());
+        assertEquals(List.of("a", "c"), steps.get(0).getItems().stream().map(DownloadItem::getUniqueId).toList());
+        assertEquals(2L, steps.get(1).getChatId());
+        // 没有记录聊天的下载项来自 Saved Messages
+        assertEquals(SAVED_MESSAGES, steps.get(2).getChatId());
+    }
+
+    @Test
+    void testRemoteFilesFirstAndWithoutMessageRequests() {
+        List<DownloadItem> items = List.of(
+                item("a", 1L, 10, null),
+                item("b", 1L, 11, "remote-b"),
+                item("c", 2L, 20, ""));
+
+        List<RecoveryPlan.Step> steps = RecoveryPlan.plan(items, 100, SAVED_MESSAGES);
+
+        assertEquals(3, steps.size());
+        assertTrue(steps.get(0).isRemoteFiles());
+        assertEquals("b", steps.get(0).getItems().get(0).getUniqueId());
+        assertEquals(1L, steps.get(1).getChatId());
+        assertEquals(2L, steps.get(2).getChatId());
+    }
+
+    @Test
+    void testThousandsOfItemsSplitIntoBoundedRequests() {
+        List<DownloadItem> items = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            items.add(item("u" + i, (long) (i % 2), i, null));
+        }
+
+        List<RecoveryPlan.Step> steps = RecoveryPlan.plan(items, 1000, SAVED_MESSAGES);
+
+        // 每个聊天 1250 条，每次最多 100 条
+        assertEquals(26, steps.size());
+        assertTrue(steps.stream().allMatch(step -> step.getItems().size() <= RecoveryPlan.MAX_BATCH));
+        assertEquals(2500, steps.stream().mapToInt(step -> step.getItems().size()).sum());
+    }
+
+    @Test
+    void testInterruptedDownloadsAreResumedAndPausedAreNot() {
+        List<DownloadItem> items = List.of(
+                DownloadItem.builder().uniqueId("created").state(DownloadState.Created.name()).build(),
+                // 上次关闭或崩溃时仍在下载
+                DownloadItem.builder().uniqueId("downloading").state(DownloadState.Downloading.name()).build(),
+                DownloadItem.builder().uniqueId("paused").state(DownloadState.Pause.name()).build());
+
+        assertEquals(List.of("created", "downloading"),
+                RecoveryPlan.resumable(items, 3).stream().map(DownloadItem::getUniqueId).toList());
+    }
+
+    @Test
+    void testFailedItemsResumedOnlyUntilRetriesExhausted() {
+        List<DownloadItem> items = List.of(
+                DownloadItem.builder().uniqueId("retry").state(DownloadState.Failed.name()).downloadCount(1).build(),
+                DownloadItem.builder().uniqueId("legacy").state(DownloadState.Failed.name()).build(),
+                // 重试策略放弃时把次数记满
+                DownloadItem.builder().uniqueId("exhausted").state(DownloadState.Failed.name()).downloadCount(3).build(),
+                DownloadItem.builder().uniqueId("created").state(DownloadState.Created.name()).downloadCount(5).build());
+
+        assertEquals(List.of("retry", "legacy", "created"),
+                RecoveryPlan.resumable(items, 3).stream().map(DownloadItem::getUniqueId).toList());
+    }
+
+    @Test
+    void testEmpty() {
+        assertTrue(RecoveryPlan.plan(List.of(), 100, SAVED_MESSAGES).isEmpty());
+    }
+}
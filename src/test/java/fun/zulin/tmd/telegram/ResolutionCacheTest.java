@@ -0,0 +1,104 @@
+package fun.zulin.tmd.telegram;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResolutionCacheTest {
+
+    @Test
+    void testHitWithinTtlAndReloadAfterExpiry() throws Exception {
+        long[] now = {0};
+        AtomicInteger loads = new AtomicInteger();
+        ResolutionCache<String, Long> cache = new ResolutionCache<>(10, 1000, () -> now[0]);
+
+        assertEquals(42L, cache.get("channel", k -> CompletableFuture.completedFuture(42L + loads.getAndIncrement())).get());
+        now[0] = 999;
+        assertEquals(42L, cache.get("channel", k -> CompletableFuture.completedFuture(42L + loads.getAndIncrement())).get());
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHits());
+
+        now[0] = 1000;
+        assertEquals(43L, cache.get("channel", k -> CompletableFuture.completedFuture(42L + loads.getAndIncrement())).get());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        ResolutionCache<String, Long> cache = new ResolutionCache<>(2, 60_000, () -> 0);
+        cache.put("a", 1L);
+        cache.put("b", 2L);
+        // 访问 a 之后，b 成为最久未访问的条目
+        assertEquals(1L, cache.getIfPresent("a"));
+        cache.put("c", 3L);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.getIfPresent("b"));
+        assertEquals(1L, cache.getIfPresent("a"));
+        assertEquals(3L, cache.getIfPresent("c"));
+    }
+
+    @Test
+    void testConcurrentLookupsShareOneRequest() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<Long> request = new CompletableFuture<>();
+        ResolutionCache<String, Long> cache = new ResolutionCache<>(10, 60_000, () -> 0);
+
+        CompletableFuture<Long> first = cache.get("channel", k -> {
+            loads.incrementAndGet();
+            return request;
+        });
+        CompletableFuture<Long> second = cache.get("channel", k -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(0L);
+        });
+        assertFalse(first.isDone());
+        assertSame(first, second);
+
+        request.complete(7L);
+        assertEquals(7L, first.get());
+        assertEquals(7L, second.get());
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getCoalesced());
+        assertEquals(7L, cache.getIfPresent("channel"));
+    }
+
+    @Test
+    void testFailuresAndNullsAreNotCached() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        ResolutionCache<String, Long> cache = new ResolutionCache<>(10, 60_000, () -> 0);
+
+        CompletableFuture<Long> failed = cache.get("channel", k -> {
+            loads.incrementAndGet();
+            return CompletableFuture.failedFuture(new IllegalStateException("FLOOD_WAIT"));
+        });
+        assertThrows(ExecutionException.class, failed::get);
+
+        assertNull(cache.get("channel", k -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }).get());
+
+        assertEquals(5L, cache.get("channel", k -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(5L);
+        }).get());
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void testLoaderExceptionFailsFuture() {
+        ResolutionCache<String, Long> cache = new ResolutionCache<>(10, 60_000, () -> 0);
+
+        CompletableFuture<Long> result = cache.get("channel", k -> {
+            throw new IllegalStateException("client closed");
+        });
+
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,45 @@
+package fun.zulin.tmd.telegram;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+
+    private final RetryPolicy policy = new RetryPolicy(3, 2000, 60000);
+
+    @Test
+    void testParseRetryAfter() {
+        assertEquals(42, RetryPolicy.parseRetryAfterSeconds("FLOOD_WAIT_42"));
+        assertEquals(7, RetryPolicy.parseRetryAfterSeconds("Too Many Requests: retry after 7"));
+        assertEquals(-1, RetryPolicy.parseRetryAfterSeconds("Request aborted"));
+        assertEquals(-1, RetryPolicy.parseRetryAfterSeconds(null));
+    }
+
+    @Test
+    void testFloodWaitIsExactAndIgnoresCap() {
+        assertEquals(120_000, policy.nextDelayMillis(1, "FLOOD_WAIT_120", 0.9));
+        assertTrue(policy.canRetry(1, 420, "FLOOD_WAIT_120"));
+    }
+
+    @Test
+    void testExponentialBackoffWithJitter() {
+        assertEquals(1000, policy.nextDelayMillis(1, "Connection closed", 0));
+        assertEquals(1999, policy.nextDelayMillis(1, "Connection closed", 0.9999));
+        assertEquals(4000, policy.nextDelayMillis(3, "Connection closed", 0));
+        // 超过上限后封顶
+        assertEquals(30000, policy.nextDelayMillis(20, "Connection closed", 0));
+    }
+
+    @Test
+    void testRetryableClassificationAndLimit() {
+        assertTrue(policy.canRetry(1, 500, "Internal Server Error"));
+        assertTrue(policy.canRetry(3, 0, "下载超时"));
+        assertFalse(policy.canRetry(4, 500, "Internal Server Error"));
+
+        assertFalse(policy.canRetry(1, 400, "FILE_ID_INVALID"));
+        assertFalse(policy.canRetry(1, 404, "Not Found"));
+        assertTrue(policy.canRetry(1, 400, "FILE_REFERENCE_EXPIRED"));
+        assertTrue(policy.canRetry(1, 429, "Too Many Requests: retry after 3"));
+    }
+}
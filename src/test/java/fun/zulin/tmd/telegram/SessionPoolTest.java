@@ -0,0 +1,73 @@
+package fun.zulin.tmd.telegram;
+
+import it.tdlight.jni.TdApi;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionPoolTest {
+
+    private static final long CHANNEL = -1001234567890L;
+
+    private static TelegramSession session(int index, int activeDownloads) {
+        TelegramSession session = new TelegramSession(index, "s" + index, null);
+        session.markReady(new TdApi.User());
+        for (int i = 0; i < activeDownloads; i++) {
+            session.acquireDownload();
+        }
+        return session;
+    }
+
+    @Test
+    void testOnlyChannelMessagesAreRoutable() {
+        assertTrue(SessionPool.isRoutable(CHANNEL, 10L));
+        assertFalse(SessionPool.isRoutable(123456L, 10L), "私聊消息ID因账号而异");
+        assertFalse(SessionPool.isRoutable(-123456L, 10L), "普通群组消息ID因账号而异");
+        assertFalse(SessionPool.isRoutable(CHANNEL, 0L));
+        assertFalse(SessionPool.isRoutable(null, 10L));
+    }
+
+    @Test
+    void testSelectsLeastLoadedVisibleSession() {
+        TelegramSession primary = session(0, 2);
+        TelegramSession busy = session(1, 3);
+        TelegramSession idle = session(2, 0);
+        busy.setVisible(CHANNEL, true);
+        idle.setVisible(CHANNEL, true);
+
+        assertSame(idle, SessionPool.select(List.of(primary, busy, idle), CHANNEL));
+    }
+
+    @Test
+    void testSkipsSessionsThatCannotSeeChat() {
+        TelegramSession primary = session(0, 2);
+        TelegramSession hidden = session(1, 0);
+        TelegramSession probing = session(2, 0);
+        hidden.setVisible(CHANNEL, false);
+        assertTrue(probing.beginProbe(CHANNEL));
+        assertFalse(probing.beginProbe(CHANNEL), "探测中的聊天不重复探测");
+
+        // 主会话可见性未知时视为可见
+        assertSame(primary, SessionPool.select(List.of(primary, hidden, probing), CHANNEL));
+    }
+
+    @Test
+    void testSkipsSessionsNotReady() {
+        TelegramSession primary = session(0, 1);
+        TelegramSession loggingIn = new TelegramSession(1, "s1", null);
+        loggingIn.setVisible(CHANNEL, true);
+
+        assertSame(primary, SessionPool.select(List.of(primary, loggingIn), CHANNEL));
+    }
+
+    @Test
+    void testReleaseDownloadRestoresLoad() {
+        TelegramSession session = session(1, 0);
+        session.acquireDownload();
+        assertEquals(1, session.getActiveDownloads());
+        session.releaseDownload();
+        assertEquals(0, session.getActiveDownloads());
+    }
+}
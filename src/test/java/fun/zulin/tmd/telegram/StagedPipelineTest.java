@@ -0,0 +1,125 @@
+package fun.zulin.tmd.telegram;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StagedPipelineTest {
+
+    @Test
+    void testJobsPassThroughStagesInOrder() throws Exception {
+        List<String> events = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        StagedPipeline<String> pipeline = new StagedPipeline<String>("test", (job, e) -> fail(e))
+                .addStage("a", 1, 4, job -> events.add("a:" + job))
+                .addStage("b", 1, 4, job -> {
+                    events.add("b:" + job);
+                    done.countDown();
+                    return true;
+                });
+        pipeline.start();
+
+        assertTrue(pipeline.submit("1"));
+        assertTrue(pipeline.submit("2"));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertTrue(events.indexOf("a:1") < events.indexOf("b:1"));
+        assertTrue(events.indexOf("a:2") < events.indexOf("b:2"));
+        assertTrue(pipeline.shutdown(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testStopAndErrorEndJob() throws Exception {
+        List<String> reached = new CopyOnWriteArrayList<>();
+        List<String> errors = new CopyOnWriteArrayList<>();
+        StagedPipeline<String> pipeline = new StagedPipeline<String>("test", (job, e) -> errors.add(job))
+                .addStage("check", 1, 4, job -> {
+                    if (job.equals("boom")) {
+                        throw new IllegalStateException("boom");
+                    }
+                    return !job.equals("skip");
+                })
+                .addStage("last", 1, 4, job -> reached.add(job));
+        pipeline.start();
+
+        pipeline.submit("skip");
+        pipeline.submit("boom");
+        pipeline.submit("ok");
+        assertTrue(pipeline.shutdown(5, TimeUnit.SECONDS));
+
+        assertEquals(List.of("ok"), reached);
+        assertEquals(List.of("boom"), errors);
+    }
+
+    @Test
+    void testSlowStageBackpressure() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        StagedPipeline<Integer> pipeline = new StagedPipeline<Integer>("test", (job, e) -> { })
+                .addStage("fast", 1, 1, job -> true)
+                .addStage("slow", 1, 1, job -> {
+                    release.await();
+                    return true;
+                });
+        pipeline.start();
+
+        // slow 处理1个、slow 队列1个、fast 阻塞在交接上1个、fast 队列1个
+        int accepted = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (accepted < 4 && System.nanoTime() < deadline) {
+            if (pipeline.submit(accepted)) {
+                accepted++;
+            } else {
+                Thread.sleep(10);
+            }
+        }
+        assertEquals(4, accepted);
+        assertFalse(pipeline.submit(99), "入口队列满时提交应立即返回false");
+        while (pipeline.getBacklog() != 4 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(4, pipeline.getBacklog());
+
+        release.countDown();
+        assertTrue(pipeline.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(0, pipeline.getBacklog());
+    }
+
+    @Test
+    void testShutdownWaitsForEveryAcceptedJob() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            AtomicInteger finished = new AtomicInteger();
+            List<Exception> errors = new CopyOnWriteArrayList<>();
+            StagedPipeline<Integer> pipeline = new StagedPipeline<Integer>("test", (job, e) -> errors.add(e))
+                    .addStage("a", 2, 8, job -> true)
+                    .addStage("b", 2, 8, job -> true)
+                    .addStage("c", 1, 8, job -> finished.incrementAndGet() > 0);
+            pipeline.start();
+
+            // 工作线程刚取走任务时也必须计入积压，否则关闭时会把它当作已处理完而中断
+            int accepted = 0;
+            for (int i = 0; i < 200; i++) {
+                if (pipeline.submit(i)) {
+                    accepted++;
+                }
+            }
+            assertTrue(pipeline.shutdown(5, TimeUnit.SECONDS));
+
+            assertTrue(errors.isEmpty());
+            assertEquals(accepted, finished.get());
+            assertEquals(0, pipeline.getBacklog());
+        }
+    }
+
+    @Test
+    void testSubmitBeforeStartRejected() {
+        StagedPipeline<String> pipeline = new StagedPipeline<String>("test", (job, e) -> { })
+                .addStage("a", 1, 1, job -> true);
+        assertFalse(pipeline.submit("x"));
+    }
+}
@@ -0,0 +1,121 @@
+package fun.zulin.tmd.telegram;
+
+import fun.zulin.tmd.config.TmdProperties;
+import fun.zulin.tmd.data.item.DownloadItem;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageAdmissionTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private static DownloadItem item(String uniqueId, long fileSize, long downloadedSize) {
+        return DownloadItem.builder().uniqueId(uniqueId).fileSize(fileSize).downloadedSize(downloadedSize).build();
+    }
+
+    @Test
+    void testDiskSpaceCountsRemainingBytesOfReservedItems() {
+        AtomicLong free = new AtomicLong(1000 * MB);
+        StorageAdmission admission = new StorageAdmission(0, 100 * MB, free::get, () -> 0);
+
+        DownloadItem a = item("a", 500 * MB, 0);
+        assertTrue(admission.tryAdmit(a));
+        assertEquals(500 * MB, admission.getReservedBytes());
+
+        // 1000 - 500 预留 - 100 保留 = 400MB 可用
+        assertFalse(admission.tryAdmit(item("b", 401 * MB, 0)));
+        assertTrue(admission.tryAdmit(item("c", 400 * MB, 0)));
+
+        // 断点续传只需要剩余部分
+        admission.release("c");
+        assertTrue(admission.tryAdmit(item("d", 800 * MB, 400 * MB)));
+    }
+
+    @Test
+    void testReservationShrinksWithProgress() {
+        StorageAdmission admission = new StorageAdmission(0, 0, () -> 1000 * MB, () -> 0);
+        DownloadItem a = item("a", 600 * MB, 0);
+        assertTrue(admission.tryAdmit(a));
+        assertFalse(admission.tryAdmit(item("b", 500 * MB, 0)));
+
+        // 已写入的部分已经从可用空间中扣除，不再重复预留
+        a.setDownloadedSize(600 * MB);
+        assertEquals(0, admission.getReservedBytes());
+        assertTrue(admission.tryAdmit(item("b", 500 * MB, 0)));
+    }
+
+    @Test
+    void testQuotaCountsFullSizeOfInFlightItems() {
+        AtomicLong used = new AtomicLong(7 * 1024 * MB);
+        StorageAdmission admission = new StorageAdmission(10 * 1024 * MB, 0, () -> -1, used::get);
+
+        assertTrue(admission.tryAdmit(item("a", 2 * 1024 * MB, 1024 * MB)));
+        assertFalse(admission.tryAdmit(item("b", 1024 * MB + 1, 0)));
+        assertTrue(admission.tryAdmit(item("c", 1024 * MB, 0)));
+
+        admission.release("a");
+        assertTrue(admission.tryAdmit(item("b", 1024 * MB + 1, 0)));
+    }
+
+    @Test
+    void testPassQueriesSpaceOnceAndChargesLocally() {
+        AtomicInteger diskQueries = new AtomicInteger();
+        AtomicInteger usedQueries = new AtomicInteger();
+        StorageAdmission admission = new StorageAdmission(0, 100 * MB,
+                () -> {
+                    diskQueries.incrementAndGet();
+                    return 1000 * MB;
+                }, () -> {
+                    usedQueries.incrementAndGet();
+                    return 0;
+                });
+
+        DownloadScheduler.Admission.Pass pass = admission.begin();
+        assertTrue(pass.tryAdmit(item("a", 500 * MB, 0)));
+        assertFalse(pass.tryAdmit(item("b", 401 * MB, 0)));
+        assertEquals("磁盘空间不足", pass.getReason());
+        assertFalse(pass.isExhausted(), "更小的下载项仍可能通过");
+        assertTrue(pass.tryAdmit(item("c", 400 * MB, 0)));
+        assertFalse(pass.tryAdmit(item("d", 1, 0)));
+        assertTrue(pass.isExhausted());
+
+        assertEquals(1, diskQueries.get());
+        assertEquals(0, usedQueries.get(), "未配置配额时不查询已用空间");
+        assertEquals(900 * MB, admission.getReservedBytes());
+    }
+
+    @Test
+    void testFullQuotaExhaustsPass() {
+        StorageAdmission admission = new StorageAdmission(10 * MB, 0, () -> -1, () -> 10 * MB);
+        DownloadScheduler.Admission.Pass pass = admission.begin();
+        assertFalse(pass.tryAdmit(item("a", 1, 0)));
+        assertEquals("超出存储配额", pass.getReason());
+        assertTrue(pass.isExhausted());
+    }
+
+    @Test
+    void testUnknownDiskSpaceAndNoQuotaAdmits() {
+        StorageAdmission admission = new StorageAdmission(0, 100 * MB, () -> -1, () -> Long.MAX_VALUE);
+        assertTrue(admission.tryAdmit(item("a", 4096 * MB, 0)));
+        assertTrue(admission.tryAdmit(item("a", 4096 * MB, 0)), "已预留的下载项重复检查时直接通过");
+        assertEquals(4096 * MB, admission.getReservedFileSize());
+    }
+
+    @Test
+    void testQuotaFallsBackToExplicitMaxStorageSize() {
+        TmdProperties.StorageConfig config = new TmdProperties.StorageConfig();
+        assertEquals(0, config.getQuotaBytes(), "默认不限制");
+
+        config.setMaxStorageSize("10MB");
+        config.validate();
+        assertEquals(10 * MB, config.getQuotaBytes());
+
+        // quota 优先
+        config.setQuota("20MB");
+        assertEquals(20 * MB, config.getQuotaBytes());
+    }
+}
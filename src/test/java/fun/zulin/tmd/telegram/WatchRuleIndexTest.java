@@ -0,0 +1,119 @@
+package fun.zulin.tmd.telegram;
+
+import fun.zulin.tmd.data.watch.WatchRule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WatchRuleIndexTest {
+
+    private static final long CHANNEL = -1001234567890L;
+
+    private static WatchRule rule(long id, long chatId) {
+        return WatchRule.builder().id(id).chatId(chatId).enabled(true).build();
+    }
+
+    private static WatchRuleIndex.Media video(int durationSeconds, long size, String caption) {
+        return new WatchRuleIndex.Media(WatchRuleIndex.VIDEO, durationSeconds, size, caption);
+    }
+
+    @AfterEach
+    void tearDown() {
+        WatchRuleIndex.reload(List.of());
+    }
+
+    @Test
+    void testUnwatchedChatDoesNotMatch() {
+        WatchRuleIndex.reload(List.of(rule(1, CHANNEL)));
+
+        assertNull(WatchRuleIndex.match(42L, video(600, 1024, "")));
+        assertFalse(WatchRuleIndex.isWatched(42L));
+        assertTrue(WatchRuleIndex.isWatched(CHANNEL));
+    }
+
+    @Test
+    void testEmptyRuleMatchesAllMedia() {
+        WatchRuleIndex.reload(List.of(rule(1, CHANNEL)));
+
+        assertEquals(1L, WatchRuleIndex.match(CHANNEL, video(1, 1, "")));
+        assertEquals(1L, WatchRuleIndex.match(CHANNEL,
+                new WatchRuleIndex.Media(WatchRuleIndex.PHOTO, 0, 100, "")));
+        assertEquals(1L, WatchRuleIndex.match(CHANNEL,
+                new WatchRuleIndex.Media(WatchRuleIndex.DOCUMENT, 0, 100, "")));
+    }
+
+    @Test
+    void testFiltersByTypeDurationSizeAndCaption() {
+        WatchRule rule = rule(1, CHANNEL);
+        rule.setMediaTypes("video");
+        rule.setMinDurationSeconds(300);
+        rule.setMinSize(1000L);
+        rule.setMaxSize(5000L);
+        rule.setCaptionRegex("(?i)1080p");
+        WatchRuleIndex.reload(List.of(rule));
+
+        assertEquals(1L, WatchRuleIndex.match(CHANNEL, video(600, 2000, "Movie 1080P")));
+        assertNull(WatchRuleIndex.match(CHANNEL, video(100, 2000, "Movie 1080p")));
+        assertNull(WatchRuleIndex.match(CHANNEL, video(600, 500, "Movie 1080p")));
+        assertNull(WatchRuleIndex.match(CHANNEL, video(600, 9000, "Movie 1080p")));
+        assertNull(WatchRuleIndex.match(CHANNEL, video(600, 2000, "Movie 720p")));
+        assertNull(WatchRuleIndex.match(CHANNEL,
+                new WatchRuleIndex.Media(WatchRuleIndex.DOCUMENT, 0, 2000, "1080p")));
+    }
+
+    @Test
+    void testUnknownSizeIsNotFiltered() {
+        WatchRule rule = rule(1, CHANNEL);
+        rule.setMinSize(1000L);
+        WatchRuleIndex.reload(List.of(rule));
+
+        assertEquals(1L, WatchRuleIndex.match(CHANNEL, video(10, 0, "")));
+    }
+
+    @Test
+    void testAnyRuleOfChatMatches() {
+        WatchRule videos = rule(1, CHANNEL);
+        videos.setMediaTypes("video");
+        WatchRule photos = rule(2, CHANNEL);
+        photos.setMediaTypes("photo");
+        WatchRuleIndex.reload(List.of(videos, photos));
+
+        assertEquals(2L, WatchRuleIndex.match(CHANNEL,
+                new WatchRuleIndex.Media(WatchRuleIndex.PHOTO, 0, 100, "")));
+        assertEquals(1, WatchRuleIndex.getWatchedChatCount());
+    }
+
+    @Test
+    void testDisabledAndInvalidRulesAreSkipped() {
+        WatchRule disabled = rule(1, CHANNEL);
+        disabled.setEnabled(false);
+        WatchRule invalid = rule(2, 99L);
+        invalid.setCaptionRegex("(");
+
+        assertEquals(0, WatchRuleIndex.reload(List.of(disabled, invalid)));
+        assertFalse(WatchRuleIndex.isWatched(CHANNEL));
+        assertFalse(WatchRuleIndex.isWatched(99L));
+    }
+
+    @Test
+    void testValidate() {
+        WatchRule rule = rule(1, CHANNEL);
+        rule.setMediaTypes("video, photo");
+        assertDoesNotThrow(() -> WatchRuleIndex.validate(rule));
+
+        rule.setMediaTypes("audio");
+        assertThrows(IllegalArgumentException.class, () -> WatchRuleIndex.validate(rule));
+
+        rule.setMediaTypes(null);
+        rule.setCaptionRegex("[");
+        assertThrows(IllegalArgumentException.class, () -> WatchRuleIndex.validate(rule));
+
+        rule.setCaptionRegex(null);
+        rule.setMinSize(10L);
+        rule.setMaxSize(5L);
+        assertThrows(IllegalArgumentException.class, () -> WatchRuleIndex.validate(rule));
+    }
+}
@@ -0,0 +1,66 @@
+package fun.zulin.tmd.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileFinalizerTest {
+
+    // "hello" 的 SHA-256
+    private static final String HELLO_SHA256 = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testMoveReplacesTargetWithoutReadingIt() throws Exception {
+        Path source = Files.writeString(dir.resolve("src.tmp"), "hello");
+        Path target = Files.writeString(dir.resolve("1.mp4"), "old content");
+
+        FileFinalizer.Result result = FileFinalizer.moveInto(source, target);
+
+        assertFalse(result.isCopied());
+        assertNull(result.getSha256(), "重命名不读取文件，SHA-256 由之后的阶段计算");
+        assertEquals(HELLO_SHA256, FileFinalizer.sha256(target));
+        assertFalse(Files.exists(source));
+        assertEquals("hello", Files.readString(target));
+    }
+
+    @Test
+    void testMoveCreatesTargetDirectory() throws Exception {
+        Path source = Files.writeString(dir.resolve("src.tmp"), "hello");
+        Path target = dir.resolve("videos").resolve("1.mp4");
+
+        FileFinalizer.moveInto(source, target);
+
+        assertEquals("hello", Files.readString(target));
+    }
+
+    @Test
+    void testCopyHashesInSamePassAndLeavesNoTempFile() throws Exception {
+        byte[] data = new byte[3 * 1024 * 1024 + 123];
+        new Random(42).nextBytes(data);
+        Path source = Files.write(dir.resolve("src.bin"), data);
+        Path target = dir.resolve("out").resolve("2.mp4");
+
+        FileFinalizer.Result result = FileFinalizer.copyInto(source, target);
+
+        assertTrue(result.isCopied());
+        assertArrayEquals(data, Files.readAllBytes(target));
+        assertEquals(FileFinalizer.sha256(source), result.getSha256());
+        assertFalse(Files.exists(target.resolveSibling("2.mp4.part")));
+        assertTrue(Files.exists(source), "复制不删除源文件");
+    }
+
+    @Test
+    void testSha256() throws Exception {
+        Path file = Files.write(dir.resolve("h.txt"), "hello".getBytes(StandardCharsets.UTF_8));
+        assertEquals(HELLO_SHA256, FileFinalizer.sha256(file));
+    }
+}